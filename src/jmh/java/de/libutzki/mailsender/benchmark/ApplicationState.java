@@ -0,0 +1,48 @@
+package de.libutzki.mailsender.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import de.libutzki.mailsender.MailSenderApplication;
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer;
+import de.libutzki.mailsender.service.MailService;
+
+/**
+ * The application running against an in-memory H2 database and the {@link EmbeddedSmtpServer}, shared by all threads
+ * of a benchmark. The SMTP server only counts the received messages.
+ */
+@State( Scope.Benchmark )
+public class ApplicationState {
+
+	private EmbeddedSmtpServer smtpServer;
+	private ConfigurableApplicationContext applicationContext;
+	MailService mailService;
+
+	@Setup
+	public void startApplication( ) {
+		smtpServer = new EmbeddedSmtpServer( );
+		smtpServer.setStoreMessages( false );
+		final SpringApplication springApplication = MailSenderApplication.createSpringApplication( );
+		// Passed as arguments, default properties would be overridden by app.properties
+		applicationContext = springApplication.run(
+				"--server.port=0",
+				"--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+				"--spring.jpa.hibernate.ddl-auto=create-drop",
+				"--spring.liquibase.enabled=false",
+				"--spring.mail.host=" + smtpServer.getHost( ),
+				"--spring.mail.port=" + smtpServer.getPort( ),
+				"--mailsender.jfr.enabled=false",
+				"--logging.level.root=WARN" );
+		mailService = applicationContext.getBean( MailService.class );
+	}
+
+	@TearDown
+	public void stopApplication( ) throws InterruptedException {
+		applicationContext.close( );
+		smtpServer.close( );
+	}
+}
@@ -0,0 +1,42 @@
+package de.libutzki.mailsender.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for every thread count of the system property {@code benchmark.threads} (comma separated),
+ * always with the GC profiler reporting the allocation rate. Further JMH options are taken from the command line. The
+ * results are written as JSON to the directory of the system property {@code benchmark.result-directory}.
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain( ) {
+	}
+
+	public static void main( final String[] args ) throws CommandLineOptionException, RunnerException, IOException {
+		final CommandLineOptions commandLineOptions = new CommandLineOptions( args );
+		final Path resultDirectory = Path.of( System.getProperty( "benchmark.result-directory", "target/jmh" ) );
+		Files.createDirectories( resultDirectory );
+
+		for ( final String threads : System.getProperty( "benchmark.threads", "1" ).split( "," ) ) {
+			final Options options = new OptionsBuilder( )
+					.parent( commandLineOptions )
+					.threads( Integer.parseInt( threads.trim( ) ) )
+					.addProfiler( GCProfiler.class )
+					.resultFormat( ResultFormatType.JSON )
+					.result( resultDirectory.resolve( "result-threads-" + threads.trim( ) + ".json" ).toString( ) )
+					.build( );
+			new Runner( options ).run( );
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package de.libutzki.mailsender.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.libutzki.mailsender.model.NewMail;
+import de.libutzki.mailsender.model.SentMailDTO;
+
+/**
+ * Benchmarks sending a mail and reading a sender's history. Every benchmark is measured as throughput and as sampled
+ * latency, the latter reporting percentiles.
+ */
+@Fork( 1 )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+public class MailServiceBenchmark {
+
+	private static final String RECIPIENT = "recipient@example.com";
+	private static final String HISTORY_SENDER = "history@example.com";
+	private static final int HISTORY_BATCH_SIZE = 500;
+
+	private static final AtomicInteger SENDER_NUMBER = new AtomicInteger( );
+
+	@State( Scope.Thread )
+	public static class SendState {
+
+		@Param( { "100", "10000", "100000" } )
+		public int bodySize;
+
+		// Every thread sends as a sender of its own, so that threads do not contend on the same history
+		private final String sender = "sender-" + SENDER_NUMBER.incrementAndGet( ) + "@example.com";
+		private String body;
+		private int mailNumber;
+
+		@Setup
+		public void createBody( ) {
+			body = createBody( bodySize );
+		}
+
+		NewMail nextMail( ) {
+			// Distinct bodies, otherwise the mail content store would deduplicate them
+			return new NewMail( RECIPIENT, "Benchmark " + mailNumber, mailNumber++ + body );
+		}
+	}
+
+	@State( Scope.Benchmark )
+	public static class HistoryState {
+
+		@Param( { "10", "1000", "10000" } )
+		public int historyLength;
+
+		@Param( { "100", "10000" } )
+		public int bodySize;
+
+		@Setup
+		public void createHistory( final ApplicationState applicationState ) {
+			final String body = createBody( bodySize );
+			final List<NewMail> newMails = new ArrayList<>( HISTORY_BATCH_SIZE );
+			for ( int i = 0; i < historyLength; i++ ) {
+				newMails.add( new NewMail( RECIPIENT, "History " + i, i + body ) );
+				if ( newMails.size( ) == HISTORY_BATCH_SIZE || i == historyLength - 1 ) {
+					applicationState.mailService.sendMails( HISTORY_SENDER, newMails );
+					newMails.clear( );
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.Throughput )
+	@OutputTimeUnit( TimeUnit.SECONDS )
+	public void sendMail( final ApplicationState applicationState, final SendState sendState ) {
+		applicationState.mailService.sendMail( sendState.sender, sendState.nextMail( ) );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.SampleTime )
+	@OutputTimeUnit( TimeUnit.MICROSECONDS )
+	public void sendMailLatency( final ApplicationState applicationState, final SendState sendState ) {
+		applicationState.mailService.sendMail( sendState.sender, sendState.nextMail( ) );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.Throughput )
+	@OutputTimeUnit( TimeUnit.SECONDS )
+	public List<SentMailDTO> getSentMailsForSender( final ApplicationState applicationState, final HistoryState historyState ) {
+		return applicationState.mailService.getSentMailsForSender( HISTORY_SENDER );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.SampleTime )
+	@OutputTimeUnit( TimeUnit.MICROSECONDS )
+	public List<SentMailDTO> getSentMailsForSenderLatency( final ApplicationState applicationState, final HistoryState historyState ) {
+		return applicationState.mailService.getSentMailsForSender( HISTORY_SENDER );
+	}
+
+	private static String createBody( final int size ) {
+		final StringBuilder body = new StringBuilder( size );
+		while ( body.length( ) < size ) {
+			body.append( "Lorem ipsum dolor sit amet, consectetur adipiscing elit.\n" );
+		}
+		body.setLength( size );
+		return body.toString( );
+	}
+}
@@ -1,14 +1,20 @@
 package de.libutzki.mailsender;
 
 import org.keycloak.adapters.KeycloakConfigResolver;
-import org.keycloak.adapters.springboot.KeycloakSpringBootConfigResolver;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.annotation.PropertySources;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import de.libutzki.mailsender.security.KeycloakCacheProperties;
+import de.libutzki.mailsender.security.RefreshingKeycloakConfigResolver;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@EnableScheduling
 @PropertySources( {
 		@PropertySource( value = "classpath:/app.properties" ),
 		@PropertySource( value = "classpath:/app.dev.properties", ignoreResourceNotFound = true ),
@@ -25,8 +31,8 @@ public class MailSenderApplication {
 	}
 
 	@Bean
-	public KeycloakConfigResolver KeycloakConfigResolver( ) {
-		return new KeycloakSpringBootConfigResolver( );
+	public KeycloakConfigResolver KeycloakConfigResolver( final KeycloakCacheProperties keycloakCacheProperties ) {
+		return new RefreshingKeycloakConfigResolver( keycloakCacheProperties );
 	}
 
 }
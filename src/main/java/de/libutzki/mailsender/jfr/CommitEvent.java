@@ -0,0 +1,20 @@
+package de.libutzki.mailsender.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( MailEvents.NAME_PREFIX + "Commit" )
+@Label( "Commit" )
+@Description( "Committing a transaction which stores mails" )
+@Category( MailEvents.CATEGORY )
+public class CommitEvent extends Event {
+
+	@Label( "Sender Domain" )
+	public String senderDomain;
+
+	@Label( "Rows" )
+	public int rowCount;
+}
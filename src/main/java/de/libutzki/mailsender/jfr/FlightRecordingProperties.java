@@ -0,0 +1,74 @@
+package de.libutzki.mailsender.jfr;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties( prefix = "mailsender.jfr" )
+public class FlightRecordingProperties {
+
+	private boolean enabled;
+
+	/**
+	 * Settings applied on top of the JDK's default settings.
+	 */
+	private String settings = "classpath:/jfr/mailsender.jfc";
+
+	/**
+	 * Age of the oldest events kept in the recording.
+	 */
+	private Duration maxAge = Duration.ofHours( 1 );
+
+	/**
+	 * Size of the recording on disk, beyond which the oldest events are dropped.
+	 */
+	private DataSize maxSize = DataSize.ofMegabytes( 250 );
+
+	/**
+	 * File the recording is dumped to on shutdown. Without one, the recording is dumped on demand by
+	 * {@code jcmd <pid> JFR.dump name=mailsender filename=<file>}.
+	 */
+	private Path destination;
+
+	public boolean isEnabled( ) {
+		return enabled;
+	}
+
+	public void setEnabled( final boolean enabled ) {
+		this.enabled = enabled;
+	}
+
+	public String getSettings( ) {
+		return settings;
+	}
+
+	public void setSettings( final String settings ) {
+		this.settings = settings;
+	}
+
+	public Duration getMaxAge( ) {
+		return maxAge;
+	}
+
+	public void setMaxAge( final Duration maxAge ) {
+		this.maxAge = maxAge;
+	}
+
+	public DataSize getMaxSize( ) {
+		return maxSize;
+	}
+
+	public void setMaxSize( final DataSize maxSize ) {
+		this.maxSize = maxSize;
+	}
+
+	public Path getDestination( ) {
+		return destination;
+	}
+
+	public void setDestination( final Path destination ) {
+		this.destination = destination;
+	}
+}
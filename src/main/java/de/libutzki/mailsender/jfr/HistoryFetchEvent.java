@@ -0,0 +1,23 @@
+package de.libutzki.mailsender.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( MailEvents.NAME_PREFIX + "HistoryFetch" )
+@Label( "History Fetch" )
+@Description( "Querying the history of a sender" )
+@Category( MailEvents.CATEGORY )
+public class HistoryFetchEvent extends Event {
+
+	@Label( "Sender Domain" )
+	public String senderDomain;
+
+	@Label( "Query" )
+	public String query;
+
+	@Label( "Rows" )
+	public int rowCount;
+}
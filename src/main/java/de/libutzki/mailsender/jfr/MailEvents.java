@@ -0,0 +1,49 @@
+package de.libutzki.mailsender.jfr;
+
+/**
+ * Helpers for the flight recorder events of the mail sender. All events share the name prefix {@link #NAME_PREFIX} and
+ * the category {@link #CATEGORY}.
+ */
+public final class MailEvents {
+
+	public static final String NAME_PREFIX = "de.libutzki.mailsender.";
+	public static final String CATEGORY = "Mail Sender";
+
+	private MailEvents( ) {
+	}
+
+	/**
+	 * Returns the domain of the e-mail address, which unlike the address itself is fine to record.
+	 */
+	public static String domainOf( final String eMailAddress ) {
+		if ( eMailAddress == null ) {
+			return null;
+		}
+		final int at = eMailAddress.lastIndexOf( '@' );
+		return at >= 0 ? eMailAddress.substring( at + 1 ) : null;
+	}
+
+	/**
+	 * Returns the number of bytes of the text encoded as UTF-8, without encoding it.
+	 */
+	public static long utf8Length( final CharSequence text ) {
+		if ( text == null ) {
+			return 0;
+		}
+		long length = 0;
+		for ( int i = 0; i < text.length( ); i++ ) {
+			final char c = text.charAt( i );
+			if ( c < 0x80 ) {
+				length++;
+			} else if ( c < 0x800 ) {
+				length += 2;
+			} else if ( Character.isHighSurrogate( c ) && i + 1 < text.length( ) && Character.isLowSurrogate( text.charAt( i + 1 ) ) ) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+}
@@ -0,0 +1,61 @@
+package de.libutzki.mailsender.jfr;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Continuous flight recording of the mail events along with the JDK's default events like garbage collections and
+ * socket reads, so that latency spikes can be analyzed afterwards. Enabled by {@code mailsender.jfr.enabled}. The
+ * recording is kept on disk up to the configured age and size, see {@link RecordingAnalyzer} for summarizing a dump.
+ */
+@Component
+@ConditionalOnProperty( prefix = "mailsender.jfr", name = "enabled", havingValue = "true" )
+public class MailFlightRecording implements DisposableBean {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( MailFlightRecording.class );
+
+	static final String RECORDING_NAME = "mailsender";
+
+	private final Recording recording;
+
+	public MailFlightRecording( final FlightRecordingProperties properties, final ResourceLoader resourceLoader )
+			throws IOException, ParseException {
+		final Map<String, String> settings = new HashMap<>( Configuration.getConfiguration( "default" ).getSettings( ) );
+		try ( Reader reader = new InputStreamReader( resourceLoader.getResource( properties.getSettings( ) ).getInputStream( ),
+				StandardCharsets.UTF_8 ) ) {
+			settings.putAll( Configuration.create( reader ).getSettings( ) );
+		}
+
+		this.recording = new Recording( settings );
+		recording.setName( RECORDING_NAME );
+		recording.setToDisk( true );
+		recording.setMaxAge( properties.getMaxAge( ) );
+		recording.setMaxSize( properties.getMaxSize( ).toBytes( ) );
+		if ( properties.getDestination( ) != null ) {
+			recording.setDestination( properties.getDestination( ) );
+		}
+		recording.start( );
+		LOGGER.info( "Started flight recording '{}'", RECORDING_NAME );
+	}
+
+	@Override
+	public void destroy( ) {
+		// Dumps the recording to the destination, if there is one
+		recording.close( );
+	}
+}
@@ -0,0 +1,25 @@
+package de.libutzki.mailsender.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( MailEvents.NAME_PREFIX + "MessageBuild" )
+@Label( "Message Build" )
+@Description( "Deduplicating the contents and creating the entities and messages of mails" )
+@Category( MailEvents.CATEGORY )
+public class MessageBuildEvent extends Event {
+
+	@Label( "Sender Domain" )
+	public String senderDomain;
+
+	@Label( "Messages" )
+	public int messageCount;
+
+	@Label( "Body Bytes" )
+	@DataAmount
+	public long bodyBytes;
+}
@@ -0,0 +1,110 @@
+package de.libutzki.mailsender.jfr;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Summarizes the mail events of a flight recording into per-phase latency percentiles. Run from the application jar:
+ *
+ * <pre>
+ * java -cp mailsender.jar -Dloader.main=de.libutzki.mailsender.jfr.RecordingAnalyzer \
+ *     org.springframework.boot.loader.PropertiesLauncher recording.jfr
+ * </pre>
+ */
+public final class RecordingAnalyzer {
+
+	public record PhaseSummary( String phase, int count, Duration p50, Duration p90, Duration p99, Duration max, long rowCount,
+			long bodyBytes ) {
+	}
+
+	private RecordingAnalyzer( ) {
+	}
+
+	public static void main( final String[] args ) throws IOException {
+		if ( args.length != 1 ) {
+			System.err.println( "Usage: RecordingAnalyzer <recording.jfr>" );
+			System.exit( 1 );
+		}
+		print( summarize( Path.of( args[0] ) ), System.out );
+	}
+
+	/**
+	 * Returns a summary per phase, ordered by phase name.
+	 */
+	public static List<PhaseSummary> summarize( final Path recording ) throws IOException {
+		final Map<String, PhaseStatistics> statistics = new TreeMap<>( );
+		try ( RecordingFile recordingFile = new RecordingFile( recording ) ) {
+			while ( recordingFile.hasMoreEvents( ) ) {
+				final RecordedEvent event = recordingFile.readEvent( );
+				final String name = event.getEventType( ).getName( );
+				if ( name.startsWith( MailEvents.NAME_PREFIX ) ) {
+					final String phase = name.substring( MailEvents.NAME_PREFIX.length( ) );
+					statistics.computeIfAbsent( phase, key -> new PhaseStatistics( ) ).add( event );
+				}
+			}
+		}
+
+		final List<PhaseSummary> summaries = new ArrayList<>( statistics.size( ) );
+		statistics.forEach( ( phase, phaseStatistics ) -> summaries.add( phaseStatistics.summarize( phase ) ) );
+		return summaries;
+	}
+
+	static void print( final List<PhaseSummary> summaries, final PrintStream out ) {
+		out.printf( "%-16s %8s %10s %10s %10s %10s %12s %14s%n", "Phase", "Count", "p50 ms", "p90 ms", "p99 ms", "max ms", "Rows",
+				"Body bytes" );
+		for ( final PhaseSummary summary : summaries ) {
+			out.printf( "%-16s %8d %10.3f %10.3f %10.3f %10.3f %12d %14d%n", summary.phase( ), summary.count( ), millis( summary.p50( ) ),
+					millis( summary.p90( ) ), millis( summary.p99( ) ), millis( summary.max( ) ), summary.rowCount( ), summary.bodyBytes( ) );
+		}
+	}
+
+	private static double millis( final Duration duration ) {
+		return duration.toNanos( ) / 1_000_000.0;
+	}
+
+	private static final class PhaseStatistics {
+
+		private long[] durations = new long[64];
+		private int count;
+		private long rowCount;
+		private long bodyBytes;
+
+		void add( final RecordedEvent event ) {
+			if ( count == durations.length ) {
+				durations = Arrays.copyOf( durations, count * 2 );
+			}
+			durations[count++] = event.getDuration( ).toNanos( );
+			if ( event.hasField( "rowCount" ) ) {
+				rowCount += event.getInt( "rowCount" );
+			}
+			if ( event.hasField( "bodyBytes" ) ) {
+				bodyBytes += event.getLong( "bodyBytes" );
+			}
+		}
+
+		PhaseSummary summarize( final String phase ) {
+			final long[] sorted = Arrays.copyOf( durations, count );
+			Arrays.sort( sorted );
+			return new PhaseSummary( phase, count, percentile( sorted, 0.5 ), percentile( sorted, 0.9 ), percentile( sorted, 0.99 ),
+					Duration.ofNanos( sorted[count - 1] ), rowCount, bodyBytes );
+		}
+
+		/**
+		 * Nearest-rank percentile of the sorted durations.
+		 */
+		private static Duration percentile( final long[] sorted, final double percentile ) {
+			final int rank = ( int ) Math.ceil( percentile * sorted.length );
+			return Duration.ofNanos( sorted[Math.max( 0, rank - 1 )] );
+		}
+	}
+}
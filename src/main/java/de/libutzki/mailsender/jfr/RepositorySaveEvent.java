@@ -0,0 +1,20 @@
+package de.libutzki.mailsender.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( MailEvents.NAME_PREFIX + "RepositorySave" )
+@Label( "Repository Save" )
+@Description( "Flushing the inserts of mails to the database" )
+@Category( MailEvents.CATEGORY )
+public class RepositorySaveEvent extends Event {
+
+	@Label( "Sender Domain" )
+	public String senderDomain;
+
+	@Label( "Rows" )
+	public int rowCount;
+}
@@ -0,0 +1,28 @@
+package de.libutzki.mailsender.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name( MailEvents.NAME_PREFIX + "SmtpSend" )
+@Label( "SMTP Send" )
+@Description( "Handing mails over to the SMTP relay, including connecting if the connection is not pooled" )
+@Category( MailEvents.CATEGORY )
+public class SmtpSendEvent extends Event {
+
+	@Label( "Sender Domain" )
+	public String senderDomain;
+
+	@Label( "Messages" )
+	public int messageCount;
+
+	@Label( "Body Bytes" )
+	@DataAmount
+	public long bodyBytes;
+
+	@Label( "Succeeded" )
+	public boolean succeeded;
+}
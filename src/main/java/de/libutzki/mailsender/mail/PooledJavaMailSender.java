@@ -0,0 +1,156 @@
+package de.libutzki.mailsender.mail;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import de.libutzki.mailsender.mail.SmtpConnectionPool.PooledConnection;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * {@link JavaMailSenderImpl} which sends via pooled, long-lived SMTP connections instead of connecting and
+ * authenticating for every send.
+ */
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean, MeterBinder {
+
+	private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+	private final SmtpConnectionPool connectionPool;
+	/**
+	 * Holds the meters until they are bound, so the sender does not depend on the {@link MeterRegistry} which in turn
+	 * collects meter binders depending on the sender.
+	 */
+	private final CompositeMeterRegistry meterRegistry = new CompositeMeterRegistry( );
+	private final Timer connectTimer;
+	private final Timer transferTimer;
+
+	public PooledJavaMailSender( final SmtpPoolProperties poolProperties ) {
+		this.connectionPool = new SmtpConnectionPool( this::connectTransportTimed, poolProperties );
+		this.connectTimer = Timer.builder( "mailsender.smtp.connect" )
+				.description( "Connecting and authenticating to the SMTP relay" )
+				.register( meterRegistry );
+		this.transferTimer = Timer.builder( "mailsender.smtp.transfer" )
+				.description( "Transferring a single message to the SMTP relay" )
+				.register( meterRegistry );
+		Gauge.builder( "mailsender.smtp.pool.connections", this, PooledJavaMailSender::getIdleConnectionCount )
+				.tag( "state", "idle" )
+				.register( meterRegistry );
+		Gauge.builder( "mailsender.smtp.pool.connections", this, PooledJavaMailSender::getActiveConnectionCount )
+				.tag( "state", "active" )
+				.register( meterRegistry );
+	}
+
+	@Override
+	public void bindTo( final MeterRegistry registry ) {
+		meterRegistry.add( registry );
+	}
+
+	public int getIdleConnectionCount( ) {
+		return connectionPool.getIdleCount( );
+	}
+
+	public int getActiveConnectionCount( ) {
+		return connectionPool.getActiveCount( );
+	}
+
+	@Override
+	protected void doSend( final MimeMessage[] mimeMessages, final Object[] originalMessages ) throws MailException {
+		final Map<Object, Exception> failedMessages = new LinkedHashMap<>( );
+		PooledConnection connection = null;
+		try {
+			for ( int i = 0; i < mimeMessages.length; i++ ) {
+				if ( connection == null ) {
+					connection = borrowConnection( mimeMessages, originalMessages, i, failedMessages );
+				} else if ( !connection.reset( ) ) {
+					connectionPool.release( connection, false );
+					connection = null;
+					connection = borrowConnection( mimeMessages, originalMessages, i, failedMessages );
+				}
+
+				final MimeMessage mimeMessage = mimeMessages[i];
+				try {
+					send( connection, mimeMessage );
+				} catch ( final Exception e ) {
+					failedMessages.put( originalMessages != null ? originalMessages[i] : mimeMessage, e );
+					if ( !connection.isConnected( ) ) {
+						connectionPool.release( connection, false );
+						connection = null;
+					}
+				}
+			}
+		} finally {
+			if ( connection != null ) {
+				connectionPool.release( connection, true );
+			}
+		}
+
+		if ( !failedMessages.isEmpty( ) ) {
+			throw new MailSendException( failedMessages );
+		}
+	}
+
+	@Override
+	public void destroy( ) {
+		connectionPool.close( );
+	}
+
+	private PooledConnection borrowConnection( final MimeMessage[] mimeMessages, final Object[] originalMessages, final int index,
+			final Map<Object, Exception> failedMessages ) {
+		try {
+			return connectionPool.borrow( );
+		} catch ( final AuthenticationFailedException e ) {
+			throw new MailAuthenticationException( e );
+		} catch ( final MessagingException e ) {
+			// Effectively, all remaining messages failed
+			for ( int i = index; i < mimeMessages.length; i++ ) {
+				failedMessages.put( originalMessages != null ? originalMessages[i] : mimeMessages[i], e );
+			}
+			throw new MailSendException( "Mail server connection failed", e, failedMessages );
+		}
+	}
+
+	private Transport connectTransportTimed( ) throws MessagingException {
+		final Timer.Sample sample = Timer.start( meterRegistry );
+		try {
+			return connectTransport( );
+		} finally {
+			sample.stop( connectTimer );
+		}
+	}
+
+	private void send( final PooledConnection connection, final MimeMessage mimeMessage ) throws MessagingException {
+		if ( mimeMessage.getSentDate( ) == null ) {
+			mimeMessage.setSentDate( new Date( ) );
+		}
+		final String messageId = mimeMessage.getMessageID( );
+		mimeMessage.saveChanges( );
+		if ( messageId != null ) {
+			// Preserve explicitly specified message id
+			mimeMessage.setHeader( HEADER_MESSAGE_ID, messageId );
+		}
+		final Address[] addresses = mimeMessage.getAllRecipients( );
+		connection.markUsed( );
+		final Timer.Sample sample = Timer.start( meterRegistry );
+		try {
+			connection.getTransport( ).sendMessage( mimeMessage, addresses != null ? addresses : new Address[0] );
+		} finally {
+			sample.stop( transferTimer );
+		}
+	}
+}
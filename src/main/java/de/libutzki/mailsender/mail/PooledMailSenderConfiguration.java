@@ -0,0 +1,45 @@
+package de.libutzki.mailsender.mail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mail.MailProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Replaces the auto-configured {@link org.springframework.mail.javamail.JavaMailSender} by a
+ * {@link PooledJavaMailSender}, configured from the same {@code spring.mail.*} properties.
+ */
+@Configuration( proxyBeanMethods = false )
+@ConditionalOnProperty( prefix = "mailsender.smtp.pool", name = "enabled", havingValue = "true" )
+@EnableConfigurationProperties( MailProperties.class )
+public class PooledMailSenderConfiguration {
+
+	@Bean
+	public PooledJavaMailSender mailSender( final MailProperties mailProperties, final SmtpPoolProperties poolProperties ) {
+		final PooledJavaMailSender sender = new PooledJavaMailSender( poolProperties );
+		sender.setHost( mailProperties.getHost( ) );
+		if ( mailProperties.getPort( ) != null ) {
+			sender.setPort( mailProperties.getPort( ) );
+		}
+		sender.setUsername( mailProperties.getUsername( ) );
+		sender.setPassword( mailProperties.getPassword( ) );
+		sender.setProtocol( mailProperties.getProtocol( ) );
+		if ( mailProperties.getDefaultEncoding( ) != null ) {
+			sender.setDefaultEncoding( mailProperties.getDefaultEncoding( ).name( ) );
+		} else {
+			sender.setDefaultEncoding( StandardCharsets.UTF_8.name( ) );
+		}
+		final Map<String, String> javaMailProperties = mailProperties.getProperties( );
+		if ( !javaMailProperties.isEmpty( ) ) {
+			final Properties properties = new Properties( );
+			properties.putAll( javaMailProperties );
+			sender.setJavaMailProperties( properties );
+		}
+		return sender;
+	}
+}
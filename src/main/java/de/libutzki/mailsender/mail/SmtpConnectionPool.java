@@ -0,0 +1,188 @@
+package de.libutzki.mailsender.mail;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.mail.smtp.SMTPTransport;
+
+/**
+ * A bounded pool of connected {@link Transport}s to a single SMTP relay. Idle connections are reused in LIFO order, so
+ * that connections which are not needed anymore age out and get evicted.
+ */
+class SmtpConnectionPool implements AutoCloseable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( SmtpConnectionPool.class );
+
+	@FunctionalInterface
+	interface TransportConnector {
+		Transport connect( ) throws MessagingException;
+	}
+
+	private final TransportConnector connector;
+	private final SmtpPoolProperties properties;
+	private final Semaphore permits;
+	private final BlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>( );
+	private final ScheduledExecutorService evictor;
+
+	private volatile boolean closed;
+
+	SmtpConnectionPool( final TransportConnector connector, final SmtpPoolProperties properties ) {
+		this.connector = connector;
+		this.properties = properties;
+		this.permits = new Semaphore( properties.getMaxTotal( ), true );
+		this.evictor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+			final Thread thread = new Thread( runnable, "smtp-pool-evictor" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		final long evictionInterval = properties.getEvictionInterval( ).toMillis( );
+		evictor.scheduleWithFixedDelay( this::evictIdleConnections, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Borrows a connection which is ready to send the next message. Reused connections are reset with {@code RSET},
+	 * which doubles as health check. Connections failing the reset are discarded.
+	 */
+	PooledConnection borrow( ) throws MessagingException {
+		if ( closed ) {
+			throw new MessagingException( "SMTP connection pool has been closed" );
+		}
+		acquirePermit( );
+		try {
+			PooledConnection connection;
+			while ( ( connection = idleConnections.pollFirst( ) ) != null ) {
+				if ( connection.isIdleLongerThan( properties.getMaxIdleTime( ) ) || !connection.reset( ) ) {
+					connection.close( );
+					continue;
+				}
+				return connection;
+			}
+			return new PooledConnection( connector.connect( ) );
+		} catch ( MessagingException | RuntimeException e ) {
+			permits.release( );
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a borrowed connection. Broken connections are closed instead of being pooled.
+	 */
+	void release( final PooledConnection connection, final boolean reusable ) {
+		try {
+			if ( reusable && !closed ) {
+				connection.markIdle( );
+				idleConnections.offerFirst( connection );
+			} else {
+				connection.close( );
+			}
+		} finally {
+			permits.release( );
+		}
+	}
+
+	int getIdleCount( ) {
+		return idleConnections.size( );
+	}
+
+	int getActiveCount( ) {
+		return properties.getMaxTotal( ) - permits.availablePermits( );
+	}
+
+	@Override
+	public void close( ) {
+		closed = true;
+		evictor.shutdownNow( );
+		PooledConnection connection;
+		while ( ( connection = idleConnections.pollFirst( ) ) != null ) {
+			connection.close( );
+		}
+	}
+
+	private void acquirePermit( ) throws MessagingException {
+		try {
+			if ( !permits.tryAcquire( properties.getMaxWait( ).toMillis( ), TimeUnit.MILLISECONDS ) ) {
+				throw new MessagingException( "Timeout waiting for an SMTP connection after " + properties.getMaxWait( ) );
+			}
+		} catch ( final InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			throw new MessagingException( "Interrupted while waiting for an SMTP connection", e );
+		}
+	}
+
+	private void evictIdleConnections( ) {
+		for ( final PooledConnection connection : idleConnections ) {
+			if ( connection.isIdleLongerThan( properties.getMaxIdleTime( ) ) && idleConnections.remove( connection ) ) {
+				connection.close( );
+			}
+		}
+	}
+
+	static final class PooledConnection {
+
+		private final Transport transport;
+		private volatile long idleSince = System.nanoTime( );
+		private boolean used;
+
+		private PooledConnection( final Transport transport ) {
+			this.transport = transport;
+		}
+
+		Transport getTransport( ) {
+			return transport;
+		}
+
+		/**
+		 * Prepares the connection for the next message. The first message on a fresh connection does not need a reset.
+		 */
+		boolean reset( ) {
+			if ( !used ) {
+				return true;
+			}
+			try {
+				if ( transport instanceof SMTPTransport smtpTransport ) {
+					smtpTransport.issueCommand( "RSET", 250 );
+					return true;
+				}
+				return transport.isConnected( );
+			} catch ( final MessagingException e ) {
+				LOGGER.debug( "Discarding SMTP connection which failed to reset", e );
+				return false;
+			}
+		}
+
+		void markUsed( ) {
+			used = true;
+		}
+
+		boolean isConnected( ) {
+			return transport.isConnected( );
+		}
+
+		private void markIdle( ) {
+			idleSince = System.nanoTime( );
+		}
+
+		private boolean isIdleLongerThan( final Duration maxIdleTime ) {
+			return System.nanoTime( ) - idleSince > maxIdleTime.toNanos( );
+		}
+
+		private void close( ) {
+			try {
+				transport.close( );
+			} catch ( final MessagingException e ) {
+				LOGGER.debug( "Failed to close SMTP connection", e );
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package de.libutzki.mailsender.mail;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties( prefix = "mailsender.smtp.pool" )
+public class SmtpPoolProperties {
+
+	/**
+	 * Whether the {@link org.springframework.mail.javamail.JavaMailSender} reuses SMTP connections.
+	 */
+	private boolean enabled;
+
+	/**
+	 * Maximum number of connections to the relay, borrowed and idle.
+	 */
+	private int maxTotal = 8;
+
+	/**
+	 * Maximum time to wait for a free connection before the send fails.
+	 */
+	private Duration maxWait = Duration.ofSeconds( 5 );
+
+	/**
+	 * Idle connections are closed after this time, which should be below the idle timeout of the relay.
+	 */
+	private Duration maxIdleTime = Duration.ofSeconds( 30 );
+
+	private Duration evictionInterval = Duration.ofSeconds( 10 );
+
+	public boolean isEnabled( ) {
+		return enabled;
+	}
+
+	public void setEnabled( final boolean enabled ) {
+		this.enabled = enabled;
+	}
+
+	public int getMaxTotal( ) {
+		return maxTotal;
+	}
+
+	public void setMaxTotal( final int maxTotal ) {
+		this.maxTotal = maxTotal;
+	}
+
+	public Duration getMaxWait( ) {
+		return maxWait;
+	}
+
+	public void setMaxWait( final Duration maxWait ) {
+		this.maxWait = maxWait;
+	}
+
+	public Duration getMaxIdleTime( ) {
+		return maxIdleTime;
+	}
+
+	public void setMaxIdleTime( final Duration maxIdleTime ) {
+		this.maxIdleTime = maxIdleTime;
+	}
+
+	public Duration getEvictionInterval( ) {
+		return evictionInterval;
+	}
+
+	public void setEvictionInterval( final Duration evictionInterval ) {
+		this.evictionInterval = evictionInterval;
+	}
+
+}
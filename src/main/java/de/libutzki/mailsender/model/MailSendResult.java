@@ -0,0 +1,25 @@
+package de.libutzki.mailsender.model;
+
+public record MailSendResult(
+		NewMail mail,
+		Outcome outcome,
+		String error ) {
+
+	public enum Outcome {
+		SENT,
+		QUEUED,
+		FAILED
+	}
+
+	public static MailSendResult sent( final NewMail mail ) {
+		return new MailSendResult( mail, Outcome.SENT, null );
+	}
+
+	public static MailSendResult queued( final NewMail mail ) {
+		return new MailSendResult( mail, Outcome.QUEUED, null );
+	}
+
+	public static MailSendResult failed( final NewMail mail, final String error ) {
+		return new MailSendResult( mail, Outcome.FAILED, error );
+	}
+}
@@ -0,0 +1,9 @@
+package de.libutzki.mailsender.model;
+
+import de.libutzki.mailsender.repository.DeliveryStatus;
+
+public record MailSubmissionDTO(
+		Long id,
+		DeliveryStatus status,
+		String lastError ) {
+}
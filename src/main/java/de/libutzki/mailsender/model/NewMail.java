@@ -1,7 +1,10 @@
 package de.libutzki.mailsender.model;
 
+import javax.validation.constraints.Email;
+import javax.validation.constraints.NotBlank;
+
 public record NewMail(
-		String recipient,
+		@NotBlank( message = "Enter a recipient" ) @Email( message = "${validatedValue} is not a valid email address" ) String recipient,
 		String subject,
 		String body ) {
 }
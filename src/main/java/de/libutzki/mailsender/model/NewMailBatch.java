@@ -0,0 +1,40 @@
+package de.libutzki.mailsender.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+
+/**
+ * A mail with the same subject and body for several recipients, which are separated by line breaks, commas or
+ * semicolons.
+ */
+public record NewMailBatch(
+		String recipients,
+		String subject,
+		String body ) {
+
+	public static final int MAX_RECIPIENTS = 100;
+
+	/**
+	 * Returns the recipients without blank entries. Named like a getter, so that it is validated as property.
+	 */
+	@NotEmpty( message = "Enter at least one recipient" )
+	@Size( max = MAX_RECIPIENTS, message = "At most {max} recipients are allowed" )
+	public List<@Email( message = "${validatedValue} is not a valid email address" ) String> getRecipientAddresses( ) {
+		if ( recipients == null ) {
+			return List.of( );
+		}
+		return Arrays.stream( recipients.split( "[\\s,;]+" ) )
+				.filter( recipient -> !recipient.isBlank( ) )
+				.toList( );
+	}
+
+	public List<NewMail> toNewMails( ) {
+		return getRecipientAddresses( ).stream( )
+				.map( recipient -> new NewMail( recipient, subject, body ) )
+				.toList( );
+	}
+}
@@ -0,0 +1,13 @@
+package de.libutzki.mailsender.model;
+
+import java.util.Locale;
+
+public record PendingMailDTO(
+		Long id,
+		String recipient ) {
+
+	public String recipientDomain( ) {
+		final int at = recipient.lastIndexOf( '@' );
+		return at < 0 ? "" : recipient.substring( at + 1 ).toLowerCase( Locale.ROOT );
+	}
+}
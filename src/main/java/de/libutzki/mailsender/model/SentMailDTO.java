@@ -1,8 +1,13 @@
 package de.libutzki.mailsender.model;
 
 public record SentMailDTO(
+		Long id,
 		String recipient,
 		String subject,
 		String body ) {
 
+	public SentMailDTO( final String recipient, final String subject, final String body ) {
+		this( null, recipient, subject, body );
+	}
+
 }
@@ -0,0 +1,22 @@
+package de.libutzki.mailsender.model;
+
+import java.util.List;
+
+/**
+ * A page of sent mails, newest first. The cursors are the ids to pass as {@code after} respectively {@code before} to
+ * get the adjacent pages, they are {@code null} if there is no such page.
+ */
+public record SentMailPage(
+		List<SentMailSummaryDTO> sentMails,
+		Long previousCursor,
+		Long nextCursor ) {
+
+	public boolean hasPrevious( ) {
+		return previousCursor != null;
+	}
+
+	public boolean hasNext( ) {
+		return nextCursor != null;
+	}
+
+}
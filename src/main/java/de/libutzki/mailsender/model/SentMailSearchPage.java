@@ -0,0 +1,17 @@
+package de.libutzki.mailsender.model;
+
+import java.util.List;
+
+/**
+ * A page of search results, ordered by relevance.
+ */
+public record SentMailSearchPage(
+		List<SentMailDTO> sentMails,
+		int page,
+		boolean hasNext ) {
+
+	public boolean hasPrevious( ) {
+		return page > 0;
+	}
+
+}
@@ -0,0 +1,9 @@
+package de.libutzki.mailsender.model;
+
+public record SentMailSummaryDTO(
+		Long id,
+		String recipient,
+		String subject,
+		String preview ) {
+
+}
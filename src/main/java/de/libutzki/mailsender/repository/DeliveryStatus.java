@@ -0,0 +1,8 @@
+package de.libutzki.mailsender.repository;
+
+public enum DeliveryStatus {
+	PENDING,
+	SENDING,
+	SENT,
+	FAILED
+}
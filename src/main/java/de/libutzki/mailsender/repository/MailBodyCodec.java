@@ -0,0 +1,115 @@
+package de.libutzki.mailsender.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses mail bodies with Deflate. Mails are short and repetitive, so a preset dictionary of common mail and HTML
+ * fragments is used if {@code mail-body-dictionary.txt} exists next to this class. The dictionary's checksum is part of every
+ * compressed body, therefore a dictionary must never be changed once bodies have been compressed with it.
+ */
+public final class MailBodyCodec {
+
+	/**
+	 * Bodies with less UTF-8 bytes are stored uncompressed, as compressing them does not pay off.
+	 */
+	public static final int COMPRESSION_THRESHOLD = 256;
+
+	private static final String DICTIONARY_RESOURCE = "mail-body-dictionary.txt";
+
+	private static final byte FORMAT_DEFLATE = 1;
+
+	private static final byte[] DICTIONARY = loadDictionary( );
+	private static final long DICTIONARY_CHECKSUM = checksum( DICTIONARY );
+
+	private MailBodyCodec( ) {
+	}
+
+	/**
+	 * Returns the compressed body or {@code null}, if the body should be stored uncompressed.
+	 */
+	public static byte[] compress( final String body ) {
+		if ( body == null ) {
+			return null;
+		}
+		final byte[] input = body.getBytes( StandardCharsets.UTF_8 );
+		if ( input.length < COMPRESSION_THRESHOLD ) {
+			return null;
+		}
+
+		final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+		try {
+			if ( DICTIONARY.length > 0 ) {
+				deflater.setDictionary( DICTIONARY );
+			}
+			deflater.setInput( input );
+			deflater.finish( );
+			final ByteArrayOutputStream output = new ByteArrayOutputStream( input.length / 2 );
+			output.write( FORMAT_DEFLATE );
+			final byte[] buffer = new byte[4096];
+			while ( !deflater.finished( ) ) {
+				output.write( buffer, 0, deflater.deflate( buffer ) );
+			}
+			// Incompressible bodies are stored as they are
+			return output.size( ) < input.length ? output.toByteArray( ) : null;
+		} finally {
+			deflater.end( );
+		}
+	}
+
+	public static String decompress( final byte[] compressedBody ) {
+		if ( compressedBody == null ) {
+			return null;
+		}
+		if ( compressedBody.length == 0 || compressedBody[0] != FORMAT_DEFLATE ) {
+			throw new IllegalArgumentException( "Unknown body compression format" );
+		}
+
+		final Inflater inflater = new Inflater( );
+		try {
+			inflater.setInput( compressedBody, 1, compressedBody.length - 1 );
+			final ByteArrayOutputStream output = new ByteArrayOutputStream( compressedBody.length * 4 );
+			final byte[] buffer = new byte[4096];
+			while ( !inflater.finished( ) ) {
+				final int length = inflater.inflate( buffer );
+				if ( length == 0 ) {
+					if ( inflater.needsDictionary( ) ) {
+						if ( inflater.getAdler( ) != DICTIONARY_CHECKSUM ) {
+							throw new IllegalStateException( "Body has been compressed with an unknown dictionary" );
+						}
+						inflater.setDictionary( DICTIONARY );
+					} else if ( inflater.needsInput( ) ) {
+						throw new IllegalArgumentException( "Compressed body is truncated" );
+					}
+				}
+				output.write( buffer, 0, length );
+			}
+			return output.toString( StandardCharsets.UTF_8 );
+		} catch ( final DataFormatException e ) {
+			throw new IllegalArgumentException( "Compressed body is corrupt", e );
+		} finally {
+			inflater.end( );
+		}
+	}
+
+	private static byte[] loadDictionary( ) {
+		try ( InputStream inputStream = MailBodyCodec.class.getResourceAsStream( DICTIONARY_RESOURCE ) ) {
+			return inputStream != null ? inputStream.readAllBytes( ) : new byte[0];
+		} catch ( final IOException e ) {
+			throw new UncheckedIOException( "Failed to load " + DICTIONARY_RESOURCE, e );
+		}
+	}
+
+	private static long checksum( final byte[] bytes ) {
+		final Adler32 adler32 = new Adler32( );
+		adler32.update( bytes );
+		return adler32.getValue( );
+	}
+}
@@ -0,0 +1,85 @@
+package de.libutzki.mailsender.repository;
+
+import java.util.Objects;
+import java.util.Optional;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Transient;
+
+import org.springframework.data.domain.Persistable;
+
+/**
+ * A mail body stored once for all mails sharing it, identified by the SHA-256 hash of the body.
+ */
+@Entity
+public class MailContent implements Persistable<String> {
+
+	@Id
+	@Column( length = 64 )
+	private String hash;
+
+	private String body;
+
+	/**
+	 * BYTEA on PostgreSQL, BLOB on Oracle, see {@code hibernate.dialect.oracle.prefer_long_raw}.
+	 */
+	@Column( length = 1_000_000 )
+	private byte[] bodyCompressed;
+
+	@Transient
+	private boolean isNew = true;
+
+	protected MailContent( ) {
+	}
+
+	public MailContent( final String hash, final String body ) {
+		this.hash = hash;
+		this.bodyCompressed = MailBodyCodec.compress( body );
+		this.body = bodyCompressed != null ? null : body;
+	}
+
+	public String getHash( ) {
+		return hash;
+	}
+
+	public Optional<String> getBody( ) {
+		return Optional.ofNullable( bodyCompressed != null ? MailBodyCodec.decompress( bodyCompressed ) : body );
+	}
+
+	@Override
+	public String getId( ) {
+		return hash;
+	}
+
+	/**
+	 * Content is immutable and its id is assigned, so it is always persisted instead of merged.
+	 */
+	@Override
+	public boolean isNew( ) {
+		return isNew;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markNotNew( ) {
+		this.isNew = false;
+	}
+
+	@Override
+	public int hashCode( ) {
+		return Objects.hash( hash );
+	}
+
+	@Override
+	public boolean equals( final Object obj ) {
+		if ( this == obj ) {
+			return true;
+		}
+		// Lazy references are proxies of a subclass
+		return obj instanceof final MailContent other && Objects.equals( hash, other.getHash( ) );
+	}
+}
@@ -0,0 +1,7 @@
+package de.libutzki.mailsender.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface MailContentRepository extends JpaRepository<MailContent, String> {
+
+}
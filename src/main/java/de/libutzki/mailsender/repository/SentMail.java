@@ -1,18 +1,33 @@
 package de.libutzki.mailsender.repository;
 
+import java.time.Instant;
 import java.util.Objects;
 import java.util.Optional;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Transient;
 import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
 
 @Entity
 public class SentMail {
 
+	private static final int MAX_ERROR_LENGTH = 1000;
+
+	// The allocation size has to match the increment of the sequence, see changelog-master.xml
 	@Id
-	@GeneratedValue
+	@GeneratedValue( strategy = GenerationType.SEQUENCE, generator = "sent_mail_id" )
+	@SequenceGenerator( name = "sent_mail_id", sequenceName = "hibernate_sequence", allocationSize = 50 )
 	private Long id;
 
 	@NotBlank
@@ -23,8 +38,50 @@ public class SentMail {
 
 	private String subject;
 
+	/**
+	 * The body, unless it is stored compressed in {@link #bodyCompressed} or deduplicated in {@link #content}.
+	 */
 	private String body;
 
+	/**
+	 * BYTEA on PostgreSQL, BLOB on Oracle, see {@code hibernate.dialect.oracle.prefer_long_raw}.
+	 */
+	@Column( length = 1_000_000 )
+	private byte[] bodyCompressed;
+
+	/**
+	 * The body shared with other mails, if it is stored deduplicated.
+	 */
+	@ManyToOne( fetch = FetchType.LAZY )
+	@JoinColumn( name = "content_hash" )
+	private MailContent content;
+
+	/**
+	 * Body of {@link #content} passed on creation, saves loading the content when sending the mail.
+	 */
+	@Transient
+	private String contentBody;
+
+	/**
+	 * Start of the body shown in lists, so that lists do not need to load the body.
+	 */
+	private String preview;
+
+	@NotNull
+	@Enumerated( EnumType.STRING )
+	private DeliveryStatus status;
+
+	private String lastError;
+
+	private int attempts;
+
+	private Instant nextAttemptAt;
+
+	/**
+	 * Start of the current delivery while the mail is {@link DeliveryStatus#SENDING}.
+	 */
+	private Instant claimedAt;
+
 	public String getRecipient( ) {
 		return recipient;
 	}
@@ -42,11 +99,75 @@ public class SentMail {
 	}
 
 	public Optional<String> getBody( ) {
-		return Optional.ofNullable( body );
+		if ( content != null ) {
+			return contentBody != null ? Optional.of( contentBody ) : content.getBody( );
+		}
+		return Optional.ofNullable( bodyCompressed != null ? MailBodyCodec.decompress( bodyCompressed ) : body );
 	}
 
 	public void setBody( final String body ) {
-		this.body = body;
+		this.bodyCompressed = MailBodyCodec.compress( body );
+		this.body = bodyCompressed != null ? null : body;
+		this.content = null;
+		this.contentBody = null;
+	}
+
+	/**
+	 * Stores the body deduplicated as reference to the given content.
+	 */
+	public void setContent( final MailContent content, final String body ) {
+		this.content = content;
+		this.contentBody = body;
+		this.body = null;
+		this.bodyCompressed = null;
+	}
+
+	public Optional<String> getPreview( ) {
+		return Optional.ofNullable( preview );
+	}
+
+	public void setPreview( final String preview ) {
+		this.preview = preview;
+	}
+
+	public DeliveryStatus getStatus( ) {
+		return status;
+	}
+
+	public void setStatus( final DeliveryStatus status ) {
+		this.status = status;
+	}
+
+	public Optional<String> getLastError( ) {
+		return Optional.ofNullable( lastError );
+	}
+
+	public void setLastError( final String lastError ) {
+		this.lastError = lastError == null || lastError.length( ) <= MAX_ERROR_LENGTH ? lastError : lastError.substring( 0, MAX_ERROR_LENGTH );
+	}
+
+	public int getAttempts( ) {
+		return attempts;
+	}
+
+	public void setAttempts( final int attempts ) {
+		this.attempts = attempts;
+	}
+
+	public Optional<Instant> getNextAttemptAt( ) {
+		return Optional.ofNullable( nextAttemptAt );
+	}
+
+	public void setNextAttemptAt( final Instant nextAttemptAt ) {
+		this.nextAttemptAt = nextAttemptAt;
+	}
+
+	public Optional<Instant> getClaimedAt( ) {
+		return Optional.ofNullable( claimedAt );
+	}
+
+	public void setClaimedAt( final Instant claimedAt ) {
+		this.claimedAt = claimedAt;
 	}
 
 	public Long getId( ) {
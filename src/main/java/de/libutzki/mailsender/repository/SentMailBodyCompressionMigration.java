@@ -0,0 +1,89 @@
+package de.libutzki.mailsender.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Compresses the bodies of existing rows with the {@link MailBodyCodec}. The rows are processed in batches of
+ * ascending ids, committing after every batch. Compressed rows have no plain body anymore, so an interrupted migration
+ * can simply be restarted.
+ */
+public class SentMailBodyCompressionMigration implements CustomTaskChange {
+
+	private static final String UPDATE_SQL = "UPDATE sent_mail SET body = NULL, body_compressed = ? WHERE id = ?";
+
+	private int batchSize = 1_000;
+	private long compressedRows;
+
+	public void setBatchSize( final String batchSize ) {
+		this.batchSize = Integer.parseInt( batchSize );
+	}
+
+	@Override
+	public void execute( final Database database ) throws CustomChangeException {
+		final Connection connection = ( ( JdbcConnection ) database.getConnection( ) ).getUnderlyingConnection( );
+		final String selectSql = "SELECT id, body FROM sent_mail WHERE id > ? AND body IS NOT NULL ORDER BY id FETCH FIRST " + batchSize
+				+ " ROWS ONLY";
+		try ( PreparedStatement select = connection.prepareStatement( selectSql );
+				PreparedStatement update = connection.prepareStatement( UPDATE_SQL ) ) {
+			long lastId = 0;
+			while ( true ) {
+				select.setLong( 1, lastId );
+				int selectedRows = 0;
+				try ( ResultSet resultSet = select.executeQuery( ) ) {
+					while ( resultSet.next( ) ) {
+						selectedRows++;
+						lastId = resultSet.getLong( 1 );
+						final byte[] bodyCompressed = MailBodyCodec.compress( resultSet.getString( 2 ) );
+						if ( bodyCompressed != null ) {
+							update.setBytes( 1, bodyCompressed );
+							update.setLong( 2, lastId );
+							update.addBatch( );
+							compressedRows++;
+						}
+					}
+				}
+				update.executeBatch( );
+				connection.commit( );
+				if ( selectedRows < batchSize ) {
+					return;
+				}
+			}
+		} catch ( final SQLException e ) {
+			throw new CustomChangeException( "Failed to compress the bodies of sent_mail", e );
+		}
+	}
+
+	@Override
+	public String getConfirmationMessage( ) {
+		return "Compressed the bodies of " + compressedRows + " rows";
+	}
+
+	@Override
+	public void setUp( ) {
+		// Nothing to set up
+	}
+
+	@Override
+	public void setFileOpener( final ResourceAccessor resourceAccessor ) {
+		// No files needed
+	}
+
+	@Override
+	public ValidationErrors validate( final Database database ) {
+		final ValidationErrors validationErrors = new ValidationErrors( );
+		if ( batchSize <= 0 ) {
+			validationErrors.addError( "batchSize has to be positive" );
+		}
+		return validationErrors;
+	}
+}
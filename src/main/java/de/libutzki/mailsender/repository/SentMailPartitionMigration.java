@@ -0,0 +1,85 @@
+package de.libutzki.mailsender.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Copies the rows of {@code sent_mail} into {@code sent_mail_partitioned} in batches of at most {@code batchSize} rows
+ * of ascending ids, committing after every batch. Rows which have already been copied are skipped, so an interrupted
+ * migration can simply be restarted.
+ */
+public class SentMailPartitionMigration implements CustomTaskChange {
+
+	private static final String BATCH_END_SQL = "SELECT MAX(id) FROM (SELECT id FROM sent_mail WHERE id > ? ORDER BY id LIMIT ?) batch";
+	private static final String COPY_SQL = "INSERT INTO sent_mail_partitioned SELECT * FROM sent_mail WHERE id > ? AND id <= ? ON CONFLICT DO NOTHING";
+
+	private int batchSize = 10_000;
+	private long copiedRows;
+
+	public void setBatchSize( final String batchSize ) {
+		this.batchSize = Integer.parseInt( batchSize );
+	}
+
+	@Override
+	public void execute( final Database database ) throws CustomChangeException {
+		final Connection connection = ( ( JdbcConnection ) database.getConnection( ) ).getUnderlyingConnection( );
+		try ( PreparedStatement batchEnd = connection.prepareStatement( BATCH_END_SQL );
+				PreparedStatement copy = connection.prepareStatement( COPY_SQL ) ) {
+			// Keyset batches: the ids are not dense, so the end of every batch is looked up by the primary key
+			long lastId = Long.MIN_VALUE;
+			Long batchEndId;
+			while ( ( batchEndId = queryBatchEnd( batchEnd, lastId ) ) != null ) {
+				copy.setLong( 1, lastId );
+				copy.setLong( 2, batchEndId );
+				copiedRows += copy.executeUpdate( );
+				connection.commit( );
+				lastId = batchEndId;
+			}
+		} catch ( final SQLException e ) {
+			throw new CustomChangeException( "Failed to copy sent_mail into sent_mail_partitioned", e );
+		}
+	}
+
+	@Override
+	public String getConfirmationMessage( ) {
+		return "Copied " + copiedRows + " rows into sent_mail_partitioned";
+	}
+
+	@Override
+	public void setUp( ) {
+		// Nothing to set up
+	}
+
+	@Override
+	public void setFileOpener( final ResourceAccessor resourceAccessor ) {
+		// No files needed
+	}
+
+	@Override
+	public ValidationErrors validate( final Database database ) {
+		final ValidationErrors validationErrors = new ValidationErrors( );
+		if ( batchSize <= 0 ) {
+			validationErrors.addError( "batchSize has to be positive" );
+		}
+		return validationErrors;
+	}
+
+	private Long queryBatchEnd( final PreparedStatement batchEnd, final long lastId ) throws SQLException {
+		batchEnd.setLong( 1, lastId );
+		batchEnd.setInt( 2, batchSize );
+		try ( ResultSet resultSet = batchEnd.executeQuery( ) ) {
+			resultSet.next( );
+			final long batchEndId = resultSet.getLong( 1 );
+			return resultSet.wasNull( ) ? null : batchEndId;
+		}
+	}
+}
@@ -1,14 +1,92 @@
 package de.libutzki.mailsender.repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import de.libutzki.mailsender.model.MailSubmissionDTO;
+import de.libutzki.mailsender.model.PendingMailDTO;
 import de.libutzki.mailsender.model.SentMailDTO;
+import de.libutzki.mailsender.model.SentMailSummaryDTO;
 
 public interface SentMailRepository extends JpaRepository<SentMail, Long> {
 
-	@Query( "SELECT new de.libutzki.mailsender.model.SentMailDTO(mail.recipient, mail.subject, mail.body) FROM SentMail mail WHERE mail.sender = :sender ORDER BY mail.id" )
-	List<SentMailDTO> findBySender( String sender );
+	int EXPORT_FETCH_SIZE = 500;
+
+	/**
+	 * PostgreSQL full-text search vector of a mail, matches in the recipient rank highest, matches in the body lowest.
+	 */
+	String SEARCH_VECTOR_EXPRESSION = "setweight(to_tsvector('simple', :recipient), 'A') || setweight(to_tsvector('simple', :subject), 'B') || to_tsvector('simple', :body)";
+
+	@Query( "SELECT new de.libutzki.mailsender.repository.SentMailRow(mail.id, mail.recipient, mail.subject, COALESCE(content.body, mail.body), COALESCE(content.bodyCompressed, mail.bodyCompressed)) FROM SentMail mail LEFT JOIN mail.content content WHERE mail.sender = :sender ORDER BY mail.id" )
+	List<SentMailRow> findRowsBySender( String sender );
+
+	default List<SentMailDTO> findBySender( final String sender ) {
+		return findRowsBySender( sender ).stream( ).map( SentMailRow::toDTO ).toList( );
+	}
+
+	@QueryHints( @QueryHint( name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE ) )
+	@Query( "SELECT new de.libutzki.mailsender.repository.SentMailRow(mail.id, mail.recipient, mail.subject, COALESCE(content.body, mail.body), COALESCE(content.bodyCompressed, mail.bodyCompressed)) FROM SentMail mail LEFT JOIN mail.content content WHERE mail.sender = :sender ORDER BY mail.id" )
+	Stream<SentMailRow> streamRowsBySender( String sender );
+
+	/**
+	 * Streams all mails of the sender. Has to be consumed within a transaction and closed afterwards.
+	 */
+	default Stream<SentMailDTO> streamBySender( final String sender ) {
+		return streamRowsBySender( sender ).map( SentMailRow::toDTO );
+	}
+
+	// The keyset queries below are backed by the index on (sender, id)
+
+	@Query( "SELECT new de.libutzki.mailsender.model.SentMailSummaryDTO(mail.id, mail.recipient, mail.subject, mail.preview) FROM SentMail mail WHERE mail.sender = :sender ORDER BY mail.id DESC" )
+	List<SentMailSummaryDTO> findNewestBySender( String sender, Pageable pageable );
+
+	@Query( "SELECT new de.libutzki.mailsender.model.SentMailSummaryDTO(mail.id, mail.recipient, mail.subject, mail.preview) FROM SentMail mail WHERE mail.sender = :sender AND mail.id < :before ORDER BY mail.id DESC" )
+	List<SentMailSummaryDTO> findBySenderBefore( String sender, Long before, Pageable pageable );
+
+	@Query( "SELECT new de.libutzki.mailsender.model.SentMailSummaryDTO(mail.id, mail.recipient, mail.subject, mail.preview) FROM SentMail mail WHERE mail.sender = :sender AND mail.id > :after ORDER BY mail.id ASC" )
+	List<SentMailSummaryDTO> findBySenderAfter( String sender, Long after, Pageable pageable );
+
+	@Query( "SELECT new de.libutzki.mailsender.repository.SentMailRow(mail.id, mail.recipient, mail.subject, COALESCE(content.body, mail.body), COALESCE(content.bodyCompressed, mail.bodyCompressed)) FROM SentMail mail LEFT JOIN mail.content content WHERE mail.id = :id AND mail.sender = :sender" )
+	Optional<SentMailRow> findRowByIdAndSender( Long id, String sender );
+
+	default Optional<SentMailDTO> findByIdAndSender( final Long id, final String sender ) {
+		return findRowByIdAndSender( id, sender ).map( SentMailRow::toDTO );
+	}
+
+	@Query( "SELECT new de.libutzki.mailsender.model.MailSubmissionDTO(mail.id, mail.status, mail.lastError) FROM SentMail mail WHERE mail.id = :id AND mail.sender = :sender" )
+	Optional<MailSubmissionDTO> findSubmissionByIdAndSender( Long id, String sender );
+
+	@Query( "SELECT new de.libutzki.mailsender.repository.SentMailRow(mail.id, mail.recipient, mail.subject, COALESCE(content.body, mail.body), COALESCE(content.bodyCompressed, mail.bodyCompressed)) FROM SentMail mail LEFT JOIN mail.content content WHERE mail.id IN :ids AND mail.sender = :sender" )
+	List<SentMailRow> findRowsByIdInAndSender( Collection<Long> ids, String sender );
+
+	default List<SentMailDTO> findByIdInAndSender( final Collection<Long> ids, final String sender ) {
+		return findRowsByIdInAndSender( ids, sender ).stream( ).map( SentMailRow::toDTO ).toList( );
+	}
+
+	/**
+	 * Returns the mails due for delivery: pending mails whose next attempt is due and claimed mails whose claim has
+	 * expired without an outcome being recorded.
+	 */
+	@Query( "SELECT new de.libutzki.mailsender.model.PendingMailDTO(mail.id, mail.recipient) FROM SentMail mail WHERE (mail.status = :pending AND (mail.nextAttemptAt IS NULL OR mail.nextAttemptAt <= :now)) OR (mail.status = :claimed AND mail.claimedAt < :claimedBefore) ORDER BY mail.id" )
+	List<PendingMailDTO> findDueMails( DeliveryStatus pending, Instant now, DeliveryStatus claimed, Instant claimedBefore, Pageable pageable );
+
+	/**
+	 * Claims a pending mail, or a claimed mail whose claim has expired, for delivery.
+	 *
+	 * @return 1 if the mail has been claimed, 0 otherwise
+	 */
+	@Modifying
+	@Query( "UPDATE SentMail mail SET mail.status = :claimed, mail.claimedAt = :now WHERE mail.id = :id AND (mail.status = :pending OR (mail.status = :claimed AND mail.claimedAt < :claimedBefore))" )
+	int claim( Long id, DeliveryStatus pending, DeliveryStatus claimed, Instant now, Instant claimedBefore );
 }
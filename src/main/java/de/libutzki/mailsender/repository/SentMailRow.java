@@ -0,0 +1,18 @@
+package de.libutzki.mailsender.repository;
+
+import de.libutzki.mailsender.model.SentMailDTO;
+
+/**
+ * Sent mail as selected from the database, with the body either plain or compressed.
+ */
+public record SentMailRow(
+		Long id,
+		String recipient,
+		String subject,
+		String body,
+		byte[] bodyCompressed ) {
+
+	public SentMailDTO toDTO( ) {
+		return new SentMailDTO( id, recipient, subject, bodyCompressed != null ? MailBodyCodec.decompress( bodyCompressed ) : body );
+	}
+}
@@ -0,0 +1,95 @@
+package de.libutzki.mailsender.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+
+/**
+ * Computes the full-text search vector of existing rows (PostgreSQL only). The bodies are decoded in Java, as they may
+ * be stored compressed. The rows are processed in batches of ascending ids, committing after every batch, so an
+ * interrupted migration can simply be restarted.
+ */
+public class SentMailSearchVectorMigration implements CustomTaskChange {
+
+	private static final String UPDATE_SQL = "UPDATE sent_mail SET search_vector = "
+			+ SentMailRepository.SEARCH_VECTOR_EXPRESSION.replaceAll( ":\\w+", "?" ) + " WHERE id = ?";
+
+	private int batchSize = 1_000;
+	private long indexedRows;
+
+	public void setBatchSize( final String batchSize ) {
+		this.batchSize = Integer.parseInt( batchSize );
+	}
+
+	@Override
+	public void execute( final Database database ) throws CustomChangeException {
+		final Connection connection = ( ( JdbcConnection ) database.getConnection( ) ).getUnderlyingConnection( );
+		final String selectSql = """
+				SELECT mail.id, mail.recipient, mail.subject, COALESCE(content.body, mail.body), COALESCE(content.body_compressed, mail.body_compressed)
+				FROM sent_mail mail LEFT JOIN mail_content content ON content.hash = mail.content_hash
+				WHERE mail.id > ? AND mail.search_vector IS NULL ORDER BY mail.id FETCH FIRST %d ROWS ONLY
+				""".formatted( batchSize );
+		try ( PreparedStatement select = connection.prepareStatement( selectSql );
+				PreparedStatement update = connection.prepareStatement( UPDATE_SQL ) ) {
+			long lastId = 0;
+			while ( true ) {
+				select.setLong( 1, lastId );
+				int selectedRows = 0;
+				try ( ResultSet resultSet = select.executeQuery( ) ) {
+					while ( resultSet.next( ) ) {
+						selectedRows++;
+						lastId = resultSet.getLong( 1 );
+						final byte[] bodyCompressed = resultSet.getBytes( 5 );
+						final String body = bodyCompressed != null ? MailBodyCodec.decompress( bodyCompressed ) : resultSet.getString( 4 );
+						update.setString( 1, Objects.toString( resultSet.getString( 2 ), "" ) );
+						update.setString( 2, Objects.toString( resultSet.getString( 3 ), "" ) );
+						update.setString( 3, Objects.toString( body, "" ) );
+						update.setLong( 4, lastId );
+						update.addBatch( );
+						indexedRows++;
+					}
+				}
+				update.executeBatch( );
+				connection.commit( );
+				if ( selectedRows < batchSize ) {
+					return;
+				}
+			}
+		} catch ( final SQLException e ) {
+			throw new CustomChangeException( "Failed to compute the search vectors of sent_mail", e );
+		}
+	}
+
+	@Override
+	public String getConfirmationMessage( ) {
+		return "Computed the search vectors of " + indexedRows + " rows";
+	}
+
+	@Override
+	public void setUp( ) {
+		// Nothing to set up
+	}
+
+	@Override
+	public void setFileOpener( final ResourceAccessor resourceAccessor ) {
+		// No files needed
+	}
+
+	@Override
+	public ValidationErrors validate( final Database database ) {
+		final ValidationErrors validationErrors = new ValidationErrors( );
+		if ( batchSize <= 0 ) {
+			validationErrors.addError( "batchSize has to be positive" );
+		}
+		return validationErrors;
+	}
+}
@@ -0,0 +1,55 @@
+package de.libutzki.mailsender.security;
+
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.keycloak.adapters.KeycloakDeployment;
+import org.keycloak.adapters.rotation.PublicKeyLocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes the realm public keys of the delegate in the background, before its cache expires. Otherwise the first
+ * request after expiry would fetch the keys from the realm while verifying its token.
+ */
+class BackgroundRefreshingPublicKeyLocator implements PublicKeyLocator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( BackgroundRefreshingPublicKeyLocator.class );
+
+	private final PublicKeyLocator delegate;
+	private final ScheduledExecutorService executor;
+	private final long refreshIntervalMillis;
+	private final AtomicBoolean refreshScheduled = new AtomicBoolean( );
+
+	BackgroundRefreshingPublicKeyLocator( final PublicKeyLocator delegate, final ScheduledExecutorService executor, final Duration refreshInterval ) {
+		this.delegate = delegate;
+		this.executor = executor;
+		this.refreshIntervalMillis = refreshInterval.toMillis( );
+	}
+
+	@Override
+	public PublicKey getPublicKey( final String kid, final KeycloakDeployment deployment ) {
+		// Scheduled lazily, as the deployment is needed for fetching the keys
+		if ( refreshScheduled.compareAndSet( false, true ) ) {
+			executor.scheduleWithFixedDelay( ( ) -> refresh( deployment ), refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS );
+		}
+		return delegate.getPublicKey( kid, deployment );
+	}
+
+	@Override
+	public void reset( final KeycloakDeployment deployment ) {
+		delegate.reset( deployment );
+	}
+
+	private void refresh( final KeycloakDeployment deployment ) {
+		try {
+			delegate.reset( deployment );
+		} catch ( final RuntimeException e ) {
+			// The keys fetched before stay in use
+			LOGGER.warn( "Failed to refresh the realm public keys", e );
+		}
+	}
+}
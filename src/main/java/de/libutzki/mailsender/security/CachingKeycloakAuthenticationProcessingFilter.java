@@ -0,0 +1,45 @@
+package de.libutzki.mailsender.security;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.keycloak.adapters.springsecurity.filter.KeycloakAuthenticationProcessingFilter;
+import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * {@link KeycloakAuthenticationProcessingFilter} which authenticates requests carrying an already verified token
+ * cookie from the {@link VerifiedTokenCache}.
+ */
+public class CachingKeycloakAuthenticationProcessingFilter extends KeycloakAuthenticationProcessingFilter {
+
+	private final VerifiedTokenCache verifiedTokenCache;
+
+	public CachingKeycloakAuthenticationProcessingFilter( final AuthenticationManager authenticationManager,
+			final VerifiedTokenCache verifiedTokenCache ) {
+		super( authenticationManager );
+		this.verifiedTokenCache = verifiedTokenCache;
+	}
+
+	@Override
+	public Authentication attemptAuthentication( final HttpServletRequest request, final HttpServletResponse response )
+			throws AuthenticationException, IOException, ServletException {
+		final Optional<String> tokenCookie = VerifiedTokenCache.getTokenCookie( request );
+		if ( tokenCookie.isEmpty( ) ) {
+			return super.attemptAuthentication( request, response );
+		}
+		final Optional<KeycloakAuthenticationToken> cachedAuthentication = verifiedTokenCache.get( tokenCookie.get( ) );
+		if ( cachedAuthentication.isPresent( ) ) {
+			return cachedAuthentication.get( );
+		}
+		final Authentication authentication = super.attemptAuthentication( request, response );
+		verifiedTokenCache.put( tokenCookie.get( ), authentication );
+		return authentication;
+	}
+}
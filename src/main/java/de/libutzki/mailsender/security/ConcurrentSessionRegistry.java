@@ -0,0 +1,173 @@
+package de.libutzki.mailsender.security;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.core.session.AbstractSessionEvent;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.session.SessionIdChangedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+/**
+ * {@link SessionRegistry} with bounded memory: sessions are dropped once they have not seen a request for the timeout
+ * and, beyond the maximum number of sessions, the least recently used ones are dropped. Unlike
+ * {@link org.springframework.security.core.session.SessionRegistryImpl} it takes no global lock, and registering an
+ * already registered session of the same principal just refreshes it.
+ */
+public class ConcurrentSessionRegistry implements SessionRegistry, ApplicationListener<AbstractSessionEvent> {
+
+	private final Cache<String, SessionInformation> sessions;
+	private final ConcurrentMap<Object, Set<String>> sessionIdsByPrincipal = new ConcurrentHashMap<>( );
+
+	public ConcurrentSessionRegistry( final SessionRegistryProperties properties ) {
+		this( properties, ForkJoinPool.commonPool( ), Ticker.systemTicker( ) );
+	}
+
+	ConcurrentSessionRegistry( final SessionRegistryProperties properties, final Executor executor, final Ticker ticker ) {
+		final long timeoutNanos = properties.getTimeout( ).toNanos( );
+		this.sessions = Caffeine.newBuilder( )
+				.maximumSize( properties.getMaximumSessions( ) )
+				// Only registering and refreshing a session keeps it alive, looking it up does not
+				.expireAfter( new Expiry<String, SessionInformation>( ) {
+
+					@Override
+					public long expireAfterCreate( final String key, final SessionInformation value, final long currentTime ) {
+						return timeoutNanos;
+					}
+
+					@Override
+					public long expireAfterUpdate( final String key, final SessionInformation value, final long currentTime,
+							final long currentDuration ) {
+						return timeoutNanos;
+					}
+
+					@Override
+					public long expireAfterRead( final String key, final SessionInformation value, final long currentTime,
+							final long currentDuration ) {
+						return currentDuration;
+					}
+				} )
+				.removalListener( ( final String sessionId, final SessionInformation sessionInformation, final RemovalCause cause ) -> {
+					if ( cause.wasEvicted( ) && sessionId != null && sessionInformation != null ) {
+						removeEvictedSessionId( sessionInformation.getPrincipal( ), sessionId );
+					}
+				} )
+				.executor( executor )
+				.scheduler( Scheduler.systemScheduler( ) )
+				.ticker( ticker )
+				.build( );
+	}
+
+	@Override
+	public List<Object> getAllPrincipals( ) {
+		return new ArrayList<>( sessionIdsByPrincipal.keySet( ) );
+	}
+
+	@Override
+	public List<SessionInformation> getAllSessions( final Object principal, final boolean includeExpiredSessions ) {
+		final Set<String> sessionIds = sessionIdsByPrincipal.get( principal );
+		if ( sessionIds == null ) {
+			return List.of( );
+		}
+		final List<SessionInformation> sessionInformations = new ArrayList<>( sessionIds.size( ) );
+		for ( final String sessionId : sessionIds ) {
+			final SessionInformation sessionInformation = sessions.getIfPresent( sessionId );
+			if ( sessionInformation != null && ( includeExpiredSessions || !sessionInformation.isExpired( ) ) ) {
+				sessionInformations.add( sessionInformation );
+			}
+		}
+		return sessionInformations;
+	}
+
+	@Override
+	public SessionInformation getSessionInformation( final String sessionId ) {
+		return sessions.getIfPresent( sessionId );
+	}
+
+	@Override
+	public void refreshLastRequest( final String sessionId ) {
+		sessions.asMap( ).computeIfPresent( sessionId, ( key, sessionInformation ) -> {
+			sessionInformation.refreshLastRequest( );
+			return sessionInformation;
+		} );
+	}
+
+	@Override
+	public void registerNewSession( final String sessionId, final Object principal ) {
+		sessions.asMap( ).compute( sessionId, ( key, existing ) -> {
+			// The authentication filter registers the session again on every request
+			if ( existing != null && existing.getPrincipal( ).equals( principal ) && !existing.isExpired( ) ) {
+				existing.refreshLastRequest( );
+				return existing;
+			}
+			if ( existing != null ) {
+				removeSessionId( existing.getPrincipal( ), sessionId );
+			}
+			sessionIdsByPrincipal.compute( principal, ( principalKey, sessionIds ) -> {
+				final Set<String> updatedSessionIds = sessionIds != null ? sessionIds : ConcurrentHashMap.newKeySet( );
+				updatedSessionIds.add( sessionId );
+				return updatedSessionIds;
+			} );
+			return new SessionInformation( principal, sessionId, new Date( ) );
+		} );
+	}
+
+	@Override
+	public void removeSessionInformation( final String sessionId ) {
+		sessions.asMap( ).computeIfPresent( sessionId, ( key, sessionInformation ) -> {
+			removeSessionId( sessionInformation.getPrincipal( ), sessionId );
+			return null;
+		} );
+	}
+
+	@Override
+	public void onApplicationEvent( final AbstractSessionEvent event ) {
+		if ( event instanceof final SessionDestroyedEvent sessionDestroyedEvent ) {
+			removeSessionInformation( sessionDestroyedEvent.getId( ) );
+		} else if ( event instanceof final SessionIdChangedEvent sessionIdChangedEvent ) {
+			final SessionInformation sessionInformation = getSessionInformation( sessionIdChangedEvent.getOldSessionId( ) );
+			if ( sessionInformation != null ) {
+				removeSessionInformation( sessionIdChangedEvent.getOldSessionId( ) );
+				registerNewSession( sessionIdChangedEvent.getNewSessionId( ), sessionInformation.getPrincipal( ) );
+			}
+		}
+	}
+
+	long getSessionCount( ) {
+		sessions.cleanUp( );
+		return sessions.estimatedSize( );
+	}
+
+	private void removeSessionId( final Object principal, final String sessionId ) {
+		sessionIdsByPrincipal.computeIfPresent( principal, ( key, sessionIds ) -> {
+			sessionIds.remove( sessionId );
+			return sessionIds.isEmpty( ) ? null : sessionIds;
+		} );
+	}
+
+	private void removeEvictedSessionId( final Object principal, final String sessionId ) {
+		sessionIdsByPrincipal.computeIfPresent( principal, ( key, sessionIds ) -> {
+			// Evictions are notified asynchronously, the session might have been registered again meanwhile
+			final SessionInformation current = sessions.getIfPresent( sessionId );
+			if ( current == null || !current.getPrincipal( ).equals( principal ) ) {
+				sessionIds.remove( sessionId );
+			}
+			return sessionIds.isEmpty( ) ? null : sessionIds;
+		} );
+	}
+}
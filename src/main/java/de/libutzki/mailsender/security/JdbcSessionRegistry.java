@@ -0,0 +1,189 @@
+package de.libutzki.mailsender.security;
+
+import java.security.Principal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.session.AbstractSessionEvent;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.session.SessionIdChangedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * {@link SessionRegistry} keeping the sessions in the {@code session_registry} table, so that the sessions of all
+ * instances are known to every instance. Principals are identified by their name. The last request of a session is
+ * written at most once per {@code last-request-write-interval} per instance, sessions exceeding the timeout are deleted
+ * regularly.
+ */
+public class JdbcSessionRegistry implements SessionRegistry, ApplicationListener<AbstractSessionEvent> {
+
+	private static final String SELECT_SQL = "SELECT session_id, principal_name, last_request, expired FROM session_registry";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final Duration timeout;
+	private final Duration lastRequestWriteInterval;
+	private final Cache<String, LastRequestWrite> lastRequestWrites;
+	private final RowMapper<SessionInformation> rowMapper = this::mapSessionInformation;
+
+	public JdbcSessionRegistry( final DataSource dataSource, final SessionRegistryProperties properties ) {
+		this.jdbcTemplate = new JdbcTemplate( dataSource );
+		this.timeout = properties.getTimeout( );
+		this.lastRequestWriteInterval = properties.getLastRequestWriteInterval( );
+		this.lastRequestWrites = Caffeine.newBuilder( )
+				.maximumSize( properties.getMaximumSessions( ) )
+				.expireAfterWrite( lastRequestWriteInterval )
+				.build( );
+	}
+
+	@Override
+	public List<Object> getAllPrincipals( ) {
+		return jdbcTemplate.queryForList( "SELECT DISTINCT principal_name FROM session_registry WHERE last_request >= ?", Object.class,
+				activeSince( ) );
+	}
+
+	@Override
+	public List<SessionInformation> getAllSessions( final Object principal, final boolean includeExpiredSessions ) {
+		if ( includeExpiredSessions ) {
+			return jdbcTemplate.query( SELECT_SQL + " WHERE principal_name = ? AND last_request >= ?", rowMapper, getName( principal ),
+					activeSince( ) );
+		}
+		return jdbcTemplate.query( SELECT_SQL + " WHERE principal_name = ? AND last_request >= ? AND expired = ?", rowMapper,
+				getName( principal ), activeSince( ), false );
+	}
+
+	@Override
+	public SessionInformation getSessionInformation( final String sessionId ) {
+		return jdbcTemplate.query( SELECT_SQL + " WHERE session_id = ? AND last_request >= ?", rowMapper, sessionId, activeSince( ) ).stream( )
+				.findFirst( )
+				.orElse( null );
+	}
+
+	@Override
+	public void refreshLastRequest( final String sessionId ) {
+		final Instant now = Instant.now( );
+		final LastRequestWrite lastWrite = lastRequestWrites.getIfPresent( sessionId );
+		if ( lastWrite != null && lastWrite.isRecent( now, lastRequestWriteInterval ) ) {
+			return;
+		}
+		if ( jdbcTemplate.update( "UPDATE session_registry SET last_request = ? WHERE session_id = ?", Timestamp.from( now ), sessionId ) > 0
+				&& lastWrite != null ) {
+			lastRequestWrites.put( sessionId, new LastRequestWrite( lastWrite.principalName( ), now ) );
+		}
+	}
+
+	@Override
+	public void registerNewSession( final String sessionId, final Object principal ) {
+		final Instant now = Instant.now( );
+		final String principalName = getName( principal );
+		// The authentication filter registers the session again on every request
+		final LastRequestWrite lastWrite = lastRequestWrites.getIfPresent( sessionId );
+		if ( lastWrite != null && lastWrite.principalName( ).equals( principalName ) && lastWrite.isRecent( now, lastRequestWriteInterval ) ) {
+			return;
+		}
+		try {
+			if ( update( sessionId, principalName, now ) == 0 ) {
+				jdbcTemplate.update( "INSERT INTO session_registry (session_id, principal_name, last_request, expired) VALUES (?, ?, ?, ?)",
+						sessionId, principalName, Timestamp.from( now ), false );
+			}
+		} catch ( final DuplicateKeyException e ) {
+			// Registered concurrently by another request of the same session
+			update( sessionId, principalName, now );
+		}
+		lastRequestWrites.put( sessionId, new LastRequestWrite( principalName, now ) );
+	}
+
+	@Override
+	public void removeSessionInformation( final String sessionId ) {
+		jdbcTemplate.update( "DELETE FROM session_registry WHERE session_id = ?", sessionId );
+		lastRequestWrites.invalidate( sessionId );
+	}
+
+	@Override
+	public void onApplicationEvent( final AbstractSessionEvent event ) {
+		if ( event instanceof final SessionDestroyedEvent sessionDestroyedEvent ) {
+			removeSessionInformation( sessionDestroyedEvent.getId( ) );
+		} else if ( event instanceof final SessionIdChangedEvent sessionIdChangedEvent ) {
+			final SessionInformation sessionInformation = getSessionInformation( sessionIdChangedEvent.getOldSessionId( ) );
+			if ( sessionInformation != null ) {
+				removeSessionInformation( sessionIdChangedEvent.getOldSessionId( ) );
+				registerNewSession( sessionIdChangedEvent.getNewSessionId( ), sessionInformation.getPrincipal( ) );
+			}
+		}
+	}
+
+	/**
+	 * Deletes the sessions exceeding the timeout. Every instance does so, the deletes are idempotent.
+	 */
+	@Scheduled( fixedDelayString = "${mailsender.session-registry.cleanup-interval:PT5M}" )
+	public int deleteTimedOutSessions( ) {
+		return jdbcTemplate.update( "DELETE FROM session_registry WHERE last_request < ?", activeSince( ) );
+	}
+
+	private int update( final String sessionId, final String principalName, final Instant now ) {
+		return jdbcTemplate.update( "UPDATE session_registry SET principal_name = ?, last_request = ?, expired = ? WHERE session_id = ?",
+				principalName, Timestamp.from( now ), false, sessionId );
+	}
+
+	private Timestamp activeSince( ) {
+		return Timestamp.from( Instant.now( ).minus( timeout ) );
+	}
+
+	private SessionInformation mapSessionInformation( final ResultSet resultSet, final int rowNum ) throws SQLException {
+		return new JdbcSessionInformation( jdbcTemplate, resultSet.getString( "principal_name" ), resultSet.getString( "session_id" ),
+				resultSet.getTimestamp( "last_request" ), resultSet.getBoolean( "expired" ) );
+	}
+
+	private static String getName( final Object principal ) {
+		return principal instanceof final Principal namedPrincipal ? namedPrincipal.getName( ) : principal.toString( );
+	}
+
+	private record LastRequestWrite( String principalName, Instant time ) {
+
+		boolean isRecent( final Instant now, final Duration interval ) {
+			return time.plus( interval ).isAfter( now );
+		}
+	}
+
+	/**
+	 * Persists expiring the session, so that all instances see it.
+	 */
+	private static final class JdbcSessionInformation extends SessionInformation {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient JdbcTemplate jdbcTemplate;
+
+		private JdbcSessionInformation( final JdbcTemplate jdbcTemplate, final String principalName, final String sessionId,
+				final Date lastRequest, final boolean expired ) {
+			super( principalName, sessionId, lastRequest );
+			this.jdbcTemplate = jdbcTemplate;
+			if ( expired ) {
+				super.expireNow( );
+			}
+		}
+
+		@Override
+		public void expireNow( ) {
+			if ( !isExpired( ) && jdbcTemplate != null ) {
+				jdbcTemplate.update( "UPDATE session_registry SET expired = ? WHERE session_id = ?", true, getSessionId( ) );
+			}
+			super.expireNow( );
+		}
+	}
+}
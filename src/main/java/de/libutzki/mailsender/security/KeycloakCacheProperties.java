@@ -0,0 +1,46 @@
+package de.libutzki.mailsender.security;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties( prefix = "mailsender.keycloak" )
+public class KeycloakCacheProperties {
+
+	/**
+	 * Whether to cache the authentications verified from the token cookie until the access token expires.
+	 */
+	private boolean tokenCacheEnabled = true;
+
+	private long tokenCacheMaximumSize = 10_000;
+
+	/**
+	 * Interval of refreshing the realm public keys in the background. Has to be shorter than the public key cache TTL
+	 * of the adapter, so that keys are never fetched on the request path.
+	 */
+	private Duration publicKeyRefreshInterval = Duration.ofHours( 1 );
+
+	public boolean isTokenCacheEnabled( ) {
+		return tokenCacheEnabled;
+	}
+
+	public void setTokenCacheEnabled( final boolean tokenCacheEnabled ) {
+		this.tokenCacheEnabled = tokenCacheEnabled;
+	}
+
+	public long getTokenCacheMaximumSize( ) {
+		return tokenCacheMaximumSize;
+	}
+
+	public void setTokenCacheMaximumSize( final long tokenCacheMaximumSize ) {
+		this.tokenCacheMaximumSize = tokenCacheMaximumSize;
+	}
+
+	public Duration getPublicKeyRefreshInterval( ) {
+		return publicKeyRefreshInterval;
+	}
+
+	public void setPublicKeyRefreshInterval( final Duration publicKeyRefreshInterval ) {
+		this.publicKeyRefreshInterval = publicKeyRefreshInterval;
+	}
+}
@@ -0,0 +1,46 @@
+package de.libutzki.mailsender.security;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.keycloak.adapters.KeycloakDeployment;
+import org.keycloak.adapters.OIDCHttpFacade;
+import org.keycloak.adapters.springboot.KeycloakSpringBootConfigResolver;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * {@link KeycloakSpringBootConfigResolver} whose deployment refreshes the realm public keys in the background, see
+ * {@link BackgroundRefreshingPublicKeyLocator}.
+ */
+public class RefreshingKeycloakConfigResolver extends KeycloakSpringBootConfigResolver implements DisposableBean {
+
+	private final KeycloakCacheProperties properties;
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+		final Thread thread = new Thread( runnable, "keycloak-public-key-refresh" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	public RefreshingKeycloakConfigResolver( final KeycloakCacheProperties properties ) {
+		this.properties = properties;
+	}
+
+	@Override
+	public KeycloakDeployment resolve( final OIDCHttpFacade.Request request ) {
+		final KeycloakDeployment deployment = super.resolve( request );
+		if ( !( deployment.getPublicKeyLocator( ) instanceof BackgroundRefreshingPublicKeyLocator ) ) {
+			synchronized ( this ) {
+				if ( !( deployment.getPublicKeyLocator( ) instanceof BackgroundRefreshingPublicKeyLocator ) ) {
+					deployment.setPublicKeyLocator( new BackgroundRefreshingPublicKeyLocator( deployment.getPublicKeyLocator( ), executor,
+							properties.getPublicKeyRefreshInterval( ) ) );
+				}
+			}
+		}
+		return deployment;
+	}
+
+	@Override
+	public void destroy( ) {
+		executor.shutdownNow( );
+	}
+}
@@ -1,19 +1,36 @@
 package de.libutzki.mailsender.security;
 
+import javax.sql.DataSource;
+
 import org.keycloak.adapters.springsecurity.KeycloakConfiguration;
 import org.keycloak.adapters.springsecurity.config.KeycloakWebSecurityConfigurerAdapter;
+import org.keycloak.adapters.springsecurity.filter.KeycloakAuthenticationProcessingFilter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.health.HealthEndpoint;
 import org.springframework.context.annotation.Bean;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.core.session.SessionRegistry;
-import org.springframework.security.core.session.SessionRegistryImpl;
 import org.springframework.security.web.authentication.session.NullAuthenticatedSessionStrategy;
 import org.springframework.security.web.authentication.session.RegisterSessionAuthenticationStrategy;
 import org.springframework.security.web.authentication.session.SessionAuthenticationStrategy;
 
 @KeycloakConfiguration
 public class SecurityConfig extends KeycloakWebSecurityConfigurerAdapter {
+
+	private final VerifiedTokenCache verifiedTokenCache;
+	private final SessionRegistryProperties sessionRegistryProperties;
+	private final ObjectProvider<DataSource> dataSource;
+
+	public SecurityConfig(final VerifiedTokenCache verifiedTokenCache, final SessionRegistryProperties sessionRegistryProperties,
+			final ObjectProvider<DataSource> dataSource) {
+		this.verifiedTokenCache = verifiedTokenCache;
+		this.sessionRegistryProperties = sessionRegistryProperties;
+		this.dataSource = dataSource;
+	}
+
 	/**
 	 * Registers the KeycloakAuthenticationProvider with the authentication manager.
 	 */
@@ -31,9 +48,26 @@ public class SecurityConfig extends KeycloakWebSecurityConfigurerAdapter {
 		return new RegisterSessionAuthenticationStrategy(buildSessionRegistry());
 	}
 
+	/**
+	 * Authenticates requests with an already verified token cookie from the cache.
+	 */
+	@Bean
+	@Override
+	protected KeycloakAuthenticationProcessingFilter keycloakAuthenticationProcessingFilter() throws Exception {
+		final KeycloakAuthenticationProcessingFilter filter = new CachingKeycloakAuthenticationProcessingFilter(authenticationManagerBean(), verifiedTokenCache);
+		filter.setSessionAuthenticationStrategy(sessionAuthenticationStrategy());
+		return filter;
+	}
+
+	/**
+	 * Bounded in memory, or shared by all instances in the database.
+	 */
 	@Bean
 	protected SessionRegistry buildSessionRegistry() {
-		return new SessionRegistryImpl();
+		if (sessionRegistryProperties.getMode() == SessionRegistryProperties.Mode.JDBC) {
+			return new JdbcSessionRegistry(dataSource.getObject(), sessionRegistryProperties);
+		}
+		return new ConcurrentSessionRegistry(sessionRegistryProperties);
 	}
 
 	@Override
@@ -45,11 +79,16 @@ public class SecurityConfig extends KeycloakWebSecurityConfigurerAdapter {
 			.sessionAuthenticationStrategy(new NullAuthenticatedSessionStrategy())
 			.and()
 			.authorizeRequests()
+			// Probed without a user session. Metrics are tagged by sender, so they are scraped with the bearer token of a
+			// Keycloak service account
+			.requestMatchers(EndpointRequest.to(HealthEndpoint.class))
+			.permitAll()
 			.anyRequest()
 			.authenticated()
 			.and()
 			.logout()
 			.addLogoutHandler(keycloakLogoutHandler())
+			.addLogoutHandler(verifiedTokenCache)
 			.logoutUrl("/sso/logout")
 			.permitAll()
 			.logoutSuccessUrl("/logout-successful");
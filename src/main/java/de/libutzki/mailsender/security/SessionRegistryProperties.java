@@ -0,0 +1,69 @@
+package de.libutzki.mailsender.security;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties( prefix = "mailsender.session-registry" )
+public class SessionRegistryProperties {
+
+	public enum Mode {
+		/**
+		 * Sessions of this instance only, kept in memory.
+		 */
+		IN_MEMORY,
+		/**
+		 * Sessions of all instances, kept in the database.
+		 */
+		JDBC
+	}
+
+	private Mode mode = Mode.IN_MEMORY;
+
+	/**
+	 * Maximum number of sessions kept in memory, the least recently used ones are dropped beyond.
+	 */
+	private long maximumSessions = 100_000;
+
+	/**
+	 * Time after the last request after which a session is dropped, should match {@code server.servlet.session.timeout}.
+	 */
+	private Duration timeout = Duration.ofMinutes( 30 );
+
+	/**
+	 * Minimum time between two writes of the last request of a session to the database.
+	 */
+	private Duration lastRequestWriteInterval = Duration.ofMinutes( 1 );
+
+	public Mode getMode( ) {
+		return mode;
+	}
+
+	public void setMode( final Mode mode ) {
+		this.mode = mode;
+	}
+
+	public long getMaximumSessions( ) {
+		return maximumSessions;
+	}
+
+	public void setMaximumSessions( final long maximumSessions ) {
+		this.maximumSessions = maximumSessions;
+	}
+
+	public Duration getTimeout( ) {
+		return timeout;
+	}
+
+	public void setTimeout( final Duration timeout ) {
+		this.timeout = timeout;
+	}
+
+	public Duration getLastRequestWriteInterval( ) {
+		return lastRequestWriteInterval;
+	}
+
+	public void setLastRequestWriteInterval( final Duration lastRequestWriteInterval ) {
+		this.lastRequestWriteInterval = lastRequestWriteInterval;
+	}
+}
@@ -0,0 +1,142 @@
+package de.libutzki.mailsender.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.keycloak.KeycloakSecurityContext;
+import org.keycloak.adapters.RefreshableKeycloakSecurityContext;
+import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+import org.keycloak.constants.AdapterConstants;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.logout.LogoutHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.WebUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * Caches the authentications verified from the Keycloak token cookie by the digest of the cookie, so that the tokens
+ * are parsed and their signatures verified once instead of on every request. Entries expire with the access token and
+ * are checked against the not-before policy of the realm on every hit.
+ */
+@Component
+public class VerifiedTokenCache implements LogoutHandler {
+
+	// See org.keycloak.adapters.CookieTokenStore
+	private static final String COOKIE_TOKEN_DELIMITER = "___";
+
+	private final boolean enabled;
+	private final Cache<String, KeycloakAuthenticationToken> cache;
+
+	public VerifiedTokenCache( final KeycloakCacheProperties properties ) {
+		this.enabled = properties.isTokenCacheEnabled( );
+		this.cache = Caffeine.newBuilder( )
+				.maximumSize( properties.getTokenCacheMaximumSize( ) )
+				.expireAfter( new AccessTokenExpiry( ) )
+				.build( );
+	}
+
+	/**
+	 * Returns the token cookie of the request, unless the request authenticates by a bearer token.
+	 */
+	public static Optional<String> getTokenCookie( final HttpServletRequest request ) {
+		if ( request.getHeader( HttpHeaders.AUTHORIZATION ) != null ) {
+			return Optional.empty( );
+		}
+		return Optional.ofNullable( WebUtils.getCookie( request, AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE ) ).map( Cookie::getValue );
+	}
+
+	/**
+	 * Returns the cached authentication of the token cookie, if it is still active.
+	 */
+	public Optional<KeycloakAuthenticationToken> get( final String tokenCookie ) {
+		if ( !enabled ) {
+			return Optional.empty( );
+		}
+		final String digest = digest( tokenCookie );
+		final KeycloakAuthenticationToken authentication = cache.getIfPresent( digest );
+		if ( authentication == null ) {
+			return Optional.empty( );
+		}
+		// Covers a not-before policy pushed by the realm after the authentication has been cached
+		if ( !isActive( authentication ) ) {
+			cache.invalidate( digest );
+			return Optional.empty( );
+		}
+		return Optional.of( authentication );
+	}
+
+	/**
+	 * Caches the authentication verified from the token cookie. Authentications whose tokens have been refreshed during
+	 * the verification do not belong to the cookie anymore and are not cached.
+	 */
+	public void put( final String tokenCookie, final Authentication authentication ) {
+		if ( enabled && authentication instanceof final KeycloakAuthenticationToken keycloakAuthentication && isActive( keycloakAuthentication )
+				&& tokenCookie.startsWith( getSecurityContext( keycloakAuthentication ).getTokenString( ) + COOKIE_TOKEN_DELIMITER ) ) {
+			cache.put( digest( tokenCookie ), keycloakAuthentication );
+		}
+	}
+
+	@Override
+	public void logout( final HttpServletRequest request, final HttpServletResponse response, final Authentication authentication ) {
+		getTokenCookie( request ).ifPresent( tokenCookie -> cache.invalidate( digest( tokenCookie ) ) );
+	}
+
+	long getSize( ) {
+		cache.cleanUp( );
+		return cache.estimatedSize( );
+	}
+
+	private static boolean isActive( final KeycloakAuthenticationToken authentication ) {
+		final KeycloakSecurityContext securityContext = getSecurityContext( authentication );
+		return securityContext instanceof final RefreshableKeycloakSecurityContext refreshableSecurityContext
+				&& refreshableSecurityContext.isActive( );
+	}
+
+	private static KeycloakSecurityContext getSecurityContext( final KeycloakAuthenticationToken authentication ) {
+		return authentication.getAccount( ).getKeycloakSecurityContext( );
+	}
+
+	private static String digest( final String tokenCookie ) {
+		try {
+			return HexFormat.of( ).formatHex( MessageDigest.getInstance( "SHA-256" ).digest( tokenCookie.getBytes( StandardCharsets.UTF_8 ) ) );
+		} catch ( final NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( "SHA-256 is not supported", e );
+		}
+	}
+
+	private static final class AccessTokenExpiry implements Expiry<String, KeycloakAuthenticationToken> {
+
+		@Override
+		public long expireAfterCreate( final String key, final KeycloakAuthenticationToken value, final long currentTime ) {
+			final Long expiration = getSecurityContext( value ).getToken( ).getExp( );
+			if ( expiration == null ) {
+				return 0;
+			}
+			return Math.max( 0, TimeUnit.SECONDS.toNanos( expiration ) - TimeUnit.MILLISECONDS.toNanos( System.currentTimeMillis( ) ) );
+		}
+
+		@Override
+		public long expireAfterUpdate( final String key, final KeycloakAuthenticationToken value, final long currentTime,
+				final long currentDuration ) {
+			return expireAfterCreate( key, value, currentTime );
+		}
+
+		@Override
+		public long expireAfterRead( final String key, final KeycloakAuthenticationToken value, final long currentTime,
+				final long currentDuration ) {
+			return currentDuration;
+		}
+	}
+}
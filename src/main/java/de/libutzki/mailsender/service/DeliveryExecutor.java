@@ -0,0 +1,133 @@
+package de.libutzki.mailsender.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import de.libutzki.mailsender.service.DeliveryProperties.ExecutorType;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Runs mail deliveries, which consist almost entirely of blocking I/O. On JDK 21+ every delivery gets a virtual thread
+ * of its own, on older JDKs deliveries run on a bounded pool of platform threads. In both cases at most
+ * {@code mailsender.delivery.max-in-flight} deliveries run at the same time, further ones are queued without blocking
+ * the submitting thread.
+ */
+@Component
+public class DeliveryExecutor implements DisposableBean, MeterBinder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( DeliveryExecutor.class );
+
+	private static final int VIRTUAL_THREADS_FEATURE_VERSION = 21;
+
+	private final ExecutorService executorService;
+	private final int maxInFlight;
+	private final Semaphore inFlightPermits;
+	private final Queue<Runnable> queuedTasks = new ConcurrentLinkedQueue<>( );
+	private final AtomicInteger queuedCount = new AtomicInteger( );
+
+	public DeliveryExecutor( final DeliveryProperties deliveryProperties ) {
+		this.executorService = createExecutorService( deliveryProperties );
+		this.maxInFlight = deliveryProperties.getMaxInFlight( );
+		this.inFlightPermits = new Semaphore( maxInFlight );
+	}
+
+	public void execute( final Runnable task ) {
+		queuedTasks.add( task );
+		queuedCount.incrementAndGet( );
+		drain( );
+	}
+
+	public int getInFlightCount( ) {
+		return maxInFlight - inFlightPermits.availablePermits( );
+	}
+
+	public int getQueuedCount( ) {
+		return queuedCount.get( );
+	}
+
+	@Override
+	public void bindTo( final MeterRegistry registry ) {
+		Gauge.builder( "mailsender.delivery.in-flight", this, DeliveryExecutor::getInFlightCount ).register( registry );
+		Gauge.builder( "mailsender.delivery.queued", this, DeliveryExecutor::getQueuedCount ).register( registry );
+	}
+
+	@Override
+	public void destroy( ) throws InterruptedException {
+		executorService.shutdown( );
+		if ( !executorService.awaitTermination( 10, TimeUnit.SECONDS ) ) {
+			LOGGER.warn( "Mail deliveries still in flight on shutdown" );
+			executorService.shutdownNow( );
+		}
+	}
+
+	private void drain( ) {
+		while ( inFlightPermits.tryAcquire( ) ) {
+			final Runnable task = queuedTasks.poll( );
+			if ( task == null ) {
+				inFlightPermits.release( );
+				// A task might have been queued after polling, but before releasing the permit
+				if ( queuedTasks.isEmpty( ) ) {
+					return;
+				}
+				continue;
+			}
+			queuedCount.decrementAndGet( );
+			executorService.execute( ( ) -> run( task ) );
+		}
+	}
+
+	private void run( final Runnable task ) {
+		try {
+			task.run( );
+		} catch ( final RuntimeException e ) {
+			LOGGER.error( "Mail delivery failed unexpectedly", e );
+		} finally {
+			inFlightPermits.release( );
+			drain( );
+		}
+	}
+
+	static ExecutorService createExecutorService( final DeliveryProperties deliveryProperties ) {
+		final boolean virtualThreadsAvailable = Runtime.version( ).feature( ) >= VIRTUAL_THREADS_FEATURE_VERSION;
+		final ExecutorType executorType = deliveryProperties.getExecutorType( );
+		if ( executorType == ExecutorType.VIRTUAL && !virtualThreadsAvailable ) {
+			throw new IllegalStateException( "Virtual threads require JDK " + VIRTUAL_THREADS_FEATURE_VERSION + " or later" );
+		}
+		if ( executorType != ExecutorType.PLATFORM && virtualThreadsAvailable ) {
+			return newVirtualThreadPerTaskExecutor( );
+		}
+		return Executors.newFixedThreadPool( deliveryProperties.getPlatformPoolSize( ), new DeliveryThreadFactory( ) );
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor( ) {
+		// Looked up reflectively, as the application is still compiled for JDK 17
+		try {
+			return ( ExecutorService ) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+		} catch ( final ReflectiveOperationException e ) {
+			throw new IllegalStateException( "Failed to create virtual thread executor", e );
+		}
+	}
+
+	private static final class DeliveryThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger( );
+
+		@Override
+		public Thread newThread( final Runnable runnable ) {
+			return new Thread( runnable, "mail-delivery-" + threadNumber.incrementAndGet( ) );
+		}
+	}
+}
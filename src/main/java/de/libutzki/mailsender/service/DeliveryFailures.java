@@ -0,0 +1,56 @@
+package de.libutzki.mailsender.service;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.mail.SendFailedException;
+
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+final class DeliveryFailures {
+
+	private DeliveryFailures( ) {
+	}
+
+	/**
+	 * A failure is permanent if the relay rejected the message or a recipient with a 5xx reply, e.g. because of an
+	 * invalid recipient, or if JavaMail rejected the message without a reply of the relay. Retrying will not help then.
+	 * 4xx replies, e.g. because of greylisting, and all other failures, like refused connections or timeouts, are
+	 * transient.
+	 */
+	static boolean isPermanent( final Throwable failure ) {
+		boolean permanent = false;
+		for ( Throwable cause = failure; cause != null; cause = cause.getCause( ) ) {
+			final int returnCode = returnCodeOf( cause );
+			if ( returnCode >= 400 && returnCode < 500 ) {
+				return false;
+			}
+			permanent |= returnCode >= 500 || cause instanceof SendFailedException;
+		}
+		return permanent;
+	}
+
+	private static int returnCodeOf( final Throwable failure ) {
+		if ( failure instanceof SMTPSendFailedException sendFailedException ) {
+			return sendFailedException.getReturnCode( );
+		}
+		if ( failure instanceof SMTPAddressFailedException addressFailedException ) {
+			return addressFailedException.getReturnCode( );
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the failures of the single messages, if the exception provides them, otherwise the exception itself.
+	 */
+	static Collection<Exception> failuresOf( final MailException failure ) {
+		if ( failure instanceof MailSendException mailSendException && !mailSendException.getFailedMessages( ).isEmpty( ) ) {
+			return mailSendException.getFailedMessages( ).values( );
+		}
+		return List.of( failure );
+	}
+}
@@ -0,0 +1,14 @@
+package de.libutzki.mailsender.service;
+
+public enum DeliveryMode {
+
+	/**
+	 * The mail is sent via SMTP within the request and the database transaction.
+	 */
+	SYNCHRONOUS,
+
+	/**
+	 * The mail is stored as pending within the request and delivered by the {@link MailDispatcher} after commit.
+	 */
+	OUTBOX
+}
@@ -0,0 +1,193 @@
+package de.libutzki.mailsender.service;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties( prefix = "mailsender.delivery" )
+public class DeliveryProperties {
+
+	public enum ExecutorType {
+		/**
+		 * Virtual threads if the JDK supports them, platform threads otherwise.
+		 */
+		AUTO,
+		VIRTUAL,
+		PLATFORM
+	}
+
+	private DeliveryMode mode = DeliveryMode.SYNCHRONOUS;
+
+	private ExecutorType executorType = ExecutorType.AUTO;
+
+	/**
+	 * Maximum number of deliveries running at the same time.
+	 */
+	private int maxInFlight = 200;
+
+	/**
+	 * Number of platform threads used for deliveries if virtual threads are not used.
+	 */
+	private int platformPoolSize = 16;
+
+	/**
+	 * Maximum number of pending mails picked up by a single sweep of the dispatcher.
+	 */
+	private int sweepBatchSize = 100;
+
+	/**
+	 * Time after which a mail claimed for delivery without a recorded outcome, e.g. because the instance crashed while
+	 * sending it, is picked up by the sweep again. Has to exceed the duration of a delivery.
+	 */
+	private Duration claimTimeout = Duration.ofMinutes( 5 );
+
+	private final Retry retry = new Retry( );
+
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker( );
+
+	public DeliveryMode getMode( ) {
+		return mode;
+	}
+
+	public void setMode( final DeliveryMode mode ) {
+		this.mode = mode;
+	}
+
+	public ExecutorType getExecutorType( ) {
+		return executorType;
+	}
+
+	public void setExecutorType( final ExecutorType executorType ) {
+		this.executorType = executorType;
+	}
+
+	public int getMaxInFlight( ) {
+		return maxInFlight;
+	}
+
+	public void setMaxInFlight( final int maxInFlight ) {
+		this.maxInFlight = maxInFlight;
+	}
+
+	public int getPlatformPoolSize( ) {
+		return platformPoolSize;
+	}
+
+	public void setPlatformPoolSize( final int platformPoolSize ) {
+		this.platformPoolSize = platformPoolSize;
+	}
+
+	public int getSweepBatchSize( ) {
+		return sweepBatchSize;
+	}
+
+	public void setSweepBatchSize( final int sweepBatchSize ) {
+		this.sweepBatchSize = sweepBatchSize;
+	}
+
+	public Duration getClaimTimeout( ) {
+		return claimTimeout;
+	}
+
+	public void setClaimTimeout( final Duration claimTimeout ) {
+		this.claimTimeout = claimTimeout;
+	}
+
+	public Retry getRetry( ) {
+		return retry;
+	}
+
+	public CircuitBreaker getCircuitBreaker( ) {
+		return circuitBreaker;
+	}
+
+	public static class Retry {
+
+		/**
+		 * Maximum number of delivery attempts of a mail failing with transient errors.
+		 */
+		private int maxAttempts = 5;
+
+		private Duration initialBackoff = Duration.ofSeconds( 30 );
+
+		private Duration maxBackoff = Duration.ofMinutes( 30 );
+
+		private double multiplier = 2;
+
+		/**
+		 * Relative random deviation of the backoff, so that retries of mails which failed together spread out.
+		 */
+		private double jitter = 0.2;
+
+		public int getMaxAttempts( ) {
+			return maxAttempts;
+		}
+
+		public void setMaxAttempts( final int maxAttempts ) {
+			this.maxAttempts = maxAttempts;
+		}
+
+		public Duration getInitialBackoff( ) {
+			return initialBackoff;
+		}
+
+		public void setInitialBackoff( final Duration initialBackoff ) {
+			this.initialBackoff = initialBackoff;
+		}
+
+		public Duration getMaxBackoff( ) {
+			return maxBackoff;
+		}
+
+		public void setMaxBackoff( final Duration maxBackoff ) {
+			this.maxBackoff = maxBackoff;
+		}
+
+		public double getMultiplier( ) {
+			return multiplier;
+		}
+
+		public void setMultiplier( final double multiplier ) {
+			this.multiplier = multiplier;
+		}
+
+		public double getJitter( ) {
+			return jitter;
+		}
+
+		public void setJitter( final double jitter ) {
+			this.jitter = jitter;
+		}
+
+	}
+
+	public static class CircuitBreaker {
+
+		/**
+		 * Number of consecutive transient failures which open the circuit.
+		 */
+		private int failureThreshold = 5;
+
+		/**
+		 * Time the circuit stays open before a trial send is let through.
+		 */
+		private Duration openDuration = Duration.ofSeconds( 30 );
+
+		public int getFailureThreshold( ) {
+			return failureThreshold;
+		}
+
+		public void setFailureThreshold( final int failureThreshold ) {
+			this.failureThreshold = failureThreshold;
+		}
+
+		public Duration getOpenDuration( ) {
+			return openDuration;
+		}
+
+		public void setOpenDuration( final Duration openDuration ) {
+			this.openDuration = openDuration;
+		}
+
+	}
+}
@@ -0,0 +1,234 @@
+package de.libutzki.mailsender.service;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Shapes deliveries per recipient domain: every domain has a queue of its own, a cap on concurrent SMTP sessions and a
+ * lock-free token bucket limiting the messages per second. A backlog for one domain therefore never holds back
+ * deliveries to other domains. Lanes of idle domains are evicted regularly, the queued deliveries per domain are
+ * published as gauge {@code mailsender.delivery.domain.queued}.
+ */
+@Component
+public class DomainScheduler implements DisposableBean, MeterBinder {
+
+	private static final long MAINTENANCE_INTERVAL_SECONDS = 30;
+
+	private final DeliveryExecutor deliveryExecutor;
+	private final DomainThrottleProperties properties;
+	private final Map<String, DomainLane> lanes = new ConcurrentHashMap<>( );
+	private final ScheduledExecutorService timer;
+	private volatile MultiGauge queueDepthGauge;
+
+	public DomainScheduler( final DeliveryExecutor deliveryExecutor, final DomainThrottleProperties properties ) {
+		this.deliveryExecutor = deliveryExecutor;
+		this.properties = properties;
+		this.timer = Executors.newSingleThreadScheduledExecutor( runnable -> {
+			final Thread thread = new Thread( runnable, "domain-scheduler" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		timer.scheduleWithFixedDelay( this::evictIdleLanes, MAINTENANCE_INTERVAL_SECONDS, MAINTENANCE_INTERVAL_SECONDS, TimeUnit.SECONDS );
+	}
+
+	/**
+	 * Returns the maximum number of messages of a single delivery to the given domain, i.e. the capacity of its token
+	 * bucket. Larger batches have to be split by the caller.
+	 */
+	public int getMaxMessageCount( final String domain ) {
+		return TokenBucket.capacity( properties.getMessagesPerSecond( domain ) );
+	}
+
+	/**
+	 * Submits a delivery of {@code messageCount} messages to the given domain, which is executed as soon as the limits
+	 * of the domain allow it.
+	 *
+	 * @throws IllegalArgumentException if the delivery exceeds {@link #getMaxMessageCount(String)}
+	 */
+	public void submit( final String domain, final int messageCount, final Runnable delivery ) {
+		if ( messageCount > getMaxMessageCount( domain ) ) {
+			throw new IllegalArgumentException( "A delivery to " + domain + " must not exceed " + getMaxMessageCount( domain ) + " messages" );
+		}
+		// Queued within compute, so that the lane cannot be evicted in between
+		final DomainLane lane = lanes.compute( domain, ( key, existingLane ) -> {
+			final DomainLane currentLane = existingLane != null ? existingLane : createLane( key );
+			currentLane.queue.add( new DomainTask( messageCount, delivery ) );
+			currentLane.queueDepth.incrementAndGet( );
+			return currentLane;
+		} );
+		drain( lane );
+	}
+
+	/**
+	 * The gauge lists the domains which had a lane at the last maintenance run.
+	 */
+	@Override
+	public void bindTo( final MeterRegistry registry ) {
+		queueDepthGauge = MultiGauge.builder( "mailsender.delivery.domain.queued" )
+				.description( "Deliveries waiting for the limits of their recipient domain" )
+				.register( registry );
+		updateQueueDepthGauge( );
+	}
+
+	@Override
+	public void destroy( ) {
+		timer.shutdownNow( );
+	}
+
+	/**
+	 * Removes the lanes of domains without queued or running deliveries, whose token bucket has been refilled. The lane
+	 * of a domain is recreated on its next delivery, so the lanes do not pile up over all domains ever delivered to.
+	 */
+	void evictIdleLanes( ) {
+		lanes.keySet( ).forEach( domain -> lanes.computeIfPresent( domain, ( key, lane ) -> lane.isIdle( ) ? null : lane ) );
+		updateQueueDepthGauge( );
+	}
+
+	private void updateQueueDepthGauge( ) {
+		final MultiGauge gauge = queueDepthGauge;
+		if ( gauge == null ) {
+			return;
+		}
+		final List<MultiGauge.Row<?>> rows = new ArrayList<>( );
+		lanes.forEach( ( domain, lane ) -> rows.add( MultiGauge.Row.of( Tags.of( "domain", domain ), lane, queuedLane -> queuedLane.queueDepth.get( ) ) ) );
+		gauge.register( rows, true );
+	}
+
+	private DomainLane createLane( final String domain ) {
+		return new DomainLane( properties.getMaxSessions( domain ), new TokenBucket( properties.getMessagesPerSecond( domain ) ) );
+	}
+
+	private void drain( final DomainLane lane ) {
+		while ( lane.sessions.tryAcquire( ) ) {
+			final DomainTask task = lane.queue.poll( );
+			if ( task == null ) {
+				lane.sessions.release( );
+				// A task might have been queued after polling, but before releasing the session
+				if ( lane.queue.isEmpty( ) ) {
+					return;
+				}
+				continue;
+			}
+
+			final long waitNanos = lane.tokenBucket.tryConsume( task.messageCount );
+			if ( waitNanos > 0 ) {
+				lane.queue.addFirst( task );
+				lane.sessions.release( );
+				scheduleDrain( lane, waitNanos );
+				return;
+			}
+
+			lane.queueDepth.decrementAndGet( );
+			deliveryExecutor.execute( ( ) -> {
+				try {
+					task.delivery.run( );
+				} finally {
+					lane.sessions.release( );
+					drain( lane );
+				}
+			} );
+		}
+	}
+
+	private void scheduleDrain( final DomainLane lane, final long waitNanos ) {
+		if ( lane.drainScheduled.compareAndSet( false, true ) ) {
+			timer.schedule( ( ) -> {
+				lane.drainScheduled.set( false );
+				drain( lane );
+			}, waitNanos, TimeUnit.NANOSECONDS );
+		}
+	}
+
+	private record DomainTask( int messageCount, Runnable delivery ) {
+	}
+
+	private static final class DomainLane {
+
+		private final Deque<DomainTask> queue = new ConcurrentLinkedDeque<>( );
+		private final AtomicInteger queueDepth = new AtomicInteger( );
+		private final AtomicBoolean drainScheduled = new AtomicBoolean( );
+		private final int maxSessions;
+		private final Semaphore sessions;
+		private final TokenBucket tokenBucket;
+
+		private DomainLane( final int maxSessions, final TokenBucket tokenBucket ) {
+			this.maxSessions = maxSessions;
+			this.sessions = new Semaphore( maxSessions );
+			this.tokenBucket = tokenBucket;
+		}
+
+		private boolean isIdle( ) {
+			return queue.isEmpty( ) && sessions.availablePermits( ) == maxSessions && !drainScheduled.get( ) && tokenBucket.isFull( );
+		}
+	}
+
+	/**
+	 * Token bucket implemented as generic cell rate algorithm: a single atomic "theoretical arrival time" replaces the
+	 * token count, so consuming tokens is a single compare-and-set. The bucket holds up to one second worth of tokens,
+	 * at least one.
+	 */
+	static final class TokenBucket {
+
+		private final long nanosPerToken;
+		private final long burstNanos;
+		private final AtomicLong theoreticalArrivalTime;
+
+		static int capacity( final double tokensPerSecond ) {
+			return ( int ) Math.max( 1, tokensPerSecond );
+		}
+
+		TokenBucket( final double tokensPerSecond ) {
+			this.nanosPerToken = ( long ) ( TimeUnit.SECONDS.toNanos( 1 ) / tokensPerSecond );
+			this.burstNanos = Math.max( TimeUnit.SECONDS.toNanos( 1 ), nanosPerToken );
+			this.theoreticalArrivalTime = new AtomicLong( System.nanoTime( ) );
+		}
+
+		/**
+		 * Consumes the given number of tokens, if available. The number must not exceed the {@link #capacity(double)},
+		 * otherwise the tokens never become available.
+		 *
+		 * @return 0 if the tokens have been consumed, otherwise the nanoseconds to wait until they are available
+		 */
+		long tryConsume( final int tokens ) {
+			final long cost = tokens * nanosPerToken;
+			while ( true ) {
+				final long now = System.nanoTime( );
+				final long current = theoreticalArrivalTime.get( );
+				final long next = Math.max( current, now ) + cost;
+				final long wait = next - now - burstNanos;
+				if ( wait > 0 ) {
+					return wait;
+				}
+				if ( theoreticalArrivalTime.compareAndSet( current, next ) ) {
+					return 0;
+				}
+			}
+		}
+
+		/**
+		 * Returns whether the bucket holds its maximum of tokens again, i.e. whether it is as good as a new one.
+		 */
+		boolean isFull( ) {
+			return theoreticalArrivalTime.get( ) - System.nanoTime( ) <= 0;
+		}
+	}
+}
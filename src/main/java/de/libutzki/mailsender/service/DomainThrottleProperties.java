@@ -0,0 +1,83 @@
+package de.libutzki.mailsender.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties( prefix = "mailsender.delivery.domain" )
+public class DomainThrottleProperties {
+
+	/**
+	 * Maximum number of concurrent SMTP sessions delivering to the same recipient domain.
+	 */
+	private int maxSessions = 5;
+
+	/**
+	 * Maximum number of messages per second delivered to the same recipient domain.
+	 */
+	private double messagesPerSecond = 10;
+
+	/**
+	 * Limits for single recipient domains, e.g. large receivers, overriding the defaults above.
+	 */
+	private Map<String, Limit> overrides = new HashMap<>( );
+
+	public int getMaxSessions( ) {
+		return maxSessions;
+	}
+
+	public void setMaxSessions( final int maxSessions ) {
+		this.maxSessions = maxSessions;
+	}
+
+	public double getMessagesPerSecond( ) {
+		return messagesPerSecond;
+	}
+
+	public void setMessagesPerSecond( final double messagesPerSecond ) {
+		this.messagesPerSecond = messagesPerSecond;
+	}
+
+	public Map<String, Limit> getOverrides( ) {
+		return overrides;
+	}
+
+	public void setOverrides( final Map<String, Limit> overrides ) {
+		this.overrides = overrides;
+	}
+
+	int getMaxSessions( final String domain ) {
+		final Limit limit = overrides.get( domain );
+		return limit != null && limit.getMaxSessions( ) != null ? limit.getMaxSessions( ) : maxSessions;
+	}
+
+	double getMessagesPerSecond( final String domain ) {
+		final Limit limit = overrides.get( domain );
+		return limit != null && limit.getMessagesPerSecond( ) != null ? limit.getMessagesPerSecond( ) : messagesPerSecond;
+	}
+
+	public static class Limit {
+
+		private Integer maxSessions;
+
+		private Double messagesPerSecond;
+
+		public Integer getMaxSessions( ) {
+			return maxSessions;
+		}
+
+		public void setMaxSessions( final Integer maxSessions ) {
+			this.maxSessions = maxSessions;
+		}
+
+		public Double getMessagesPerSecond( ) {
+			return messagesPerSecond;
+		}
+
+		public void setMessagesPerSecond( final Double messagesPerSecond ) {
+			this.messagesPerSecond = messagesPerSecond;
+		}
+
+	}
+}
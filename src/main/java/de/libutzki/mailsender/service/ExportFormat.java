@@ -0,0 +1,30 @@
+package de.libutzki.mailsender.service;
+
+public enum ExportFormat {
+
+	/**
+	 * Comma separated values according to RFC 4180, with a header row.
+	 */
+	CSV( "text/csv", "csv" ),
+
+	/**
+	 * One JSON object per line.
+	 */
+	NDJSON( "application/x-ndjson", "ndjson" );
+
+	private final String mediaType;
+	private final String fileExtension;
+
+	ExportFormat( final String mediaType, final String fileExtension ) {
+		this.mediaType = mediaType;
+		this.fileExtension = fileExtension;
+	}
+
+	public String getMediaType( ) {
+		return mediaType;
+	}
+
+	public String getFileExtension( ) {
+		return fileExtension;
+	}
+}
@@ -0,0 +1,12 @@
+package de.libutzki.mailsender.service;
+
+/**
+ * Hook to keep the {@link SentMailHistoryCache} of several instances consistent: if a bean of this type exists, it is
+ * notified after an instance committed mails of a sender. The implementation is expected to broadcast the sender to the
+ * other instances (e.g. via a message broker or PostgreSQL {@code NOTIFY}), which call
+ * {@link SentMailHistoryCache#invalidate(String)} on receipt.
+ */
+public interface HistoryCacheInvalidationPublisher {
+
+	void publishInvalidation( String sender );
+}
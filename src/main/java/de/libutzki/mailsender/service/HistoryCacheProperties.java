@@ -0,0 +1,46 @@
+package de.libutzki.mailsender.service;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties( prefix = "mailsender.history-cache" )
+public class HistoryCacheProperties {
+
+	private boolean enabled = true;
+
+	/**
+	 * Maximum number of senders whose recent mails are cached.
+	 */
+	private long maximumSize = 10_000;
+
+	/**
+	 * Time after which cached mails are reloaded. Bounds the staleness of writes by other instances, if no cluster
+	 * invalidation is set up.
+	 */
+	private Duration expireAfterWrite = Duration.ofMinutes( 5 );
+
+	public boolean isEnabled( ) {
+		return enabled;
+	}
+
+	public void setEnabled( final boolean enabled ) {
+		this.enabled = enabled;
+	}
+
+	public long getMaximumSize( ) {
+		return maximumSize;
+	}
+
+	public void setMaximumSize( final long maximumSize ) {
+		this.maximumSize = maximumSize;
+	}
+
+	public Duration getExpireAfterWrite( ) {
+		return expireAfterWrite;
+	}
+
+	public void setExpireAfterWrite( final Duration expireAfterWrite ) {
+		this.expireAfterWrite = expireAfterWrite;
+	}
+}
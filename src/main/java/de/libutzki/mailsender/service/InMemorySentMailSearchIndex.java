@@ -0,0 +1,165 @@
+package de.libutzki.mailsender.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import de.libutzki.mailsender.model.SentMailDTO;
+import de.libutzki.mailsender.model.SentMailSearchPage;
+import de.libutzki.mailsender.repository.SentMail;
+import de.libutzki.mailsender.repository.SentMailRepository;
+
+/**
+ * Inverted index kept in memory, for databases without a usable full-text search. The index of a sender is built from
+ * the database on the sender's first search and kept up to date with the mails saved by this instance afterwards, so
+ * it is only suitable for single instance deployments of moderate size.
+ */
+class InMemorySentMailSearchIndex implements SentMailSearchIndex {
+
+	private static final Pattern TOKEN_SEPARATOR = Pattern.compile( "[^\\p{L}\\p{N}]+" );
+
+	// Same ranking as the PostgreSQL index: matches in the recipient rank highest, matches in the body lowest
+	private static final int RECIPIENT_WEIGHT = 3;
+	private static final int SUBJECT_WEIGHT = 2;
+	private static final int BODY_WEIGHT = 1;
+
+	private final SentMailRepository sentMailRepository;
+	private final Map<String, SenderIndex> senderIndexes = new ConcurrentHashMap<>( );
+
+	InMemorySentMailSearchIndex( final SentMailRepository sentMailRepository ) {
+		this.sentMailRepository = sentMailRepository;
+	}
+
+	@Override
+	public void index( final List<SentMail> sentMails ) {
+		final List<IndexedMail> indexedMails = sentMails.stream( )
+				.map( sentMail -> new IndexedMail( sentMail.getSender( ), sentMail.getId( ), sentMail.getRecipient( ),
+						sentMail.getSubject( ).orElse( null ), sentMail.getBody( ).orElse( null ) ) )
+				.toList( );
+		// Senders without an index yet pick the mails up from the database, once they search
+		TransactionHooks.afterCommit( ( ) -> indexedMails.forEach( indexedMail -> {
+			final SenderIndex senderIndex = senderIndexes.get( indexedMail.sender( ) );
+			if ( senderIndex != null ) {
+				senderIndex.add( indexedMail.id( ), indexedMail.recipient( ), indexedMail.subject( ), indexedMail.body( ) );
+			}
+		} ) );
+	}
+
+	@Override
+	public SentMailSearchPage search( final String sender, final String query, final int page, final int pageSize ) {
+		final List<Long> rankedIds = rank( sender, query );
+		final int from = Math.min( ( int ) Math.min( ( long ) page * pageSize, Integer.MAX_VALUE ), rankedIds.size( ) );
+		final List<Long> pageIds = rankedIds.subList( from, Math.min( from + pageSize, rankedIds.size( ) ) );
+		if ( pageIds.isEmpty( ) ) {
+			return new SentMailSearchPage( List.of( ), page, false );
+		}
+
+		final Map<Long, SentMailDTO> sentMailsById = sentMailRepository.findByIdInAndSender( pageIds, sender ).stream( )
+				.collect( Collectors.toMap( SentMailDTO::id, Function.identity( ) ) );
+		final List<SentMailDTO> sentMails = pageIds.stream( )
+				.map( sentMailsById::get )
+				.filter( Objects::nonNull )
+				.toList( );
+		return new SentMailSearchPage( sentMails, page, rankedIds.size( ) > from + pageSize );
+	}
+
+	/**
+	 * Returns the ids of the sender's mails matching all words of the query, most relevant first.
+	 */
+	List<Long> rank( final String sender, final String query ) {
+		final Set<String> queryTokens = new LinkedHashSet<>( tokenize( query ) );
+		if ( queryTokens.isEmpty( ) ) {
+			return List.of( );
+		}
+		// Registered before loading, so that mails committed meanwhile are added by index() rather than missed
+		final SenderIndex senderIndex = senderIndexes.computeIfAbsent( sender, key -> new SenderIndex( ) );
+		senderIndex.loadIfNecessary( ( ) -> sentMailRepository.streamBySender( sender ) );
+		return senderIndex.rank( queryTokens );
+	}
+
+	static List<String> tokenize( final String text ) {
+		if ( text == null ) {
+			return List.of( );
+		}
+		return TOKEN_SEPARATOR.splitAsStream( text.toLowerCase( Locale.ROOT ) )
+				.filter( token -> !token.isEmpty( ) )
+				.toList( );
+	}
+
+	private record IndexedMail( String sender, Long id, String recipient, String subject, String body ) {
+	}
+
+	private static final class SenderIndex {
+
+		/**
+		 * Weighted term frequencies by mail id per term.
+		 */
+		private final Map<String, Map<Long, Integer>> postings = new HashMap<>( );
+		private final Set<Long> ids = new HashSet<>( );
+		private boolean loaded;
+
+		synchronized void loadIfNecessary( final Supplier<Stream<SentMailDTO>> sentMails ) {
+			if ( loaded ) {
+				return;
+			}
+			try ( Stream<SentMailDTO> stream = sentMails.get( ) ) {
+				stream.forEach( sentMail -> add( sentMail.id( ), sentMail.recipient( ), sentMail.subject( ), sentMail.body( ) ) );
+			}
+			loaded = true;
+		}
+
+		synchronized void add( final Long id, final String recipient, final String subject, final String body ) {
+			if ( !ids.add( id ) ) {
+				return;
+			}
+			addTokens( id, recipient, RECIPIENT_WEIGHT );
+			addTokens( id, subject, SUBJECT_WEIGHT );
+			addTokens( id, body, BODY_WEIGHT );
+		}
+
+		synchronized List<Long> rank( final Set<String> queryTokens ) {
+			final List<Map<Long, Integer>> tokenPostings = new ArrayList<>( queryTokens.size( ) );
+			for ( final String queryToken : queryTokens ) {
+				final Map<Long, Integer> termFrequencies = postings.get( queryToken );
+				if ( termFrequencies == null ) {
+					return List.of( );
+				}
+				tokenPostings.add( termFrequencies );
+			}
+			// Intersect starting with the rarest term
+			tokenPostings.sort( Comparator.comparingInt( Map::size ) );
+
+			final Map<Long, Double> scores = new HashMap<>( );
+			tokenPostings.get( 0 ).keySet( ).forEach( id -> scores.put( id, 0.0 ) );
+			for ( final Map<Long, Integer> termFrequencies : tokenPostings ) {
+				final double inverseDocumentFrequency = Math.log( 1.0 + ( double ) ids.size( ) / termFrequencies.size( ) );
+				scores.entrySet( ).removeIf( score -> !termFrequencies.containsKey( score.getKey( ) ) );
+				scores.replaceAll( ( id, score ) -> score + termFrequencies.get( id ) * inverseDocumentFrequency );
+			}
+			return scores.entrySet( ).stream( )
+					.sorted( Map.Entry.<Long, Double> comparingByValue( ).reversed( )
+							.thenComparing( Map.Entry.<Long, Double> comparingByKey( ).reversed( ) ) )
+					.map( Map.Entry::getKey )
+					.toList( );
+		}
+
+		private void addTokens( final Long id, final String text, final int weight ) {
+			for ( final String token : tokenize( text ) ) {
+				postings.computeIfAbsent( token, key -> new HashMap<>( ) ).merge( id, weight, Integer::sum );
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package de.libutzki.mailsender.service;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.DatabaseMetaData;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import de.libutzki.mailsender.repository.MailBodyCodec;
+import de.libutzki.mailsender.repository.MailContent;
+import de.libutzki.mailsender.repository.MailContentRepository;
+
+/**
+ * Stores bodies content-addressed, so that the body of a mail sent to many recipients is stored only once. Contents are
+ * inserted within the caller's transaction, if they do not exist yet. Hashes of contents known to exist are cached,
+ * repeated sends of the same body therefore need no statement at all.
+ */
+@Component
+public class MailContentStore {
+
+	/**
+	 * Bodies with less characters are stored in the mail itself, as a reference would save next to nothing. Unlike
+	 * {@link MailBodyCodec#COMPRESSION_THRESHOLD} counted in characters, so that no encoded copy of the body is needed.
+	 */
+	static final int DEDUPLICATION_THRESHOLD = 256;
+
+	private static final String POSTGRESQL_PRODUCT_NAME = "PostgreSQL";
+	private static final String INSERT_SQL = "INSERT INTO mail_content (hash, body, body_compressed) VALUES (?, ?, ?)";
+	private static final String INSERT_IF_ABSENT_SQL = INSERT_SQL + " ON CONFLICT DO NOTHING";
+	private static final int[] INSERT_TYPES = { Types.VARCHAR, Types.VARCHAR, Types.VARBINARY };
+
+	private static final int ENCODE_BUFFER_SIZE = 8 * 1024;
+	private static final HexFormat HEX_FORMAT = HexFormat.of( );
+
+	private final MailContentRepository mailContentRepository;
+	private final JdbcTemplate jdbcTemplate;
+	private final boolean postgres;
+	private final Cache<String, Boolean> knownHashes = Caffeine.newBuilder( )
+			.maximumSize( 10_000 )
+			.expireAfterAccess( Duration.ofHours( 1 ) )
+			.build( );
+
+	@Autowired
+	public MailContentStore( final MailContentRepository mailContentRepository, final DataSource dataSource ) throws MetaDataAccessException {
+		this( mailContentRepository, new JdbcTemplate( dataSource ),
+				POSTGRESQL_PRODUCT_NAME.equals( JdbcUtils.extractDatabaseMetaData( dataSource, DatabaseMetaData::getDatabaseProductName ) ) );
+	}
+
+	MailContentStore( final MailContentRepository mailContentRepository, final JdbcTemplate jdbcTemplate, final boolean postgres ) {
+		this.mailContentRepository = mailContentRepository;
+		this.jdbcTemplate = jdbcTemplate;
+		this.postgres = postgres;
+	}
+
+	/**
+	 * Returns a reference to the stored content of the body, storing it if necessary, or an empty optional, if the body
+	 * is too short to be deduplicated.
+	 */
+	public Optional<MailContent> deduplicate( final String body ) {
+		if ( body == null || body.length( ) < DEDUPLICATION_THRESHOLD ) {
+			return Optional.empty( );
+		}
+		final String hash = hash( body );
+		if ( knownHashes.getIfPresent( hash ) == null ) {
+			store( hash, body );
+			// The content is visible to other transactions only once the caller's transaction has been committed
+			TransactionHooks.afterCommit( ( ) -> knownHashes.put( hash, Boolean.TRUE ) );
+		}
+		return Optional.of( mailContentRepository.getReferenceById( hash ) );
+	}
+
+	private void store( final String hash, final String body ) {
+		// Runs on the connection of the caller's transaction
+		final byte[] bodyCompressed = MailBodyCodec.compress( body );
+		final Object[] values = { hash, bodyCompressed != null ? null : body, bodyCompressed };
+		if ( postgres ) {
+			jdbcTemplate.update( INSERT_IF_ABSENT_SQL, values, INSERT_TYPES );
+			return;
+		}
+		try {
+			jdbcTemplate.update( INSERT_SQL, values, INSERT_TYPES );
+		} catch ( final DuplicateKeyException e ) {
+			// Already stored. Unlike PostgreSQL, the other databases roll back the failed statement only, not the transaction
+		}
+	}
+
+	/**
+	 * Hashes the UTF-8 encoding of the body chunk-wise, without creating a copy of the whole body.
+	 */
+	static String hash( final String body ) {
+		final MessageDigest messageDigest = createMessageDigest( );
+		// Replacing malformed input just like String.getBytes does
+		final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder( )
+				.onMalformedInput( CodingErrorAction.REPLACE )
+				.onUnmappableCharacter( CodingErrorAction.REPLACE );
+		final CharBuffer input = CharBuffer.wrap( body );
+		final ByteBuffer output = ByteBuffer.allocate( ENCODE_BUFFER_SIZE );
+		CoderResult result;
+		do {
+			result = encoder.encode( input, output, true );
+			output.flip( );
+			messageDigest.update( output );
+			output.clear( );
+		} while ( result.isOverflow( ) );
+		while ( encoder.flush( output ).isOverflow( ) ) {
+			output.flip( );
+			messageDigest.update( output );
+			output.clear( );
+		}
+		output.flip( );
+		messageDigest.update( output );
+		return HEX_FORMAT.formatHex( messageDigest.digest( ) );
+	}
+
+	private static MessageDigest createMessageDigest( ) {
+		try {
+			return MessageDigest.getInstance( "SHA-256" );
+		} catch ( final NoSuchAlgorithmException e ) {
+			throw new IllegalStateException( "SHA-256 is not supported", e );
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package de.libutzki.mailsender.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import de.libutzki.mailsender.model.PendingMailDTO;
+import de.libutzki.mailsender.repository.DeliveryStatus;
+import de.libutzki.mailsender.repository.SentMailRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Delivers mails which have been stored as {@link DeliveryStatus#PENDING} by the {@link MailService}. The SMTP
+ * conversation takes place outside of any database transaction, only claiming the mail and recording the outcome are
+ * done in short transactions of their own. A claim expires after {@code mailsender.delivery.claim-timeout}, so mails
+ * of deliveries which never recorded their outcome are delivered again: delivery is at least once.
+ */
+@Component
+public class MailDispatcher implements MeterBinder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( MailDispatcher.class );
+
+	private final JavaMailSender mailSender;
+	private final SentMailRepository sentMailRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final DomainScheduler domainScheduler;
+	private final DeliveryProperties deliveryProperties;
+	private final SmtpCircuitBreaker smtpCircuitBreaker;
+	private final AtomicLong retryCount = new AtomicLong( );
+	private final AtomicLong parkedCount = new AtomicLong( );
+	private final Set<Long> inFlightIds = ConcurrentHashMap.newKeySet( );
+
+	public MailDispatcher(
+			final JavaMailSender mailSender,
+			final SentMailRepository sentMailRepository,
+			final PlatformTransactionManager transactionManager,
+			final DomainScheduler domainScheduler,
+			final DeliveryProperties deliveryProperties,
+			final SmtpCircuitBreaker smtpCircuitBreaker ) {
+		this.mailSender = mailSender;
+		this.sentMailRepository = sentMailRepository;
+		this.transactionTemplate = new TransactionTemplate( transactionManager );
+		this.domainScheduler = domainScheduler;
+		this.deliveryProperties = deliveryProperties;
+		this.smtpCircuitBreaker = smtpCircuitBreaker;
+	}
+
+	/**
+	 * Dispatches the given mails. Mails to the same recipient domain are delivered in batches within a single SMTP
+	 * session each, as soon as the limits of the {@link DomainScheduler} allow it. A batch holds at most as many mails as
+	 * the domain's rate allows per second.
+	 */
+	public void dispatch( final List<PendingMailDTO> pendingMails ) {
+		pendingMails.stream( )
+				// Mails queued or being delivered by this instance, e.g. found again by the sweep, are not submitted twice
+				.filter( pendingMail -> inFlightIds.add( pendingMail.id( ) ) )
+				.collect( Collectors.groupingBy( PendingMailDTO::recipientDomain, LinkedHashMap::new,
+						Collectors.mapping( PendingMailDTO::id, Collectors.toList( ) ) ) )
+				.forEach( ( domain, sentMailIds ) -> {
+					final int batchSize = domainScheduler.getMaxMessageCount( domain );
+					for ( int start = 0; start < sentMailIds.size( ); start += batchSize ) {
+						final List<Long> batch = sentMailIds.subList( start, Math.min( start + batchSize, sentMailIds.size( ) ) );
+						domainScheduler.submit( domain, batch.size( ), ( ) -> {
+							try {
+								deliver( batch );
+							} finally {
+								batch.forEach( inFlightIds::remove );
+							}
+						} );
+					}
+				} );
+	}
+
+	/**
+	 * Picks up pending mails which are due, i.e. mails which have not been dispatched after commit, e.g. because the
+	 * application has been restarted in between, mails parked while the SMTP circuit was open, mails waiting for a
+	 * retry and mails whose claim has expired.
+	 */
+	@Scheduled( fixedDelayString = "${mailsender.delivery.sweep-interval:PT30S}" )
+	public void dispatchPending( ) {
+		final Instant now = Instant.now( );
+		dispatch( sentMailRepository.findDueMails( DeliveryStatus.PENDING, now, DeliveryStatus.SENDING, now.minus( deliveryProperties.getClaimTimeout( ) ),
+				PageRequest.of( 0, deliveryProperties.getSweepBatchSize( ) ) ) );
+	}
+
+	@Override
+	public void bindTo( final MeterRegistry registry ) {
+		FunctionCounter.builder( "mailsender.delivery.retried", retryCount, AtomicLong::get )
+				.description( "Mails which failed transiently and have been scheduled for another attempt" )
+				.register( registry );
+		FunctionCounter.builder( "mailsender.delivery.parked", parkedCount, AtomicLong::get )
+				.description( "Mails left pending, because the SMTP circuit was open" )
+				.register( registry );
+	}
+
+	void deliver( final List<Long> sentMailIds ) {
+		if ( !smtpCircuitBreaker.allowRequest( ) ) {
+			// The mails stay pending and are picked up by the sweep once the circuit allows sends again
+			parkedCount.addAndGet( sentMailIds.size( ) );
+			return;
+		}
+		final Map<Long, SimpleMailMessage> messages = transactionTemplate.execute( status -> claim( sentMailIds ) );
+		if ( messages == null || messages.isEmpty( ) ) {
+			// Already claimed by another dispatcher
+			return;
+		}
+
+		Map<Object, Exception> failedMessages = Map.of( );
+		try {
+			mailSender.send( messages.values( ).toArray( SimpleMailMessage[]::new ) );
+		} catch ( final MailSendException e ) {
+			LOGGER.warn( "Delivery of mails {} failed", messages.keySet( ), e );
+			failedMessages = e.getFailedMessages( ).isEmpty( ) ? failAll( messages, e ) : e.getFailedMessages( );
+		} catch ( final MailException e ) {
+			LOGGER.warn( "Delivery of mails {} failed", messages.keySet( ), e );
+			failedMessages = failAll( messages, e );
+		}
+
+		smtpCircuitBreaker.recordOutcome( failedMessages.values( ) );
+		recordOutcomes( messages, failedMessages );
+	}
+
+	private Map<Long, SimpleMailMessage> claim( final List<Long> sentMailIds ) {
+		final Map<Long, SimpleMailMessage> messages = new LinkedHashMap<>( );
+		final Instant now = Instant.now( );
+		final Instant claimedBefore = now.minus( deliveryProperties.getClaimTimeout( ) );
+		for ( final Long sentMailId : sentMailIds ) {
+			if ( sentMailRepository.claim( sentMailId, DeliveryStatus.PENDING, DeliveryStatus.SENDING, now, claimedBefore ) == 1 ) {
+				sentMailRepository.findById( sentMailId ).ifPresent( sentMail -> messages.put( sentMailId, MailMessageFactory.createMessage( sentMail ) ) );
+			}
+		}
+		return messages;
+	}
+
+	private void recordOutcomes( final Map<Long, SimpleMailMessage> messages, final Map<Object, Exception> failedMessages ) {
+		final DeliveryProperties.Retry retry = deliveryProperties.getRetry( );
+		transactionTemplate.executeWithoutResult( status -> sentMailRepository.findAllById( messages.keySet( ) ).forEach( sentMail -> {
+			final Exception failure = failedMessages.get( messages.get( sentMail.getId( ) ) );
+			sentMail.setAttempts( sentMail.getAttempts( ) + 1 );
+			sentMail.setLastError( failure == null ? null : failure.getMessage( ) );
+			sentMail.setNextAttemptAt( null );
+			sentMail.setClaimedAt( null );
+			if ( failure == null ) {
+				sentMail.setStatus( DeliveryStatus.SENT );
+			} else if ( DeliveryFailures.isPermanent( failure ) || sentMail.getAttempts( ) >= retry.getMaxAttempts( ) ) {
+				sentMail.setStatus( DeliveryStatus.FAILED );
+			} else {
+				sentMail.setStatus( DeliveryStatus.PENDING );
+				sentMail.setNextAttemptAt( Instant.now( ).plus( backoff( retry, sentMail.getAttempts( ) ) ) );
+				retryCount.incrementAndGet( );
+			}
+		} ) );
+	}
+
+	/**
+	 * Exponential backoff with jitter for the retry following the given number of attempts.
+	 */
+	static Duration backoff( final DeliveryProperties.Retry retry, final int attempts ) {
+		final double exponential = retry.getInitialBackoff( ).toMillis( ) * Math.pow( retry.getMultiplier( ), attempts - 1.0 );
+		final double capped = Math.min( exponential, retry.getMaxBackoff( ).toMillis( ) );
+		final double jitter = 1 + retry.getJitter( ) * ( 2 * ThreadLocalRandom.current( ).nextDouble( ) - 1 );
+		return Duration.ofMillis( Math.round( capped * jitter ) );
+	}
+
+	private static Map<Object, Exception> failAll( final Map<Long, SimpleMailMessage> messages, final Exception failure ) {
+		final Map<Object, Exception> failedMessages = new HashMap<>( );
+		messages.values( ).forEach( message -> failedMessages.put( message, failure ) );
+		return failedMessages;
+	}
+}
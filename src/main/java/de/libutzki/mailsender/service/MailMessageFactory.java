@@ -0,0 +1,20 @@
+package de.libutzki.mailsender.service;
+
+import org.springframework.mail.SimpleMailMessage;
+
+import de.libutzki.mailsender.repository.SentMail;
+
+final class MailMessageFactory {
+
+	private MailMessageFactory( ) {
+	}
+
+	static SimpleMailMessage createMessage( final SentMail sentMail ) {
+		final SimpleMailMessage message = new SimpleMailMessage( );
+		message.setFrom( sentMail.getSender( ) );
+		message.setTo( sentMail.getRecipient( ) );
+		message.setSubject( sentMail.getSubject( ).orElse( null ) );
+		message.setText( sentMail.getBody( ).orElse( null ) );
+		return message;
+	}
+}
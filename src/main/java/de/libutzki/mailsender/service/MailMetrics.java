@@ -0,0 +1,186 @@
+package de.libutzki.mailsender.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+
+import de.libutzki.mailsender.jfr.CommitEvent;
+import de.libutzki.mailsender.jfr.HistoryFetchEvent;
+import de.libutzki.mailsender.jfr.MailEvents;
+import de.libutzki.mailsender.jfr.MessageBuildEvent;
+import de.libutzki.mailsender.jfr.RepositorySaveEvent;
+import de.libutzki.mailsender.jfr.SmtpSendEvent;
+import de.libutzki.mailsender.model.NewMail;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters and flight recorder events of the stages of sending a mail and of reading the history. None of the
+ * distributions publishes a histogram by itself, percentiles and histogram buckets are enabled per meter by the
+ * {@code management.metrics.distribution.*} properties. The fields of the events are only computed if the event is
+ * recorded.
+ */
+@Component
+public class MailMetrics {
+
+	static final String OUTCOME_SENT = "sent";
+	static final String OUTCOME_QUEUED = "queued";
+	static final String OUTCOME_FAILED = "failed";
+
+	static final String QUERY_SENT_MAILS = "sent-mails";
+	static final String QUERY_PAGE = "page";
+	static final String QUERY_SEARCH = "search";
+
+	private static final String NO_EXCEPTION = "none";
+
+	private final MeterRegistry meterRegistry;
+	private final Timer smtpSendTimer;
+	private final Timer insertTimer;
+	private final DistributionSummary messageSizeSummary;
+
+	public MailMetrics( final MeterRegistry meterRegistry ) {
+		this.meterRegistry = meterRegistry;
+		this.smtpSendTimer = Timer.builder( "mailsender.smtp.send" )
+				.description( "Handing mails over to the SMTP relay, including connecting if the connection is not pooled" )
+				.register( meterRegistry );
+		this.insertTimer = Timer.builder( "mailsender.db.insert" )
+				.description( "Flushing the inserts of sent mails to the database" )
+				.register( meterRegistry );
+		this.messageSizeSummary = DistributionSummary.builder( "mailsender.message.size" )
+				.description( "Size of the mail bodies" )
+				.baseUnit( "characters" )
+				.register( meterRegistry );
+	}
+
+	/**
+	 * Starts timing the current transaction, which is recorded on completion, tagged with its outcome. Its commit is
+	 * recorded as {@link CommitEvent}. Without a transaction nothing is recorded.
+	 */
+	void timeTransaction( final String operation, final String sender, final int rowCount ) {
+		final Timer.Sample sample = Timer.start( meterRegistry );
+		TransactionHooks.afterCompletion( status -> sample.stop( Timer.builder( "mailsender.transaction" )
+				.description( "Transactions sending mails, from their start until after commit respectively rollback" )
+				.tag( "operation", operation )
+				.tag( "outcome", status == TransactionSynchronization.STATUS_COMMITTED ? "committed" : "rolled-back" )
+				.register( meterRegistry ) ) );
+
+		final CommitEvent event = new CommitEvent( );
+		TransactionHooks.aroundCommit( event::begin, ( ) -> {
+			event.end( );
+			if ( event.shouldCommit( ) ) {
+				event.senderDomain = MailEvents.domainOf( sender );
+				event.rowCount = rowCount;
+				event.commit( );
+			}
+		} );
+	}
+
+	<T> T recordMessageBuild( final String sender, final List<NewMail> newMails, final Supplier<T> build ) {
+		newMails.forEach( newMail -> messageSizeSummary.record( newMail.body( ) != null ? newMail.body( ).length( ) : 0 ) );
+
+		final MessageBuildEvent event = new MessageBuildEvent( );
+		event.begin( );
+		final T result = build.get( );
+		event.end( );
+		if ( event.shouldCommit( ) ) {
+			event.senderDomain = MailEvents.domainOf( sender );
+			event.messageCount = newMails.size( );
+			event.bodyBytes = bodyBytes( newMails );
+			event.commit( );
+		}
+		return result;
+	}
+
+	void recordSmtpSend( final String sender, final List<NewMail> newMails, final Runnable send ) {
+		final SmtpSendEvent event = new SmtpSendEvent( );
+		event.begin( );
+		try {
+			smtpSendTimer.record( send );
+			event.succeeded = true;
+		} finally {
+			event.end( );
+			if ( event.shouldCommit( ) ) {
+				event.senderDomain = MailEvents.domainOf( sender );
+				event.messageCount = newMails.size( );
+				event.bodyBytes = bodyBytes( newMails );
+				event.commit( );
+			}
+		}
+	}
+
+	void recordInsert( final String sender, final int rowCount, final Runnable flush ) {
+		final RepositorySaveEvent event = new RepositorySaveEvent( );
+		event.begin( );
+		try {
+			insertTimer.record( flush );
+		} finally {
+			event.end( );
+			if ( event.shouldCommit( ) ) {
+				event.senderDomain = MailEvents.domainOf( sender );
+				event.rowCount = rowCount;
+				event.commit( );
+			}
+		}
+	}
+
+	/**
+	 * Counts the outcome of a mail, tagged with the type of the failure if there is one.
+	 */
+	void countOutcome( final String outcome, final Exception failure ) {
+		countOutcomes( outcome, failure, 1 );
+	}
+
+	void countOutcomes( final String outcome, final Exception failure, final int count ) {
+		Counter.builder( "mailsender.mails" )
+				.description( "Mails by outcome of the first delivery attempt" )
+				.tag( "outcome", outcome )
+				.tag( "exception", failure != null ? failure.getClass( ).getSimpleName( ) : NO_EXCEPTION )
+				.register( meterRegistry )
+				.increment( count );
+	}
+
+	/**
+	 * Runs a history query, recording its latency and the number of returned rows.
+	 */
+	<T> T recordQuery( final String query, final String sender, final Supplier<T> execution, final ToIntFunction<T> rowCount ) {
+		final HistoryFetchEvent event = new HistoryFetchEvent( );
+		event.begin( );
+		final T result = Timer.builder( "mailsender.history.query" )
+				.description( "Queries of the history" )
+				.tag( "query", query )
+				.register( meterRegistry )
+				.record( execution );
+		event.end( );
+		final int rows = rowCount.applyAsInt( result );
+		DistributionSummary.builder( "mailsender.history.rows" )
+				.description( "Rows returned by queries of the history" )
+				.tag( "query", query )
+				.register( meterRegistry )
+				.record( rows );
+		if ( event.shouldCommit( ) ) {
+			event.senderDomain = MailEvents.domainOf( sender );
+			event.query = query;
+			event.rowCount = rows;
+			event.commit( );
+		}
+		return result;
+	}
+
+	<T extends Collection<?>> T recordQuery( final String query, final String sender, final Supplier<T> execution ) {
+		return recordQuery( query, sender, execution, Collection::size );
+	}
+
+	private static long bodyBytes( final List<NewMail> newMails ) {
+		long bodyBytes = 0;
+		for ( final NewMail newMail : newMails ) {
+			bodyBytes += MailEvents.utf8Length( newMail.body( ) );
+		}
+		return bodyBytes;
+	}
+}
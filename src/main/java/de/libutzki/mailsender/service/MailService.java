@@ -1,48 +1,360 @@
 package de.libutzki.mailsender.service;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import de.libutzki.mailsender.model.MailSendResult;
+import de.libutzki.mailsender.model.MailSubmissionDTO;
 import de.libutzki.mailsender.model.NewMail;
+import de.libutzki.mailsender.model.PendingMailDTO;
 import de.libutzki.mailsender.model.SentMailDTO;
+import de.libutzki.mailsender.model.SentMailPage;
+import de.libutzki.mailsender.model.SentMailSearchPage;
+import de.libutzki.mailsender.model.SentMailSummaryDTO;
+import de.libutzki.mailsender.repository.DeliveryStatus;
+import de.libutzki.mailsender.repository.MailContent;
 import de.libutzki.mailsender.repository.SentMail;
 import de.libutzki.mailsender.repository.SentMailRepository;
 
 @Service
 public class MailService {
 
+	public static final int DEFAULT_PAGE_SIZE = 20;
+	public static final int MAX_PAGE_SIZE = 100;
+
+	private static final int PREVIEW_LENGTH = 100;
+
+	private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+	private static final int EXPORT_FLUSH_INTERVAL = 1000;
+	private static final int HISTORY_CHUNK_SIZE = 500;
+
 	private final JavaMailSender mailSender;
 	private final SentMailRepository sentMailRepository;
+	private final MailDispatcher mailDispatcher;
+	private final DeliveryProperties deliveryProperties;
+	private final SmtpCircuitBreaker smtpCircuitBreaker;
+	private final SentMailHistoryCache historyCache;
+	private final MailContentStore mailContentStore;
+	private final SentMailSearchIndex searchIndex;
+	private final MailMetrics mailMetrics;
 
-	public MailService( final JavaMailSender mailSender, final SentMailRepository sentMailRepository ) {
+	public MailService( final JavaMailSender mailSender, final SentMailRepository sentMailRepository, final MailDispatcher mailDispatcher,
+			final DeliveryProperties deliveryProperties, final SmtpCircuitBreaker smtpCircuitBreaker, final SentMailHistoryCache historyCache,
+			final MailContentStore mailContentStore, final SentMailSearchIndex searchIndex, final MailMetrics mailMetrics ) {
 		this.mailSender = mailSender;
 		this.sentMailRepository = sentMailRepository;
+		this.mailDispatcher = mailDispatcher;
+		this.deliveryProperties = deliveryProperties;
+		this.smtpCircuitBreaker = smtpCircuitBreaker;
+		this.historyCache = historyCache;
+		this.mailContentStore = mailContentStore;
+		this.searchIndex = searchIndex;
+		this.mailMetrics = mailMetrics;
 	}
 
+	/**
+	 * Sends the mail according to the configured {@link DeliveryMode}. While the SMTP circuit is open, synchronous sends
+	 * are parked in the outbox as well instead of waiting for the relay to time out.
+	 */
 	@Transactional( rollbackFor = Exception.class )
 	public void sendMail( final String senderEMailAddress, final NewMail newMail ) {
-		final SimpleMailMessage message = new SimpleMailMessage( );
-		message.setFrom( senderEMailAddress );
-		message.setTo( newMail.recipient( ) );
-		message.setSubject( newMail.subject( ) );
-		message.setText( newMail.body( ) );
-		mailSender.send( message );
+		mailMetrics.timeTransaction( "send", senderEMailAddress, 1 );
+		final List<NewMail> newMails = List.of( newMail );
+		final SentMail sentMail = mailMetrics.recordMessageBuild( senderEMailAddress, newMails,
+				( ) -> createSentMail( senderEMailAddress, newMail, mailContentStore.deduplicate( newMail.body( ) ) ) );
+
+		if ( deliveryProperties.getMode( ) == DeliveryMode.OUTBOX || !smtpCircuitBreaker.allowRequest( ) ) {
+			queue( senderEMailAddress, sentMail );
+			mailMetrics.countOutcome( MailMetrics.OUTCOME_QUEUED, null );
+			return;
+		}
+
+		try {
+			mailMetrics.recordSmtpSend( senderEMailAddress, newMails, ( ) -> mailSender.send( MailMessageFactory.createMessage( sentMail ) ) );
+		} catch ( final MailException e ) {
+			smtpCircuitBreaker.recordOutcome( DeliveryFailures.failuresOf( e ) );
+			mailMetrics.countOutcome( MailMetrics.OUTCOME_FAILED, e );
+			throw e;
+		}
+		smtpCircuitBreaker.recordSuccess( );
+		mailMetrics.countOutcome( MailMetrics.OUTCOME_SENT, null );
+
+		sentMail.setAttempts( 1 );
+		sentMail.setStatus( DeliveryStatus.SENT );
+		sentMailRepository.save( sentMail );
+		mailMetrics.recordInsert( senderEMailAddress, 1, sentMailRepository::flush );
+		updateIndexes( senderEMailAddress, List.of( sentMail ) );
+	}
+
+	/**
+	 * Stores the mail in the outbox regardless of the configured {@link DeliveryMode}, so that the caller does not wait
+	 * for the SMTP relay. The returned submission is the handle to poll the delivery status with.
+	 */
+	@Transactional( rollbackFor = Exception.class )
+	public MailSubmissionDTO submitMail( final String senderEMailAddress, final NewMail newMail ) {
+		mailMetrics.timeTransaction( "submit", senderEMailAddress, 1 );
+		final SentMail sentMail = mailMetrics.recordMessageBuild( senderEMailAddress, List.of( newMail ),
+				( ) -> createSentMail( senderEMailAddress, newMail, mailContentStore.deduplicate( newMail.body( ) ) ) );
+		queue( senderEMailAddress, sentMail );
+		mailMetrics.countOutcome( MailMetrics.OUTCOME_QUEUED, null );
+		return new MailSubmissionDTO( sentMail.getId( ), sentMail.getStatus( ), null );
+	}
+
+	/**
+	 * Returns the delivery status of the mail, if it has been sent by the sender.
+	 */
+	@Transactional( readOnly = true )
+	public Optional<MailSubmissionDTO> getSubmission( final String sender, final Long id ) {
+		return sentMailRepository.findSubmissionByIdAndSender( id, sender );
+	}
+
+	/**
+	 * Sends several mails of the same sender through a single SMTP session and persists them in one batch. Unlike
+	 * {@link #sendMail(String, NewMail)} a failing mail does not abort the others, the outcome is reported per mail.
+	 */
+	@Transactional( rollbackFor = Exception.class )
+	public List<MailSendResult> sendMails( final String senderEMailAddress, final List<NewMail> newMails ) {
+		mailMetrics.timeTransaction( "send-batch", senderEMailAddress, newMails.size( ) );
+		final Map<String, Optional<MailContent>> contents = new HashMap<>( );
+		final List<SentMail> sentMails = mailMetrics.recordMessageBuild( senderEMailAddress, newMails, ( ) -> newMails.stream( )
+				// The mails of a batch usually share their body, which is deduplicated only once
+				.map( newMail -> createSentMail( senderEMailAddress, newMail,
+						contents.computeIfAbsent( newMail.body( ), mailContentStore::deduplicate ) ) )
+				.toList( ) );
+
+		if ( deliveryProperties.getMode( ) == DeliveryMode.OUTBOX || !smtpCircuitBreaker.allowRequest( ) ) {
+			sentMails.forEach( sentMail -> sentMail.setStatus( DeliveryStatus.PENDING ) );
+			sentMailRepository.saveAll( sentMails );
+			mailMetrics.recordInsert( senderEMailAddress, sentMails.size( ), sentMailRepository::flush );
+			dispatchAfterCommit( sentMails );
+			updateIndexes( senderEMailAddress, sentMails );
+			mailMetrics.countOutcomes( MailMetrics.OUTCOME_QUEUED, null, sentMails.size( ) );
+			return newMails.stream( ).map( MailSendResult::queued ).toList( );
+		}
+
+		final SimpleMailMessage[] messages = sentMails.stream( )
+				.map( MailMessageFactory::createMessage )
+				.toArray( SimpleMailMessage[]::new );
+		Map<Object, Exception> failedMessages = Map.of( );
+		try {
+			mailMetrics.recordSmtpSend( senderEMailAddress, newMails, ( ) -> mailSender.send( messages ) );
+			smtpCircuitBreaker.recordSuccess( );
+		} catch ( final MailSendException e ) {
+			smtpCircuitBreaker.recordOutcome( DeliveryFailures.failuresOf( e ) );
+			failedMessages = e.getFailedMessages( );
+		} catch ( final MailException e ) {
+			smtpCircuitBreaker.recordOutcome( DeliveryFailures.failuresOf( e ) );
+			mailMetrics.countOutcomes( MailMetrics.OUTCOME_FAILED, e, sentMails.size( ) );
+			throw e;
+		}
+
+		final List<MailSendResult> results = new ArrayList<>( newMails.size( ) );
+		for ( int i = 0; i < messages.length; i++ ) {
+			final Exception failure = failedMessages.get( messages[i] );
+			final SentMail sentMail = sentMails.get( i );
+			sentMail.setAttempts( 1 );
+			if ( failure == null ) {
+				sentMail.setStatus( DeliveryStatus.SENT );
+				results.add( MailSendResult.sent( newMails.get( i ) ) );
+				mailMetrics.countOutcome( MailMetrics.OUTCOME_SENT, null );
+			} else if ( DeliveryFailures.isPermanent( failure ) ) {
+				mailMetrics.countOutcome( MailMetrics.OUTCOME_FAILED, failure );
+				sentMail.setStatus( DeliveryStatus.FAILED );
+				sentMail.setLastError( failure.getMessage( ) );
+				results.add( MailSendResult.failed( newMails.get( i ), failure.getMessage( ) ) );
+			} else {
+				// Transient failures are retried in the background instead of failing the whole batch
+				mailMetrics.countOutcome( MailMetrics.OUTCOME_QUEUED, failure );
+				sentMail.setStatus( DeliveryStatus.PENDING );
+				sentMail.setLastError( failure.getMessage( ) );
+				sentMail.setNextAttemptAt( Instant.now( ).plus( MailDispatcher.backoff( deliveryProperties.getRetry( ), 1 ) ) );
+				results.add( MailSendResult.queued( newMails.get( i ) ) );
+			}
+		}
+		sentMailRepository.saveAll( sentMails );
+		mailMetrics.recordInsert( senderEMailAddress, sentMails.size( ), sentMailRepository::flush );
+		updateIndexes( senderEMailAddress, sentMails );
+		return results;
+	}
+
+	@Transactional( readOnly = true )
+	public List<SentMailDTO> getSentMailsForSender( final String sender ) {
+		return mailMetrics.recordQuery( MailMetrics.QUERY_SENT_MAILS, sender, ( ) -> sentMailRepository.findBySender( sender ) );
+	}
+
+	/**
+	 * Returns a page of the sender's mails, newest first, using keyset pagination: the page starts right after the
+	 * mail with id {@code before} respectively ends right before the mail with id {@code after}. Without both, the
+	 * newest mails are returned.
+	 */
+	@Transactional( readOnly = true )
+	public SentMailPage getSentMailPage( final String sender, final Long before, final Long after, final int pageSize ) {
+		final int size = Math.max( 1, Math.min( pageSize, MAX_PAGE_SIZE ) );
+		// One more row than requested tells whether there is another page in the same direction
+		final PageRequest limit = PageRequest.of( 0, size + 1 );
 
+		if ( after != null ) {
+			final List<SentMailSummaryDTO> newerMails = new ArrayList<>(
+					mailMetrics.recordQuery( MailMetrics.QUERY_PAGE, sender, ( ) -> sentMailRepository.findBySenderAfter( sender, after, limit ) ) );
+			final boolean hasPrevious = newerMails.size( ) > size;
+			final List<SentMailSummaryDTO> sentMails = newerMails.subList( 0, Math.min( size, newerMails.size( ) ) );
+			Collections.reverse( sentMails );
+			return createPage( sentMails, hasPrevious, true );
+		}
+
+		final List<SentMailSummaryDTO> olderMails = before != null
+				? mailMetrics.recordQuery( MailMetrics.QUERY_PAGE, sender, ( ) -> sentMailRepository.findBySenderBefore( sender, before, limit ) )
+				: historyCache.getNewest( sender, key -> mailMetrics.recordQuery( MailMetrics.QUERY_PAGE, key,
+						( ) -> sentMailRepository.findNewestBySender( key, PageRequest.of( 0, SentMailHistoryCache.CAPACITY ) ) ) );
+		final boolean hasNext = olderMails.size( ) > size;
+		return createPage( olderMails.subList( 0, Math.min( size, olderMails.size( ) ) ), before != null, hasNext );
+	}
+
+	/**
+	 * Returns the whole history of the sender, newest first. The mails are loaded lazily in chunks while iterating, so
+	 * the history can be rendered without holding it in memory. Every iteration reads the history anew.
+	 */
+	public Iterable<SentMailSummaryDTO> getSentMailHistory( final String sender ) {
+		return new SentMailHistory( sentMailRepository, sender, HISTORY_CHUNK_SIZE );
+	}
+
+	/**
+	 * Returns a version of the sender's history, which changes whenever mails are added. Has to be read before the
+	 * history itself.
+	 */
+	public String getHistoryVersion( final String sender ) {
+		return historyCache.getVersion( sender );
+	}
+
+	/**
+	 * Searches the sender's mails by recipient, subject and body. All words of the query have to match, the results are
+	 * ordered by relevance.
+	 */
+	@Transactional( readOnly = true )
+	public SentMailSearchPage search( final String sender, final String query, final int page, final int pageSize ) {
+		final int size = Math.max( 1, Math.min( pageSize, MAX_PAGE_SIZE ) );
+		if ( query == null || query.isBlank( ) ) {
+			return new SentMailSearchPage( List.of( ), 0, false );
+		}
+		return mailMetrics.recordQuery( MailMetrics.QUERY_SEARCH, sender,
+				( ) -> searchIndex.search( sender, query, Math.max( 0, page ), size ),
+				searchPage -> searchPage.sentMails( ).size( ) );
+	}
+
+	/**
+	 * Returns the mail including its body, if it has been sent by the sender.
+	 */
+	@Transactional( readOnly = true )
+	public Optional<SentMailDTO> getSentMail( final String sender, final Long id ) {
+		return sentMailRepository.findByIdAndSender( id, sender );
+	}
+
+	/**
+	 * Writes all mails of the sender to the output stream. The mails are streamed from the database and written in
+	 * chunks, so the memory use does not depend on the size of the history.
+	 *
+	 * @return the number of exported mails
+	 */
+	@Transactional( readOnly = true )
+	public long exportSentMails( final String sender, final ExportFormat format, final OutputStream outputStream ) throws IOException {
+		final Writer writer = new BufferedWriter( new OutputStreamWriter( outputStream, StandardCharsets.UTF_8 ), EXPORT_BUFFER_SIZE );
+		final SentMailExportWriter exportWriter = SentMailExportWriter.create( format, writer );
+		long count = 0;
+		try ( Stream<SentMailDTO> sentMails = sentMailRepository.streamBySender( sender ) ) {
+			final Iterator<SentMailDTO> iterator = sentMails.iterator( );
+			while ( iterator.hasNext( ) ) {
+				exportWriter.write( iterator.next( ) );
+				// Pass complete rows on to the client regularly instead of waiting for the buffer to fill up
+				if ( ++count % EXPORT_FLUSH_INTERVAL == 0 ) {
+					exportWriter.flush( );
+				}
+			}
+		}
+		exportWriter.flush( );
+		return count;
+	}
+
+	private static SentMailPage createPage( final List<SentMailSummaryDTO> sentMails, final boolean hasPrevious, final boolean hasNext ) {
+		if ( sentMails.isEmpty( ) ) {
+			return new SentMailPage( List.of( ), null, null );
+		}
+		return new SentMailPage(
+				List.copyOf( sentMails ),
+				hasPrevious ? sentMails.get( 0 ).id( ) : null,
+				hasNext ? sentMails.get( sentMails.size( ) - 1 ).id( ) : null );
+	}
+
+	private static SentMail createSentMail( final String senderEMailAddress, final NewMail newMail, final Optional<MailContent> content ) {
 		final SentMail sentMail = new SentMail( );
 		sentMail.setSender( senderEMailAddress );
 		sentMail.setRecipient( newMail.recipient( ) );
 		sentMail.setSubject( newMail.subject( ) );
-		sentMail.setBody( newMail.body( ) );
+		content.ifPresentOrElse(
+				mailContent -> sentMail.setContent( mailContent, newMail.body( ) ),
+				( ) -> sentMail.setBody( newMail.body( ) ) );
+		sentMail.setPreview( createPreview( newMail.body( ) ) );
+		return sentMail;
+	}
 
+	static String createPreview( final String body ) {
+		if ( body == null ) {
+			return null;
+		}
+		final String preview = body.strip( ).replaceAll( "\\s+", " " );
+		if ( preview.length( ) <= PREVIEW_LENGTH ) {
+			return preview;
+		}
+		int end = PREVIEW_LENGTH - 1;
+		// Do not split a surrogate pair
+		if ( Character.isHighSurrogate( preview.charAt( end - 1 ) ) ) {
+			end--;
+		}
+		return preview.substring( 0, end ) + "\u2026";
+	}
+
+	private void queue( final String senderEMailAddress, final SentMail sentMail ) {
+		sentMail.setStatus( DeliveryStatus.PENDING );
 		sentMailRepository.save( sentMail );
+		mailMetrics.recordInsert( senderEMailAddress, 1, sentMailRepository::flush );
+		dispatchAfterCommit( List.of( sentMail ) );
+		updateIndexes( senderEMailAddress, List.of( sentMail ) );
 	}
 
-	@Transactional( readOnly = true )
-	public List<SentMailDTO> getSentMailsForSender( final String sender ) {
-		return sentMailRepository.findBySender( sender );
+	private void dispatchAfterCommit( final List<SentMail> sentMails ) {
+		final List<PendingMailDTO> pendingMails = sentMails.stream( )
+				.map( sentMail -> new PendingMailDTO( sentMail.getId( ), sentMail.getRecipient( ) ) )
+				.toList( );
+		TransactionHooks.afterCommit( ( ) -> mailDispatcher.dispatch( pendingMails ) );
+	}
+
+	private void updateIndexes( final String senderEMailAddress, final List<SentMail> sentMails ) {
+		searchIndex.index( sentMails );
+
+		final List<SentMailSummaryDTO> sentMailSummaries = sentMails.stream( )
+				.map( sentMail -> new SentMailSummaryDTO( sentMail.getId( ), sentMail.getRecipient( ), sentMail.getSubject( ).orElse( null ),
+						sentMail.getPreview( ).orElse( null ) ) )
+				.toList( );
+		TransactionHooks.afterCommit( ( ) -> historyCache.addAll( senderEMailAddress, sentMailSummaries ) );
 	}
 }
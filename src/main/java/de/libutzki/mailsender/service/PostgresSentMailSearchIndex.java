@@ -0,0 +1,76 @@
+package de.libutzki.mailsender.service;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import de.libutzki.mailsender.model.SentMailDTO;
+import de.libutzki.mailsender.model.SentMailSearchPage;
+import de.libutzki.mailsender.repository.SentMail;
+import de.libutzki.mailsender.repository.SentMailRepository;
+import de.libutzki.mailsender.repository.SentMailRow;
+
+/**
+ * Searches via the {@code tsvector} column of {@code sent_mail}, which is backed by a GIN index on sender and vector.
+ * The vectors of a batch of mails are computed by a single statement.
+ */
+class PostgresSentMailSearchIndex implements SentMailSearchIndex {
+
+	private static final String SEARCH_SQL = """
+			SELECT mail.id, mail.recipient, mail.subject,
+				COALESCE(content.body, mail.body) AS body, COALESCE(content.body_compressed, mail.body_compressed) AS body_compressed
+			FROM sent_mail mail
+			LEFT JOIN mail_content content ON content.hash = mail.content_hash
+			CROSS JOIN websearch_to_tsquery('simple', :query) query
+			WHERE mail.sender = :sender AND mail.search_vector @@ query
+			ORDER BY ts_rank(mail.search_vector, query) DESC, mail.id DESC
+			LIMIT :limit OFFSET :offset
+			""";
+
+	private static final String INDEX_SQL = "UPDATE sent_mail SET search_vector = "
+			+ SentMailRepository.SEARCH_VECTOR_EXPRESSION.replaceAll( ":(\\w+)", "batch.$1" )
+			+ " FROM unnest(?, ?, ?, ?) AS batch(id, recipient, subject, body) WHERE sent_mail.id = batch.id";
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+
+	PostgresSentMailSearchIndex( final NamedParameterJdbcTemplate jdbcTemplate ) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * Requires the mails to be flushed, the statement runs on the connection of the current transaction.
+	 */
+	@Override
+	public void index( final List<SentMail> sentMails ) {
+		if ( sentMails.isEmpty( ) ) {
+			return;
+		}
+		jdbcTemplate.getJdbcOperations( ).update( INDEX_SQL, preparedStatement -> {
+			final Connection connection = preparedStatement.getConnection( );
+			preparedStatement.setArray( 1, connection.createArrayOf( "bigint",
+					sentMails.stream( ).map( SentMail::getId ).toArray( ) ) );
+			preparedStatement.setArray( 2, connection.createArrayOf( "text",
+					sentMails.stream( ).map( SentMail::getRecipient ).toArray( ) ) );
+			preparedStatement.setArray( 3, connection.createArrayOf( "text",
+					sentMails.stream( ).map( sentMail -> sentMail.getSubject( ).orElse( "" ) ).toArray( ) ) );
+			preparedStatement.setArray( 4, connection.createArrayOf( "text",
+					sentMails.stream( ).map( sentMail -> sentMail.getBody( ).orElse( "" ) ).toArray( ) ) );
+		} );
+	}
+
+	@Override
+	public SentMailSearchPage search( final String sender, final String query, final int page, final int pageSize ) {
+		// One more row than requested tells whether there is a next page
+		final List<SentMailDTO> sentMails = jdbcTemplate.query( SEARCH_SQL,
+				Map.of( "sender", sender, "query", query, "limit", pageSize + 1, "offset", ( long ) page * pageSize ),
+				( resultSet, rowNum ) -> new SentMailRow(
+						resultSet.getLong( "id" ),
+						resultSet.getString( "recipient" ),
+						resultSet.getString( "subject" ),
+						resultSet.getString( "body" ),
+						resultSet.getBytes( "body_compressed" ) ).toDTO( ) );
+		return new SentMailSearchPage( sentMails.subList( 0, Math.min( pageSize, sentMails.size( ) ) ), page, sentMails.size( ) > pageSize );
+	}
+}
@@ -0,0 +1,37 @@
+package de.libutzki.mailsender.service;
+
+import java.sql.DatabaseMetaData;
+
+import javax.sql.DataSource;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import de.libutzki.mailsender.repository.SentMailRepository;
+import de.libutzki.mailsender.service.SearchProperties.IndexType;
+
+/**
+ * Chooses the {@link SentMailSearchIndex} matching the database.
+ */
+@Configuration( proxyBeanMethods = false )
+public class SearchIndexConfiguration {
+
+	private static final String POSTGRESQL_PRODUCT_NAME = "PostgreSQL";
+
+	@Bean
+	public SentMailSearchIndex sentMailSearchIndex( final SearchProperties searchProperties, final DataSource dataSource,
+			final SentMailRepository sentMailRepository ) throws MetaDataAccessException {
+		IndexType indexType = searchProperties.getIndex( );
+		if ( indexType == IndexType.AUTO ) {
+			final String productName = JdbcUtils.extractDatabaseMetaData( dataSource, DatabaseMetaData::getDatabaseProductName );
+			indexType = POSTGRESQL_PRODUCT_NAME.equals( productName ) ? IndexType.POSTGRESQL : IndexType.IN_MEMORY;
+		}
+		if ( indexType == IndexType.POSTGRESQL ) {
+			return new PostgresSentMailSearchIndex( new NamedParameterJdbcTemplate( dataSource ) );
+		}
+		return new InMemorySentMailSearchIndex( sentMailRepository );
+	}
+}
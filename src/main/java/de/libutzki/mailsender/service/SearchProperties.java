@@ -0,0 +1,26 @@
+package de.libutzki.mailsender.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties( prefix = "mailsender.search" )
+public class SearchProperties {
+
+	public enum IndexType {
+		/**
+		 * PostgreSQL full-text search on PostgreSQL, the in-memory index on other databases.
+		 */
+		AUTO,
+		POSTGRESQL,
+		IN_MEMORY
+	}
+
+	private IndexType index = IndexType.AUTO;
+
+	public IndexType getIndex( ) {
+		return index;
+	}
+
+	public void setIndex( final IndexType index ) {
+		this.index = index;
+	}
+}
@@ -0,0 +1,96 @@
+package de.libutzki.mailsender.service;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import de.libutzki.mailsender.model.SentMailDTO;
+
+/**
+ * Writes sent mails row by row in an {@link ExportFormat}.
+ */
+interface SentMailExportWriter {
+
+	void write( SentMailDTO sentMail ) throws IOException;
+
+	/**
+	 * Flushes the rows written so far, but leaves the target open.
+	 */
+	void flush( ) throws IOException;
+
+	static SentMailExportWriter create( final ExportFormat format, final Writer writer ) throws IOException {
+		return switch ( format ) {
+			case CSV -> new CsvWriter( writer );
+			case NDJSON -> new NdjsonWriter( writer );
+		};
+	}
+
+	final class CsvWriter implements SentMailExportWriter {
+
+		private final Writer writer;
+
+		private CsvWriter( final Writer writer ) throws IOException {
+			this.writer = writer;
+			writer.write( "id,recipient,subject,body\r\n" );
+		}
+
+		@Override
+		public void write( final SentMailDTO sentMail ) throws IOException {
+			writer.write( String.valueOf( sentMail.id( ) ) );
+			writer.write( ',' );
+			writeField( sentMail.recipient( ) );
+			writer.write( ',' );
+			writeField( sentMail.subject( ) );
+			writer.write( ',' );
+			writeField( sentMail.body( ) );
+			writer.write( "\r\n" );
+		}
+
+		@Override
+		public void flush( ) throws IOException {
+			writer.flush( );
+		}
+
+		private void writeField( final String value ) throws IOException {
+			if ( value == null ) {
+				return;
+			}
+			if ( value.indexOf( ',' ) < 0 && value.indexOf( '"' ) < 0 && value.indexOf( '\n' ) < 0 && value.indexOf( '\r' ) < 0 ) {
+				writer.write( value );
+				return;
+			}
+			writer.write( '"' );
+			writer.write( value.replace( "\"", "\"\"" ) );
+			writer.write( '"' );
+		}
+	}
+
+	final class NdjsonWriter implements SentMailExportWriter {
+
+		private static final JsonFactory JSON_FACTORY = new JsonFactory( ).disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+
+		private final JsonGenerator generator;
+
+		private NdjsonWriter( final Writer writer ) throws IOException {
+			this.generator = JSON_FACTORY.createGenerator( writer ).setRootValueSeparator( null );
+		}
+
+		@Override
+		public void write( final SentMailDTO sentMail ) throws IOException {
+			generator.writeStartObject( );
+			generator.writeNumberField( "id", sentMail.id( ) );
+			generator.writeStringField( "recipient", sentMail.recipient( ) );
+			generator.writeStringField( "subject", sentMail.subject( ) );
+			generator.writeStringField( "body", sentMail.body( ) );
+			generator.writeEndObject( );
+			generator.writeRaw( '\n' );
+		}
+
+		@Override
+		public void flush( ) throws IOException {
+			generator.flush( );
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package de.libutzki.mailsender.service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.springframework.data.domain.PageRequest;
+
+import de.libutzki.mailsender.model.SentMailSummaryDTO;
+import de.libutzki.mailsender.repository.SentMailRepository;
+
+/**
+ * The whole history of a sender, newest first, loaded lazily chunk by chunk using keyset pagination. Only the current
+ * chunk is held in memory, every chunk is loaded in a short read-only transaction of its own.
+ */
+class SentMailHistory implements Iterable<SentMailSummaryDTO> {
+
+	private final SentMailRepository sentMailRepository;
+	private final String sender;
+	private final int chunkSize;
+
+	SentMailHistory( final SentMailRepository sentMailRepository, final String sender, final int chunkSize ) {
+		this.sentMailRepository = sentMailRepository;
+		this.sender = sender;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public Iterator<SentMailSummaryDTO> iterator( ) {
+		return new Iterator<>( ) {
+
+			private List<SentMailSummaryDTO> chunk;
+			private int index;
+
+			@Override
+			public boolean hasNext( ) {
+				if ( chunk == null ) {
+					chunk = sentMailRepository.findNewestBySender( sender, PageRequest.ofSize( chunkSize ) );
+				} else if ( index == chunk.size( ) && chunk.size( ) == chunkSize ) {
+					chunk = sentMailRepository.findBySenderBefore( sender, chunk.get( chunk.size( ) - 1 ).id( ), PageRequest.ofSize( chunkSize ) );
+					index = 0;
+				}
+				return index < chunk.size( );
+			}
+
+			@Override
+			public SentMailSummaryDTO next( ) {
+				if ( !hasNext( ) ) {
+					throw new NoSuchElementException( );
+				}
+				return chunk.get( index++ );
+			}
+		};
+	}
+}
@@ -0,0 +1,123 @@
+package de.libutzki.mailsender.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import de.libutzki.mailsender.model.SentMailSummaryDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Caches the newest mails of recently active senders, which serve the first page of the history. Mails sent by this
+ * instance are merged into the cached mails after commit instead of invalidating them.
+ * <p>
+ * Additionally, the cache hands out a version per sender, which changes whenever the sender's history changes. The
+ * version is kept even if caching the mails is disabled.
+ */
+@Component
+public class SentMailHistoryCache implements MeterBinder {
+
+	/**
+	 * Number of mails cached per sender: the largest page plus one mail telling whether there is a next page.
+	 */
+	static final int CAPACITY = MailService.MAX_PAGE_SIZE + 1;
+
+	private static final Comparator<SentMailSummaryDTO> NEWEST_FIRST = Comparator.comparing( SentMailSummaryDTO::id ).reversed( );
+
+	private final boolean enabled;
+	private final Cache<String, List<SentMailSummaryDTO>> cache;
+	private final Cache<String, String> versions;
+	// Distinguishes the versions of this instance from the versions of other instances and earlier runs
+	private final String versionPrefix = Long.toString( System.currentTimeMillis( ), Character.MAX_RADIX ) + "-";
+	private final AtomicLong nextVersion = new AtomicLong( );
+	private final ObjectProvider<HistoryCacheInvalidationPublisher> invalidationPublisher;
+
+	public SentMailHistoryCache( final HistoryCacheProperties properties,
+			final ObjectProvider<HistoryCacheInvalidationPublisher> invalidationPublisher ) {
+		this.enabled = properties.isEnabled( );
+		this.cache = Caffeine.newBuilder( )
+				.maximumSize( properties.getMaximumSize( ) )
+				.expireAfterWrite( properties.getExpireAfterWrite( ) )
+				.recordStats( )
+				.build( );
+		// Expiring like the mails bounds the staleness of writes by other instances to the same time
+		this.versions = Caffeine.newBuilder( )
+				.maximumSize( properties.getMaximumSize( ) )
+				.expireAfterWrite( properties.getExpireAfterWrite( ) )
+				.build( );
+		this.invalidationPublisher = invalidationPublisher;
+	}
+
+	@Override
+	public void bindTo( final MeterRegistry registry ) {
+		CaffeineCacheMetrics.monitor( registry, cache, "sentMailHistory" );
+	}
+
+	/**
+	 * Returns up to {@link #CAPACITY} newest mails of the sender, newest first.
+	 *
+	 * @param loader loads the newest mails of the sender if they are not cached
+	 */
+	public List<SentMailSummaryDTO> getNewest( final String sender, final Function<String, List<SentMailSummaryDTO>> loader ) {
+		if ( !enabled ) {
+			return loader.apply( sender );
+		}
+		return cache.get( sender, key -> List.copyOf( loader.apply( key ) ) );
+	}
+
+	/**
+	 * Returns the current version of the sender's history. It has to be read before the history itself, so that a
+	 * concurrent change cannot be hidden behind the returned version.
+	 */
+	public String getVersion( final String sender ) {
+		// A new version is never handed out twice, so a dropped version can simply be replaced by a new one
+		return versions.get( sender, key -> versionPrefix + nextVersion.incrementAndGet( ) );
+	}
+
+	/**
+	 * Merges committed mails of the sender into the cached ones and notifies the other instances.
+	 */
+	public void addAll( final String sender, final List<SentMailSummaryDTO> sentMails ) {
+		// Ids are allocated in blocks per instance, so new mails are not necessarily the newest ones
+		cache.asMap( ).computeIfPresent( sender, ( key, cachedMails ) -> merge( cachedMails, sentMails ) );
+		versions.invalidate( sender );
+		invalidationPublisher.ifAvailable( publisher -> publisher.publishInvalidation( sender ) );
+	}
+
+	public void invalidate( final String sender ) {
+		cache.invalidate( sender );
+		versions.invalidate( sender );
+	}
+
+	public CacheStats getStats( ) {
+		return cache.stats( );
+	}
+
+	public long getSize( ) {
+		return cache.estimatedSize( );
+	}
+
+	private static List<SentMailSummaryDTO> merge( final List<SentMailSummaryDTO> cachedMails, final List<SentMailSummaryDTO> sentMails ) {
+		final List<SentMailSummaryDTO> mergedMails = new ArrayList<>( cachedMails.size( ) + sentMails.size( ) );
+		mergedMails.addAll( cachedMails );
+		for ( final SentMailSummaryDTO sentMail : sentMails ) {
+			// A load running concurrently to the commit might already have read the mail
+			if ( cachedMails.stream( ).noneMatch( cachedMail -> cachedMail.id( ).equals( sentMail.id( ) ) ) ) {
+				mergedMails.add( sentMail );
+			}
+		}
+		mergedMails.sort( NEWEST_FIRST );
+		return List.copyOf( mergedMails.subList( 0, Math.min( CAPACITY, mergedMails.size( ) ) ) );
+	}
+}
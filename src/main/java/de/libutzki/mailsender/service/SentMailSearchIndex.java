@@ -0,0 +1,23 @@
+package de.libutzki.mailsender.service;
+
+import java.util.List;
+
+import de.libutzki.mailsender.model.SentMailSearchPage;
+import de.libutzki.mailsender.repository.SentMail;
+
+/**
+ * Full-text index over recipient, subject and body of the sent mails.
+ */
+public interface SentMailSearchIndex {
+
+	/**
+	 * Adds freshly saved mails to the index. Called within the transaction saving the mails.
+	 */
+	void index( List<SentMail> sentMails );
+
+	/**
+	 * Returns a page of the sender's mails matching all words of the query, most relevant first. Called within a
+	 * transaction.
+	 */
+	SentMailSearchPage search( String sender, String query, int page, int pageSize );
+}
@@ -0,0 +1,123 @@
+package de.libutzki.mailsender.service;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Circuit breaker guarding the SMTP relay. After {@code failure-threshold} consecutive transient failures the circuit
+ * opens and sends fail fast for {@code open-duration}. Afterwards a single trial send is let through, which either
+ * closes the circuit again or reopens it.
+ */
+@Component
+public class SmtpCircuitBreaker implements MeterBinder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( SmtpCircuitBreaker.class );
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private record Snapshot( State state, int consecutiveFailures, long since ) {
+	}
+
+	private final int failureThreshold;
+	private final long openDurationNanos;
+	private final AtomicReference<Snapshot> snapshot = new AtomicReference<>( new Snapshot( State.CLOSED, 0, System.nanoTime( ) ) );
+	private final AtomicLong rejectedCount = new AtomicLong( );
+
+	public SmtpCircuitBreaker( final DeliveryProperties deliveryProperties ) {
+		this.failureThreshold = deliveryProperties.getCircuitBreaker( ).getFailureThreshold( );
+		this.openDurationNanos = deliveryProperties.getCircuitBreaker( ).getOpenDuration( ).toNanos( );
+	}
+
+	/**
+	 * Returns whether a send may be attempted. Every permitted send has to be followed by
+	 * {@link #recordSuccess()} or {@link #recordFailure()}.
+	 */
+	public boolean allowRequest( ) {
+		while ( true ) {
+			final Snapshot current = snapshot.get( );
+			if ( current.state( ) == State.CLOSED ) {
+				return true;
+			}
+			final long now = System.nanoTime( );
+			// A trial is due after the open duration, a trial which did not report back is replaced after the same time
+			if ( now - current.since( ) < openDurationNanos ) {
+				rejectedCount.incrementAndGet( );
+				return false;
+			}
+			if ( snapshot.compareAndSet( current, new Snapshot( State.HALF_OPEN, current.consecutiveFailures( ), now ) ) ) {
+				return true;
+			}
+		}
+	}
+
+	public void recordSuccess( ) {
+		final Snapshot previous = snapshot.getAndSet( new Snapshot( State.CLOSED, 0, System.nanoTime( ) ) );
+		if ( previous.state( ) != State.CLOSED ) {
+			LOGGER.info( "SMTP circuit closed" );
+		}
+	}
+
+	public void recordFailure( ) {
+		while ( true ) {
+			final Snapshot current = snapshot.get( );
+			final int consecutiveFailures = current.consecutiveFailures( ) + 1;
+			final Snapshot next;
+			if ( current.state( ) == State.HALF_OPEN || current.state( ) == State.CLOSED && consecutiveFailures >= failureThreshold ) {
+				next = new Snapshot( State.OPEN, consecutiveFailures, System.nanoTime( ) );
+			} else {
+				next = new Snapshot( current.state( ), consecutiveFailures, current.since( ) );
+			}
+			if ( snapshot.compareAndSet( current, next ) ) {
+				if ( next.state( ) == State.OPEN && current.state( ) != State.OPEN ) {
+					LOGGER.warn( "SMTP circuit opened after {} consecutive failures", consecutiveFailures );
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Records the outcome of a send by its failures: only transient failures count against the relay, a relay
+	 * rejecting single messages is healthy.
+	 */
+	public void recordOutcome( final Collection<? extends Exception> failures ) {
+		if ( failures.stream( ).allMatch( DeliveryFailures::isPermanent ) ) {
+			recordSuccess( );
+		} else {
+			recordFailure( );
+		}
+	}
+
+	@Override
+	public void bindTo( final MeterRegistry registry ) {
+		for ( final State state : State.values( ) ) {
+			Gauge.builder( "mailsender.smtp.circuit.state", this, circuitBreaker -> circuitBreaker.getState( ) == state ? 1 : 0 )
+					.tag( "state", state.name( ).toLowerCase( Locale.ROOT ) )
+					.register( registry );
+		}
+		FunctionCounter.builder( "mailsender.smtp.circuit.rejected", this, SmtpCircuitBreaker::getRejectedCount ).register( registry );
+	}
+
+	public State getState( ) {
+		return snapshot.get( ).state( );
+	}
+
+	public long getRejectedCount( ) {
+		return rejectedCount.get( );
+	}
+}
@@ -0,0 +1,75 @@
+package de.libutzki.mailsender.service;
+
+import java.util.function.IntConsumer;
+
+import org.springframework.core.Ordered;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+final class TransactionHooks {
+
+	private TransactionHooks( ) {
+	}
+
+	/**
+	 * Runs the action after the current transaction has been committed, respectively immediately if there is no
+	 * transaction.
+	 */
+	static void afterCommit( final Runnable action ) {
+		if ( !TransactionSynchronizationManager.isSynchronizationActive( ) ) {
+			action.run( );
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization( ) {
+
+			@Override
+			public void afterCommit( ) {
+				action.run( );
+			}
+		} );
+	}
+
+	/**
+	 * Runs the action with the completion status of the current transaction, see
+	 * {@link TransactionSynchronization#afterCompletion(int)}. Without a transaction the action is not run at all.
+	 */
+	static void afterCompletion( final IntConsumer action ) {
+		if ( !TransactionSynchronizationManager.isSynchronizationActive( ) ) {
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization( ) {
+
+			@Override
+			public void afterCompletion( final int status ) {
+				action.accept( status );
+			}
+		} );
+	}
+
+	/**
+	 * Runs {@code before} right before the current transaction is committed and {@code after} right after
+	 * it has been committed, before the actions of {@link #afterCommit(Runnable)}. Without a transaction neither is run.
+	 */
+	static void aroundCommit( final Runnable before, final Runnable after ) {
+		if ( !TransactionSynchronizationManager.isSynchronizationActive( ) ) {
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronization( ) {
+
+			@Override
+			public int getOrder( ) {
+				return Ordered.HIGHEST_PRECEDENCE;
+			}
+
+			@Override
+			public void beforeCommit( final boolean readOnly ) {
+				before.run( );
+			}
+
+			@Override
+			public void afterCommit( ) {
+				after.run( );
+			}
+		} );
+	}
+}
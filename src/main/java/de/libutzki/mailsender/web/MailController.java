@@ -1,18 +1,35 @@
 package de.libutzki.mailsender.web;
 
+import static de.libutzki.mailsender.web.Principals.getEMailAddress;
+
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.util.List;
 
 import javax.validation.Valid;
 
-import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.DigestUtils;
+import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import de.libutzki.mailsender.model.MailSendResult;
 import de.libutzki.mailsender.model.NewMail;
+import de.libutzki.mailsender.model.NewMailBatch;
 import de.libutzki.mailsender.service.MailService;
 
 @Controller
@@ -25,34 +42,97 @@ public class MailController {
 		this.mailService = mailService;
 	}
 
+	/**
+	 * Renders the history. Refreshes of an unchanged history are answered with 304 Not Modified, without loading the
+	 * mails or rendering the page.
+	 */
 	@GetMapping
-	public String index( final Model model, final Principal principal ) {
-		addAttributes( model, getEMailAddress( principal ) );
+	public String index( @RequestParam( required = false ) final Long before, @RequestParam( required = false ) final Long after,
+			@RequestParam( defaultValue = "" + MailService.DEFAULT_PAGE_SIZE ) final int size, final Model model, final Principal principal,
+			final ServletWebRequest webRequest ) {
+		final String senderEMailAddress = getEMailAddress( principal );
+		// Batch results are shown only once
+		if ( !model.containsAttribute( "batchResults" ) ) {
+			final String historyVersion = mailService.getHistoryVersion( senderEMailAddress );
+			if ( historyVersion != null ) {
+				// Revalidate on every request, instead of the default "no-store" of Spring Security
+				webRequest.getResponse( ).setHeader( HttpHeaders.CACHE_CONTROL, CacheControl.noCache( ).cachePrivate( ).getHeaderValue( ) );
+				if ( webRequest.checkNotModified( createETag( historyVersion, senderEMailAddress, webRequest ) ) ) {
+					return null;
+				}
+			}
+		}
+		model.addAttribute( "sentMailPage", mailService.getSentMailPage( senderEMailAddress, before, after, size ) );
 		return "index";
 	}
 
+	/**
+	 * Renders the whole history. The table is rendered while the mails are loaded chunk by chunk, and the output is sent
+	 * to the client as it is produced.
+	 */
+	@GetMapping( "history" )
+	public String history( final Model model, final Principal principal ) {
+		model.addAttribute( "sentMails", mailService.getSentMailHistory( getEMailAddress( principal ) ) );
+		return "history";
+	}
+
+	@GetMapping( "mails/{id}" )
+	public String mail( @PathVariable final Long id, final Model model, final Principal principal ) {
+		model.addAttribute( "sentMail", mailService.getSentMail( getEMailAddress( principal ), id )
+				.orElseThrow( ( ) -> new ResponseStatusException( HttpStatus.NOT_FOUND ) ) );
+		return "mail";
+	}
+
+	@GetMapping( "search" )
+	public String search( @RequestParam( name = "q", defaultValue = "" ) final String query, @RequestParam( defaultValue = "0" ) final int page,
+			@RequestParam( defaultValue = "" + MailService.DEFAULT_PAGE_SIZE ) final int size, final Model model, final Principal principal ) {
+		model.addAttribute( "query", query );
+		model.addAttribute( "searchPage", mailService.search( getEMailAddress( principal ), query, page, size ) );
+		return "search";
+	}
+
 	@GetMapping( "logout-successful" )
 	public String logoutSuccessful( ) {
 		return "redirect:/";
 	}
 
+	/**
+	 * Sends the mail, an invalid mail is rendered again along with the errors.
+	 */
 	@PostMapping
-	public String sendMail( @Valid @ModelAttribute( "mail" ) final NewMail mail, final Model model, final Principal principal ) {
-		final String senderEMailAddress = getEMailAddress( principal );
-		mailService.sendMail( senderEMailAddress, mail );
-
-		addAttributes( model, senderEMailAddress );
+	public String sendMail( @Valid @ModelAttribute( "mail" ) final NewMail mail, final BindingResult bindingResult, final Model model,
+			final Principal principal ) {
+		if ( bindingResult.hasErrors( ) ) {
+			model.addAttribute( "sentMailPage", mailService.getSentMailPage( getEMailAddress( principal ), null, null, MailService.DEFAULT_PAGE_SIZE ) );
+			return "index";
+		}
+		mailService.sendMail( getEMailAddress( principal ), mail );
 		return "redirect:/";
 	}
 
-	private void addAttributes( final Model model, final String senderEMailAddress ) {
-		model.addAttribute( "sentMails", mailService.getSentMailsForSender( senderEMailAddress ) );
+	/**
+	 * Sends the batch, an invalid batch is rendered again along with the errors.
+	 */
+	@PostMapping( "batch" )
+	public String sendMails( @Valid @ModelAttribute( "mailBatch" ) final NewMailBatch mailBatch, final BindingResult bindingResult,
+			final Model model, final RedirectAttributes redirectAttributes, final Principal principal ) {
+		if ( bindingResult.hasErrors( ) ) {
+			model.addAttribute( "sentMailPage", mailService.getSentMailPage( getEMailAddress( principal ), null, null, MailService.DEFAULT_PAGE_SIZE ) );
+			return "index";
+		}
+		final List<MailSendResult> results = mailService.sendMails( getEMailAddress( principal ), mailBatch.toNewMails( ) );
+
+		redirectAttributes.addFlashAttribute( "batchResults", results );
+		return "redirect:/";
 	}
 
-	private String getEMailAddress( final Principal principal ) {
-		final KeycloakAuthenticationToken authToken = ( KeycloakAuthenticationToken ) principal;
-		final String email = authToken.getAccount( ).getKeycloakSecurityContext( ).getToken( ).getEmail( );
-		return email;
+	/**
+	 * The page depends on the sender and on the CSRF token embedded in the forms, besides the history itself.
+	 */
+	private static String createETag( final String historyVersion, final String senderEMailAddress, final ServletWebRequest webRequest ) {
+		final CsrfToken csrfToken = ( CsrfToken ) webRequest.getAttribute( CsrfToken.class.getName( ), RequestAttributes.SCOPE_REQUEST );
+		final String variant = senderEMailAddress + "\n" + ( csrfToken != null ? csrfToken.getToken( ) : "" );
+		return "W/\"" + historyVersion + "-" + DigestUtils.md5DigestAsHex( variant.getBytes( StandardCharsets.UTF_8 ) ) + "\"";
 	}
 
 }
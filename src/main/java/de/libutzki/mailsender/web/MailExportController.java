@@ -0,0 +1,44 @@
+package de.libutzki.mailsender.web;
+
+import static de.libutzki.mailsender.web.Principals.getEMailAddress;
+
+import java.security.Principal;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import de.libutzki.mailsender.service.ExportFormat;
+import de.libutzki.mailsender.service.MailService;
+
+@Controller
+public class MailExportController {
+
+	private final MailService mailService;
+
+	public MailExportController( final MailService mailService ) {
+		this.mailService = mailService;
+	}
+
+	/**
+	 * Exports the whole history of the sender. The response is written asynchronously, the export runs in a read-only
+	 * transaction of its own.
+	 */
+	@GetMapping( "/export" )
+	public ResponseEntity<StreamingResponseBody> export( @RequestParam( defaultValue = "CSV" ) final ExportFormat format,
+			final Principal principal ) {
+		final String senderEMailAddress = getEMailAddress( principal );
+		final StreamingResponseBody body = outputStream -> mailService.exportSentMails( senderEMailAddress, format, outputStream );
+
+		return ResponseEntity.ok( )
+				.contentType( MediaType.parseMediaType( format.getMediaType( ) + ";charset=UTF-8" ) )
+				.header( HttpHeaders.CONTENT_DISPOSITION,
+						ContentDisposition.attachment( ).filename( "sent-mails." + format.getFileExtension( ) ).build( ).toString( ) )
+				.body( body );
+	}
+}
@@ -0,0 +1,66 @@
+package de.libutzki.mailsender.web;
+
+import static de.libutzki.mailsender.web.Principals.getEMailAddress;
+
+import java.security.Principal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.validation.Valid;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.validation.BindException;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import de.libutzki.mailsender.model.MailSubmissionDTO;
+import de.libutzki.mailsender.model.NewMail;
+import de.libutzki.mailsender.service.MailService;
+
+/**
+ * Accepts mails without waiting for the SMTP relay: the mail is stored in the outbox and delivered in the background,
+ * the client polls the returned submission for the delivery status.
+ */
+@Controller
+public class MailSubmissionController {
+
+	private final MailService mailService;
+
+	public MailSubmissionController( final MailService mailService ) {
+		this.mailService = mailService;
+	}
+
+	@PostMapping( "/submissions" )
+	public ResponseEntity<MailSubmissionDTO> submit( @Valid @ModelAttribute( "mail" ) final NewMail mail, final Principal principal ) {
+		final MailSubmissionDTO submission = mailService.submitMail( getEMailAddress( principal ), mail );
+		return ResponseEntity.accepted( )
+				.location( ServletUriComponentsBuilder.fromCurrentRequest( ).path( "/{id}" ).buildAndExpand( submission.id( ) ).toUri( ) )
+				.body( submission );
+	}
+
+	@GetMapping( "/submissions/{id}" )
+	public ResponseEntity<MailSubmissionDTO> status( @PathVariable final Long id, final Principal principal ) {
+		return mailService.getSubmission( getEMailAddress( principal ), id )
+				.map( submission -> ResponseEntity.ok( ).cacheControl( CacheControl.noStore( ) ).body( submission ) )
+				.orElseGet( ( ) -> ResponseEntity.notFound( ).build( ) );
+	}
+
+	/**
+	 * Rejects an invalid mail with the error messages by field, e.g. {@code {"recipient": ["Enter a recipient"]}}.
+	 */
+	@ExceptionHandler( BindException.class )
+	public ResponseEntity<Map<String, List<String>>> invalidMail( final BindException e ) {
+		return ResponseEntity.badRequest( ).body( e.getFieldErrors( ).stream( )
+				.collect( Collectors.groupingBy( FieldError::getField, LinkedHashMap::new,
+						Collectors.mapping( FieldError::getDefaultMessage, Collectors.toList( ) ) ) ) );
+	}
+}
@@ -0,0 +1,17 @@
+package de.libutzki.mailsender.web;
+
+import java.security.Principal;
+
+import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+
+final class Principals {
+
+	private Principals( ) {
+	}
+
+	static String getEMailAddress( final Principal principal ) {
+		final KeycloakAuthenticationToken authToken = ( KeycloakAuthenticationToken ) principal;
+		final String email = authToken.getAccount( ).getKeycloakSecurityContext( ).getToken( ).getEmail( );
+		return email;
+	}
+}
@@ -0,0 +1,77 @@
+// Submits the new mail form without waiting for the SMTP relay, then polls the delivery status of the submission.
+// Without JavaScript the form is submitted regularly.
+( function( ) {
+	'use strict';
+
+	const INITIAL_POLL_INTERVAL_MILLIS = 500;
+	const MAX_POLL_INTERVAL_MILLIS = 10000;
+
+	const form = document.getElementById( 'new-mail-form' );
+	const statusElement = document.getElementById( 'submission-status' );
+	if ( !form || !statusElement || !window.fetch ) {
+		return;
+	}
+
+	function showStatus( text, style ) {
+		statusElement.className = 'alert alert-' + style + ' mt-3';
+		statusElement.textContent = text;
+	}
+
+	async function poll( url, interval ) {
+		let submission;
+		try {
+			const response = await fetch( url, { headers: { 'Accept': 'application/json' }, redirect: 'manual' } );
+			if ( !response.ok ) {
+				showStatus( 'The delivery status is not available.', 'warning' );
+				return;
+			}
+			submission = await response.json( );
+		} catch ( error ) {
+			showStatus( 'The delivery status is not available.', 'warning' );
+			return;
+		}
+
+		switch ( submission.status ) {
+			case 'SENT':
+				// Shows the mail in the list of sent mails
+				window.location.reload( );
+				return;
+			case 'FAILED':
+				showStatus( 'Delivery failed: ' + submission.lastError, 'danger' );
+				return;
+			default:
+				showStatus( submission.lastError ? 'Queued, retrying after: ' + submission.lastError : 'Queued for delivery…', 'info' );
+				setTimeout( ( ) => poll( url, Math.min( interval * 2, MAX_POLL_INTERVAL_MILLIS ) ), interval );
+		}
+	}
+
+	form.addEventListener( 'submit', async event => {
+		event.preventDefault( );
+		let response;
+		try {
+			response = await fetch( form.dataset.submissionUrl, {
+				method: 'POST',
+				body: new URLSearchParams( new FormData( form ) ),
+				headers: { 'Accept': 'application/json' },
+				redirect: 'manual'
+			} );
+		} catch ( error ) {
+			// The mail might have been accepted nevertheless, so it is not submitted again
+			showStatus( 'Submitting the mail failed, please check the sent mails before retrying.', 'danger' );
+			return;
+		}
+		if ( response.status === 400 || response.status === 401 || response.status === 403 ) {
+			// Invalid input or an expired session, which the regular submission deals with
+			form.submit( );
+			return;
+		}
+		if ( response.status !== 202 ) {
+			// The mail might have been accepted before the error, submitting it again could send it twice
+			showStatus( 'Submitting the mail failed, please check the sent mails before retrying.', 'danger' );
+			return;
+		}
+		form.reset( );
+		showStatus( 'Queued for delivery…', 'info' );
+		poll( response.headers.get( 'Location' ), INITIAL_POLL_INTERVAL_MILLIS );
+	} );
+} )( );
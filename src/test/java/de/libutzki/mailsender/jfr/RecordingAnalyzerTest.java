@@ -0,0 +1,70 @@
+package de.libutzki.mailsender.jfr;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.libutzki.mailsender.jfr.RecordingAnalyzer.PhaseSummary;
+import jdk.jfr.Recording;
+
+class RecordingAnalyzerTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testSummarize( ) throws IOException {
+		final Path file = tempDir.resolve( "recording.jfr" );
+		try ( Recording recording = new Recording( ) ) {
+			recording.enable( SmtpSendEvent.class ).withoutThreshold( );
+			recording.enable( HistoryFetchEvent.class ).withoutThreshold( );
+			recording.start( );
+
+			for ( int i = 0; i < 10; i++ ) {
+				final SmtpSendEvent event = new SmtpSendEvent( );
+				event.begin( );
+				event.senderDomain = "example.com";
+				event.messageCount = 1;
+				event.bodyBytes = 100;
+				event.succeeded = true;
+				event.commit( );
+			}
+			final HistoryFetchEvent event = new HistoryFetchEvent( );
+			event.begin( );
+			event.senderDomain = "example.com";
+			event.query = "page";
+			event.rowCount = 21;
+			event.commit( );
+
+			recording.stop( );
+			recording.dump( file );
+		}
+
+		final List<PhaseSummary> summaries = RecordingAnalyzer.summarize( file );
+
+		assertThat( summaries )
+				.extracting( PhaseSummary::phase, PhaseSummary::count, PhaseSummary::rowCount, PhaseSummary::bodyBytes )
+				.containsExactly(
+						tuple( "HistoryFetch", 1, 21L, 0L ),
+						tuple( "SmtpSend", 10, 0L, 1000L ) );
+		final PhaseSummary smtpSend = summaries.get( 1 );
+		assertThat( smtpSend.p50( ) ).isLessThanOrEqualTo( smtpSend.p90( ) );
+		assertThat( smtpSend.p90( ) ).isLessThanOrEqualTo( smtpSend.p99( ) );
+		assertThat( smtpSend.p99( ) ).isLessThanOrEqualTo( smtpSend.max( ) );
+	}
+
+	@Test
+	void testUtf8Length( ) {
+		final String text = "aä€😀";
+
+		assertThat( MailEvents.utf8Length( text ) ).isEqualTo( text.getBytes( StandardCharsets.UTF_8 ).length );
+		assertThat( MailEvents.domainOf( "sender@example.com" ) ).isEqualTo( "example.com" );
+	}
+}
@@ -0,0 +1,543 @@
+package de.libutzki.mailsender.mail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * SMTP server running in-process on a single NIO event loop, standing in for a mail server container. Received
+ * messages are kept in a lock-free mailbox. Replies can be delayed by an artificial latency, failures can be injected
+ * per message and connections can be cut like by a proxy.
+ * <p>
+ * Used as JUnit extension, the server is reset before every test and stopped after all tests:
+ *
+ * <pre>
+ * &#64;RegisterExtension
+ * static EmbeddedSmtpServer smtpServer = new EmbeddedSmtpServer( );
+ * </pre>
+ */
+public class EmbeddedSmtpServer implements AutoCloseable, BeforeEachCallback, AfterAllCallback {
+
+	public enum Failure {
+		/**
+		 * Rejects the recipients permanently with 550.
+		 */
+		REJECT_RECIPIENT,
+		/**
+		 * Rejects the message after its data transiently with 451.
+		 */
+		REJECT_MESSAGE_TRANSIENTLY,
+		/**
+		 * Closes the connection after the data of the message without replying.
+		 */
+		DISCONNECT
+	}
+
+	public record ReceivedMessage( String from, List<String> recipients, byte[] data ) {
+
+		public MimeMessage toMimeMessage( ) {
+			try {
+				return new MimeMessage( Session.getInstance( new Properties( ) ), new ByteArrayInputStream( data ) );
+			} catch ( final MessagingException e ) {
+				throw new IllegalStateException( "Invalid message", e );
+			}
+		}
+
+		public String subject( ) {
+			try {
+				return toMimeMessage( ).getSubject( );
+			} catch ( final MessagingException e ) {
+				throw new IllegalStateException( "Invalid message", e );
+			}
+		}
+
+		/**
+		 * Returns the content of a single part text message.
+		 */
+		public String text( ) {
+			try {
+				return toMimeMessage( ).getContent( ).toString( ).strip( );
+			} catch ( final MessagingException | IOException e ) {
+				throw new IllegalStateException( "Invalid message", e );
+			}
+		}
+	}
+
+	private static final byte[] CRLF = { '\r', '\n' };
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final Thread eventLoop;
+	// Only touched by the event loop
+	private final PriorityQueue<DelayedReply> delayedReplies = new PriorityQueue<>( );
+	private long replySequence;
+
+	private final Queue<ReceivedMessage> mailbox = new ConcurrentLinkedQueue<>( );
+	private final AtomicLong receivedCount = new AtomicLong( );
+	private final Queue<Failure> scheduledFailures = new ConcurrentLinkedQueue<>( );
+	private volatile Failure permanentFailure;
+	private volatile long latencyNanos;
+	private volatile boolean connectionsCut;
+	private volatile boolean storeMessages = true;
+	private volatile boolean running = true;
+
+	public EmbeddedSmtpServer( ) {
+		try {
+			this.selector = Selector.open( );
+			this.serverChannel = ServerSocketChannel.open( );
+			serverChannel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress( ), 0 ), 1024 );
+			serverChannel.configureBlocking( false );
+			serverChannel.register( selector, SelectionKey.OP_ACCEPT );
+		} catch ( final IOException e ) {
+			throw new UncheckedIOException( "Failed to start SMTP server", e );
+		}
+		this.eventLoop = new Thread( this::run, "embedded-smtp-server" );
+		eventLoop.setDaemon( true );
+		eventLoop.start( );
+	}
+
+	public String getHost( ) {
+		return "localhost";
+	}
+
+	public int getPort( ) {
+		return serverChannel.socket( ).getLocalPort( );
+	}
+
+	/**
+	 * Delays every reply, including the greeting, by the given latency.
+	 */
+	public void setLatency( final Duration latency ) {
+		this.latencyNanos = latency.toNanos( );
+	}
+
+	/**
+	 * Lets the next {@code count} messages fail in the given way.
+	 */
+	public void failNext( final Failure failure, final int count ) {
+		for ( int i = 0; i < count; i++ ) {
+			scheduledFailures.add( failure );
+		}
+	}
+
+	/**
+	 * Lets all messages fail in the given way, respectively none if {@code null}. Failures scheduled by
+	 * {@link #failNext(Failure, int)} take precedence.
+	 */
+	public void failAll( final Failure failure ) {
+		this.permanentFailure = failure;
+	}
+
+	/**
+	 * Closes all open connections and every connection accepted from now on, until the connections are restored.
+	 */
+	public void setConnectionsCut( final boolean connectionsCut ) {
+		this.connectionsCut = connectionsCut;
+		selector.wakeup( );
+	}
+
+	/**
+	 * Whether received messages are kept in the mailbox. Load tests may only count them.
+	 */
+	public void setStoreMessages( final boolean storeMessages ) {
+		this.storeMessages = storeMessages;
+	}
+
+	public long getReceivedCount( ) {
+		return receivedCount.get( );
+	}
+
+	public List<ReceivedMessage> getMessages( ) {
+		return List.copyOf( mailbox );
+	}
+
+	public List<ReceivedMessage> getMessages( final Predicate<ReceivedMessage> filter ) {
+		return mailbox.stream( ).filter( filter ).toList( );
+	}
+
+	public List<ReceivedMessage> getMessagesTo( final String recipient ) {
+		return getMessages( message -> message.recipients( ).contains( recipient ) );
+	}
+
+	/**
+	 * Waits until at least {@code count} messages have been received.
+	 *
+	 * @throws IllegalStateException if not as many messages have been received within the timeout
+	 */
+	public List<ReceivedMessage> awaitMessages( final int count, final Duration timeout ) throws InterruptedException {
+		final long deadline = System.nanoTime( ) + timeout.toNanos( );
+		while ( receivedCount.get( ) < count ) {
+			if ( System.nanoTime( ) - deadline > 0 ) {
+				throw new IllegalStateException( "Received " + receivedCount.get( ) + " instead of " + count + " messages within " + timeout );
+			}
+			TimeUnit.MILLISECONDS.sleep( 5 );
+		}
+		return getMessages( );
+	}
+
+	/**
+	 * Empties the mailbox and removes latency, failures and cut connections.
+	 */
+	public void reset( ) {
+		mailbox.clear( );
+		receivedCount.set( 0 );
+		scheduledFailures.clear( );
+		permanentFailure = null;
+		latencyNanos = 0;
+		storeMessages = true;
+		setConnectionsCut( false );
+	}
+
+	@Override
+	public void beforeEach( final ExtensionContext context ) {
+		reset( );
+	}
+
+	@Override
+	public void afterAll( final ExtensionContext context ) throws InterruptedException {
+		close( );
+	}
+
+	@Override
+	public void close( ) throws InterruptedException {
+		running = false;
+		selector.wakeup( );
+		eventLoop.join( TimeUnit.SECONDS.toMillis( 5 ) );
+	}
+
+	private void run( ) {
+		try {
+			while ( running ) {
+				final DelayedReply nextReply = delayedReplies.peek( );
+				if ( nextReply == null ) {
+					selector.select( );
+				} else {
+					final long waitMillis = TimeUnit.NANOSECONDS.toMillis( nextReply.deadline - System.nanoTime( ) );
+					if ( waitMillis > 0 ) {
+						selector.select( waitMillis );
+					} else {
+						selector.selectNow( );
+					}
+				}
+
+				if ( connectionsCut ) {
+					cutConnections( );
+				}
+				final Iterator<SelectionKey> selectedKeys = selector.selectedKeys( ).iterator( );
+				while ( selectedKeys.hasNext( ) ) {
+					final SelectionKey key = selectedKeys.next( );
+					selectedKeys.remove( );
+					handle( key );
+				}
+				sendDueReplies( );
+			}
+		} catch ( final IOException e ) {
+			throw new UncheckedIOException( "SMTP server failed", e );
+		} finally {
+			for ( final SelectionKey key : selector.keys( ) ) {
+				closeQuietly( key );
+			}
+			closeQuietly( selector );
+		}
+	}
+
+	private void handle( final SelectionKey key ) {
+		try {
+			if ( !key.isValid( ) ) {
+				return;
+			}
+			if ( key.isAcceptable( ) ) {
+				accept( );
+				return;
+			}
+			final SmtpSession session = ( SmtpSession ) key.attachment( );
+			if ( key.isReadable( ) ) {
+				session.read( );
+			}
+			if ( key.isValid( ) && key.isWritable( ) ) {
+				session.flush( );
+			}
+		} catch ( final IOException e ) {
+			// Connection reset by the client
+			closeQuietly( key );
+		}
+	}
+
+	private void accept( ) throws IOException {
+		SocketChannel channel;
+		while ( ( channel = serverChannel.accept( ) ) != null ) {
+			if ( connectionsCut ) {
+				channel.close( );
+				continue;
+			}
+			channel.configureBlocking( false );
+			channel.socket( ).setTcpNoDelay( true );
+			final SelectionKey key = channel.register( selector, SelectionKey.OP_READ );
+			final SmtpSession session = new SmtpSession( key, channel );
+			key.attach( session );
+			session.reply( "220 localhost ESMTP embedded" );
+		}
+	}
+
+	private void cutConnections( ) {
+		for ( final SelectionKey key : selector.keys( ) ) {
+			if ( key.channel( ) != serverChannel ) {
+				closeQuietly( key );
+			}
+		}
+		delayedReplies.clear( );
+	}
+
+	private void sendDueReplies( ) {
+		final long now = System.nanoTime( );
+		while ( !delayedReplies.isEmpty( ) && delayedReplies.peek( ).deadline - now <= 0 ) {
+			final DelayedReply reply = delayedReplies.poll( );
+			if ( reply.session.key.isValid( ) ) {
+				try {
+					reply.session.write( reply.reply, reply.closeAfter );
+				} catch ( final IOException e ) {
+					closeQuietly( reply.session.key );
+				}
+			}
+		}
+	}
+
+	private void store( final String from, final List<String> recipients, final byte[] data ) {
+		if ( storeMessages ) {
+			mailbox.add( new ReceivedMessage( from, recipients, data ) );
+		}
+		receivedCount.incrementAndGet( );
+	}
+
+	private static String address( final String line ) {
+		final int start = line.indexOf( '<' );
+		final int end = line.indexOf( '>', start + 1 );
+		if ( start < 0 || end < 0 ) {
+			return line.substring( line.indexOf( ':' ) + 1 ).strip( );
+		}
+		return line.substring( start + 1, end );
+	}
+
+	private static void closeQuietly( final SelectionKey key ) {
+		key.cancel( );
+		closeQuietly( key.channel( ) );
+	}
+
+	private static void closeQuietly( final AutoCloseable closeable ) {
+		try {
+			closeable.close( );
+		} catch ( final Exception e ) {
+			// Closing anyway
+		}
+	}
+
+	private record DelayedReply( long deadline, long sequence, SmtpSession session, byte[] reply, boolean closeAfter )
+			implements Comparable<DelayedReply> {
+
+		@Override
+		public int compareTo( final DelayedReply other ) {
+			final int byDeadline = Long.compare( deadline - other.deadline, 0 );
+			return byDeadline != 0 ? byDeadline : Long.compare( sequence, other.sequence );
+		}
+	}
+
+	/**
+	 * State of a single connection, only touched by the event loop.
+	 */
+	private final class SmtpSession {
+
+		private final SelectionKey key;
+		private final SocketChannel channel;
+		private ByteBuffer readBuffer = ByteBuffer.allocate( READ_BUFFER_SIZE );
+		private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>( );
+		private boolean closeAfterFlush;
+		private long lastReplyDeadline = System.nanoTime( );
+
+		private boolean inData;
+		private String from;
+		private final List<String> recipients = new ArrayList<>( );
+		private final ByteArrayOutputStream data = new ByteArrayOutputStream( );
+		private Failure failure;
+
+		SmtpSession( final SelectionKey key, final SocketChannel channel ) {
+			this.key = key;
+			this.channel = channel;
+		}
+
+		void read( ) throws IOException {
+			if ( channel.read( readBuffer ) < 0 ) {
+				closeQuietly( key );
+				return;
+			}
+			readBuffer.flip( );
+			int lineStart = readBuffer.position( );
+			for ( int i = lineStart; i < readBuffer.limit( ); i++ ) {
+				if ( readBuffer.get( i ) == '\n' ) {
+					final int lineEnd = i > lineStart && readBuffer.get( i - 1 ) == '\r' ? i - 1 : i;
+					handleLine( lineStart, lineEnd );
+					if ( !key.isValid( ) ) {
+						return;
+					}
+					lineStart = i + 1;
+				}
+			}
+			readBuffer.position( lineStart );
+			readBuffer.compact( );
+			if ( !readBuffer.hasRemaining( ) ) {
+				// A single line exceeds the buffer
+				readBuffer = ByteBuffer.allocate( readBuffer.capacity( ) * 2 ).put( readBuffer.flip( ) );
+			}
+		}
+
+		private void handleLine( final int start, final int end ) throws IOException {
+			if ( inData ) {
+				if ( end - start == 1 && readBuffer.get( start ) == '.' ) {
+					endData( );
+					return;
+				}
+				// Remove dot stuffing
+				final int offset = end > start && readBuffer.get( start ) == '.' ? 1 : 0;
+				data.write( readBuffer.array( ), readBuffer.arrayOffset( ) + start + offset, end - start - offset );
+				data.writeBytes( CRLF );
+				return;
+			}
+
+			final String line = new String( readBuffer.array( ), readBuffer.arrayOffset( ) + start, end - start, StandardCharsets.US_ASCII );
+			final String command = ( line.length( ) > 4 ? line.substring( 0, 4 ) : line ).toUpperCase( Locale.ROOT );
+			switch ( command ) {
+				case "EHLO" -> reply( "250-localhost\r\n250-8BITMIME\r\n250 SMTPUTF8" );
+				case "HELO" -> reply( "250 localhost" );
+				case "MAIL" -> {
+					resetTransaction( );
+					from = address( line );
+					failure = scheduledFailures.poll( );
+					if ( failure == null ) {
+						failure = permanentFailure;
+					}
+					reply( "250 2.1.0 OK" );
+				}
+				case "RCPT" -> {
+					if ( from == null ) {
+						reply( "503 5.5.1 MAIL first" );
+					} else if ( failure == Failure.REJECT_RECIPIENT ) {
+						reply( "550 5.1.1 Mailbox unavailable" );
+					} else {
+						recipients.add( address( line ) );
+						reply( "250 2.1.5 OK" );
+					}
+				}
+				case "DATA" -> {
+					if ( recipients.isEmpty( ) ) {
+						reply( "554 5.5.1 No valid recipients" );
+					} else {
+						inData = true;
+						reply( "354 End data with <CR><LF>.<CR><LF>" );
+					}
+				}
+				case "RSET" -> {
+					resetTransaction( );
+					reply( "250 2.0.0 OK" );
+				}
+				case "NOOP" -> reply( "250 2.0.0 OK" );
+				case "QUIT" -> reply( "221 2.0.0 Bye", true );
+				default -> reply( "502 5.5.2 Command not implemented" );
+			}
+		}
+
+		private void endData( ) throws IOException {
+			inData = false;
+			if ( failure == Failure.DISCONNECT ) {
+				closeQuietly( key );
+				return;
+			}
+			if ( failure == Failure.REJECT_MESSAGE_TRANSIENTLY ) {
+				reply( "451 4.3.0 Temporary failure" );
+			} else {
+				store( from, List.copyOf( recipients ), data.toByteArray( ) );
+				reply( "250 2.0.0 Queued" );
+			}
+			resetTransaction( );
+		}
+
+		private void resetTransaction( ) {
+			from = null;
+			recipients.clear( );
+			data.reset( );
+			failure = null;
+		}
+
+		void reply( final String reply ) throws IOException {
+			reply( reply, false );
+		}
+
+		void reply( final String reply, final boolean closeAfter ) throws IOException {
+			final byte[] bytes = ( reply + "\r\n" ).getBytes( StandardCharsets.US_ASCII );
+			final long now = System.nanoTime( );
+			if ( latencyNanos <= 0 && lastReplyDeadline - now <= 0 ) {
+				write( bytes, closeAfter );
+				return;
+			}
+			// Never overtake a reply delayed before
+			final long deadline = now + latencyNanos;
+			if ( deadline - lastReplyDeadline > 0 ) {
+				lastReplyDeadline = deadline;
+			}
+			delayedReplies.add( new DelayedReply( lastReplyDeadline, replySequence++, this, bytes, closeAfter ) );
+		}
+
+		void write( final byte[] bytes, final boolean closeAfter ) throws IOException {
+			writeQueue.add( ByteBuffer.wrap( bytes ) );
+			closeAfterFlush |= closeAfter;
+			flush( );
+		}
+
+		void flush( ) throws IOException {
+			while ( !writeQueue.isEmpty( ) ) {
+				final ByteBuffer buffer = writeQueue.peek( );
+				channel.write( buffer );
+				if ( buffer.hasRemaining( ) ) {
+					key.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+					return;
+				}
+				writeQueue.poll( );
+			}
+			if ( closeAfterFlush ) {
+				closeQuietly( key );
+				return;
+			}
+			key.interestOps( SelectionKey.OP_READ );
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package de.libutzki.mailsender.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer.Failure;
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer.ReceivedMessage;
+
+class EmbeddedSmtpServerTest {
+
+	@RegisterExtension
+	static EmbeddedSmtpServer smtpServer = new EmbeddedSmtpServer( );
+
+	@Test
+	void testReceivesMessages( ) throws InterruptedException {
+		final JavaMailSenderImpl mailSender = createMailSender( );
+
+		mailSender.send( createMessage( "recipient@example.com", "Test-Subject", "Test-Body\n.starts with a dot" ) );
+
+		assertThat( smtpServer.awaitMessages( 1, Duration.ofSeconds( 5 ) ) )
+				.extracting( ReceivedMessage::from, ReceivedMessage::recipients, ReceivedMessage::subject, ReceivedMessage::text )
+				.containsExactly( tuple( "sender@example.com", List.of( "recipient@example.com" ), "Test-Subject",
+						"Test-Body\r\n.starts with a dot" ) );
+		assertThat( smtpServer.getMessagesTo( "other@example.com" ) ).isEmpty( );
+	}
+
+	@Test
+	void testLatency( ) {
+		final JavaMailSenderImpl mailSender = createMailSender( );
+		smtpServer.setLatency( Duration.ofMillis( 50 ) );
+
+		final long start = System.nanoTime( );
+		mailSender.send( createMessage( "recipient@example.com", "Test-Subject", "Test-Body" ) );
+
+		// Greeting, EHLO, MAIL, RCPT, DATA, end of data and QUIT are delayed
+		assertThat( Duration.ofNanos( System.nanoTime( ) - start ) ).isGreaterThanOrEqualTo( Duration.ofMillis( 6 * 50 ) );
+	}
+
+	@Test
+	void testInjectedFailures( ) {
+		final JavaMailSenderImpl mailSender = createMailSender( );
+		smtpServer.failNext( Failure.REJECT_RECIPIENT, 1 );
+		smtpServer.failNext( Failure.REJECT_MESSAGE_TRANSIENTLY, 1 );
+		smtpServer.failNext( Failure.DISCONNECT, 1 );
+
+		for ( int i = 0; i < 3; i++ ) {
+			assertThatExceptionOfType( MailSendException.class )
+					.isThrownBy( ( ) -> mailSender.send( createMessage( "recipient@example.com", "Test-Subject", "Test-Body" ) ) );
+		}
+		mailSender.send( createMessage( "recipient@example.com", "Test-Subject", "Test-Body" ) );
+
+		assertThat( smtpServer.getReceivedCount( ) ).isEqualTo( 1 );
+	}
+
+	@Test
+	void testConnectionsCut( ) {
+		final JavaMailSenderImpl mailSender = createMailSender( );
+		smtpServer.setConnectionsCut( true );
+
+		assertThatExceptionOfType( MailSendException.class )
+				.isThrownBy( ( ) -> mailSender.send( createMessage( "recipient@example.com", "Test-Subject", "Test-Body" ) ) );
+
+		smtpServer.setConnectionsCut( false );
+		mailSender.send( createMessage( "recipient@example.com", "Test-Subject", "Test-Body" ) );
+
+		assertThat( smtpServer.getReceivedCount( ) ).isEqualTo( 1 );
+	}
+
+	@Test
+	void testConcurrentConnections( ) throws Exception {
+		final int threads = 8;
+		final int messagesPerThread = 500;
+		smtpServer.setStoreMessages( false );
+
+		final ExecutorService executorService = Executors.newFixedThreadPool( threads );
+		try {
+			final List<Future<?>> futures = new ArrayList<>( );
+			for ( int thread = 0; thread < threads; thread++ ) {
+				futures.add( executorService.submit( ( ) -> createMailSender( ).send( IntStream.range( 0, messagesPerThread )
+						.mapToObj( i -> createMessage( "recipient" + i + "@example.com", "Subject " + i, "Body " + i ) )
+						.toArray( SimpleMailMessage[]::new ) ) ) );
+			}
+			for ( final Future<?> future : futures ) {
+				future.get( );
+			}
+		} finally {
+			executorService.shutdown( );
+		}
+
+		assertThat( smtpServer.getReceivedCount( ) ).isEqualTo( threads * messagesPerThread );
+		assertThat( smtpServer.getMessages( ) ).isEmpty( );
+	}
+
+	private static JavaMailSenderImpl createMailSender( ) {
+		final JavaMailSenderImpl mailSender = new JavaMailSenderImpl( );
+		mailSender.setHost( smtpServer.getHost( ) );
+		mailSender.setPort( smtpServer.getPort( ) );
+		return mailSender;
+	}
+
+	private static SimpleMailMessage createMessage( final String recipient, final String subject, final String body ) {
+		final SimpleMailMessage message = new SimpleMailMessage( );
+		message.setFrom( "sender@example.com" );
+		message.setTo( recipient );
+		message.setSubject( subject );
+		message.setText( body );
+		return message;
+	}
+}
@@ -0,0 +1,90 @@
+package de.libutzki.mailsender.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.mail.MessagingException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.mail.smtp.SMTPTransport;
+
+import de.libutzki.mailsender.mail.SmtpConnectionPool.PooledConnection;
+
+class SmtpConnectionPoolTest {
+
+	private final List<SMTPTransport> connectedTransports = new ArrayList<>( );
+
+	private SmtpConnectionPool connectionPool;
+
+	@BeforeEach
+	void init( ) {
+		final SmtpPoolProperties properties = new SmtpPoolProperties( );
+		properties.setMaxTotal( 2 );
+		properties.setMaxWait( Duration.ofMillis( 50 ) );
+		connectionPool = new SmtpConnectionPool( ( ) -> {
+			final SMTPTransport transport = mock( SMTPTransport.class );
+			connectedTransports.add( transport );
+			return transport;
+		}, properties );
+	}
+
+	@AfterEach
+	void close( ) {
+		connectionPool.close( );
+	}
+
+	@Test
+	void testConnectionIsReusedAndReset( ) throws MessagingException {
+		final PooledConnection first = connectionPool.borrow( );
+		first.markUsed( );
+		connectionPool.release( first, true );
+
+		final PooledConnection second = connectionPool.borrow( );
+
+		assertThat( second ).isSameAs( first );
+		assertThat( connectedTransports ).hasSize( 1 );
+		verify( connectedTransports.get( 0 ) ).issueCommand( "RSET", 250 );
+	}
+
+	@Test
+	void testBrokenConnectionIsReplaced( ) throws MessagingException {
+		final PooledConnection first = connectionPool.borrow( );
+		first.markUsed( );
+		connectionPool.release( first, true );
+		doThrow( new MessagingException( "Connection reset" ) ).when( connectedTransports.get( 0 ) ).issueCommand( "RSET", 250 );
+
+		final PooledConnection second = connectionPool.borrow( );
+
+		assertThat( second ).isNotSameAs( first );
+		assertThat( connectedTransports ).hasSize( 2 );
+		verify( connectedTransports.get( 0 ) ).close( );
+	}
+
+	@Test
+	void testPoolIsBounded( ) throws MessagingException {
+		final PooledConnection first = connectionPool.borrow( );
+		connectionPool.borrow( );
+
+		assertThatExceptionOfType( MessagingException.class )
+				.isThrownBy( connectionPool::borrow );
+
+		connectionPool.release( first, false );
+		connectionPool.borrow( );
+
+		assertThat( connectedTransports ).hasSize( 3 );
+		verify( connectedTransports.get( 0 ), times( 1 ) ).close( );
+		verify( connectedTransports.get( 1 ), never( ) ).close( );
+	}
+}
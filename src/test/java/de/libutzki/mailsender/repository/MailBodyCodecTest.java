@@ -0,0 +1,69 @@
+package de.libutzki.mailsender.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class MailBodyCodecTest {
+
+	private static final String NEWSLETTER = """
+			<!DOCTYPE html><html lang="en"><head><meta charset="utf-8"></head><body style="margin: 0; padding: 0;">
+			<table role="presentation" width="100%" cellspacing="0" cellpadding="0" border="0" align="center">
+			<tr><td><p style="margin: 0; font-family: Arial, Helvetica, sans-serif;">Hello Jane,</p></td></tr>
+			<tr><td><p style="margin: 0; font-family: Arial, Helvetica, sans-serif;">Our new products are here.</p></td></tr>
+			<tr><td><p style="margin: 0; font-family: Arial, Helvetica, sans-serif;">Best regards</p></td></tr>
+			</table>
+			<p>If you no longer wish to receive these emails, you can unsubscribe at any time.</p>
+			</body></html>
+			""";
+
+	@Test
+	void testRoundTrip( ) {
+		final byte[] compressedBody = MailBodyCodec.compress( NEWSLETTER );
+
+		assertThat( compressedBody ).isNotNull( );
+		assertThat( compressedBody.length ).isLessThan( NEWSLETTER.getBytes( StandardCharsets.UTF_8 ).length / 3 );
+		assertThat( MailBodyCodec.decompress( compressedBody ) ).isEqualTo( NEWSLETTER );
+	}
+
+	@Test
+	void testShortBodiesAreNotCompressed( ) {
+		assertThat( MailBodyCodec.compress( null ) ).isNull( );
+		assertThat( MailBodyCodec.compress( "Test-Body" ) ).isNull( );
+	}
+
+	@Test
+	void testRandomBodiesAreSmallerWhenCompressed( ) {
+		final Random random = new Random( 42 );
+		final StringBuilder randomBody = new StringBuilder( );
+		while ( randomBody.length( ) < 1000 ) {
+			randomBody.append( ( char ) ( '!' + random.nextInt( 90 ) ) );
+		}
+
+		// Huffman coding needs about 6.5 bits for each of 90 symbols, so even random text is compressed a little
+		final byte[] compressedBody = MailBodyCodec.compress( randomBody.toString( ) );
+		assertThat( compressedBody ).isNotNull( );
+		assertThat( compressedBody.length ).isLessThan( randomBody.length( ) );
+		assertThat( MailBodyCodec.decompress( compressedBody ) ).isEqualTo( randomBody.toString( ) );
+	}
+
+	@Test
+	void testUnknownFormat( ) {
+		assertThatIllegalArgumentException( ).isThrownBy( ( ) -> MailBodyCodec.decompress( new byte[] { 42, 1, 2 } ) );
+	}
+
+	@Test
+	void testSentMailBodyIsTransparent( ) {
+		final SentMail sentMail = new SentMail( );
+
+		sentMail.setBody( NEWSLETTER );
+		assertThat( sentMail.getBody( ) ).contains( NEWSLETTER );
+
+		sentMail.setBody( "Test-Body" );
+		assertThat( sentMail.getBody( ) ).contains( "Test-Body" );
+	}
+}
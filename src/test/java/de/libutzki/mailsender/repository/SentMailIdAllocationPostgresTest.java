@@ -0,0 +1,59 @@
+package de.libutzki.mailsender.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs against the schema created by Liquibase, as H2 cannot apply the changelog: changeset 5 increments the sequence by
+ * the allocation size.
+ */
+@Tag( "Testcontainers" )
+@SpringBootTest
+@DirtiesContext
+@TestPropertySource( properties = {
+		"spring.datasource.url=jdbc:tc:postgresql:14.1:///SentMailIdAllocationPostgresTest",
+		"management.health.mail.enabled=false",
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector=de.libutzki.mailsender.repository.SequenceCallCounter"
+} )
+class SentMailIdAllocationPostgresTest {
+
+	private static final int MAIL_COUNT = 200;
+	private static final int ALLOCATION_SIZE = 50;
+
+	@Autowired
+	private SentMailRepository sentMailRepository;
+
+	@MockBean
+	private JavaMailSender mailSender;
+
+	@Test
+	void testIdsAreAllocatedInBlocks( ) {
+		SequenceCallCounter.reset( );
+
+		final List<SentMail> sentMails = IntStream.range( 0, MAIL_COUNT )
+				.mapToObj( i -> {
+					final SentMail sentMail = new SentMail( );
+					sentMail.setSender( "sender@example.com" );
+					sentMail.setRecipient( "recipient" + i + "@example.com" );
+					sentMail.setStatus( DeliveryStatus.SENT );
+					return sentMail;
+				} )
+				.toList( );
+		sentMailRepository.saveAll( sentMails );
+
+		assertThat( sentMails ).extracting( SentMail::getId ).doesNotContainNull( ).doesNotHaveDuplicates( );
+		// The first block needs an additional call, as the initial value of the sequence is its lower bound
+		assertThat( SequenceCallCounter.getCount( ) ).isBetween( MAIL_COUNT / ALLOCATION_SIZE, MAIL_COUNT / ALLOCATION_SIZE + 1 );
+	}
+}
@@ -0,0 +1,60 @@
+package de.libutzki.mailsender.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import de.libutzki.mailsender.model.NewMail;
+import de.libutzki.mailsender.model.SentMailDTO;
+import de.libutzki.mailsender.service.MailService;
+
+@Tag( "Testcontainers" )
+@SpringBootTest
+@DirtiesContext
+@TestPropertySource( properties = {
+		"spring.datasource.url=jdbc:tc:postgresql:14.1:///SentMailPartitioningPostgresTest",
+		"spring.liquibase.contexts=default,partitioned",
+		"management.health.mail.enabled=false"
+} )
+class SentMailPartitioningPostgresTest {
+
+	@Autowired
+	private MailService mailService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@MockBean
+	private JavaMailSender mailSender;
+
+	@Test
+	void testQueriesBySenderArePrunedToOnePartition( ) {
+		final Integer partitionCount = jdbcTemplate.queryForObject( "SELECT count(*) FROM pg_inherits WHERE inhparent = 'sent_mail'::regclass",
+				Integer.class );
+		assertThat( partitionCount ).isEqualTo( 16 );
+
+		mailService.sendMail( "sender@example.com", new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" ) );
+
+		final List<SentMailDTO> actualSentMails = mailService.getSentMailsForSender( "sender@example.com" );
+		assertThat( actualSentMails )
+				.extracting(
+						SentMailDTO::recipient,
+						SentMailDTO::subject,
+						SentMailDTO::body )
+				.containsExactly( tuple( "recipient@example.com", "Test-Subject", "Test-Body" ) );
+
+		final List<String> plan = jdbcTemplate.queryForList( "EXPLAIN SELECT * FROM sent_mail WHERE sender = 'sender@example.com'", String.class );
+		assertThat( plan.stream( ).filter( line -> line.contains( " on sent_mail_p" ) ) ).hasSize( 1 );
+	}
+}
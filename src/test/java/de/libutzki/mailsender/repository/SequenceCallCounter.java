@@ -0,0 +1,32 @@
+package de.libutzki.mailsender.repository;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the statements fetching the next value of {@code hibernate_sequence}.
+ */
+public class SequenceCallCounter implements StatementInspector {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final AtomicInteger count = new AtomicInteger( );
+
+	@Override
+	public String inspect( final String sql ) {
+		if ( sql.toLowerCase( Locale.ROOT ).contains( "hibernate_sequence" ) ) {
+			count.incrementAndGet( );
+		}
+		return sql;
+	}
+
+	static int getCount( ) {
+		return count.get( );
+	}
+
+	static void reset( ) {
+		count.set( 0 );
+	}
+}
@@ -0,0 +1,97 @@
+package de.libutzki.mailsender.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.core.session.SessionDestroyedEvent;
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.web.session.HttpSessionDestroyedEvent;
+
+class ConcurrentSessionRegistryTest {
+
+	private final AtomicLong nanoTime = new AtomicLong( );
+	private ConcurrentSessionRegistry sessionRegistry;
+
+	@BeforeEach
+	void init( ) {
+		final SessionRegistryProperties properties = new SessionRegistryProperties( );
+		properties.setMaximumSessions( 2 );
+		properties.setTimeout( Duration.ofMinutes( 30 ) );
+		sessionRegistry = new ConcurrentSessionRegistry( properties, Runnable::run, nanoTime::get );
+	}
+
+	@Test
+	void testRegisterSessions( ) {
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+		sessionRegistry.registerNewSession( "session-2", "alice" );
+		// Registering again is a mere refresh
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+
+		assertThat( sessionRegistry.getAllPrincipals( ) ).containsExactly( "alice" );
+		assertThat( sessionRegistry.getAllSessions( "alice", false ) )
+				.extracting( SessionInformation::getSessionId )
+				.containsExactlyInAnyOrder( "session-1", "session-2" );
+
+		sessionRegistry.registerNewSession( "session-1", "bob" );
+
+		assertThat( sessionRegistry.getAllPrincipals( ) ).containsExactlyInAnyOrder( "alice", "bob" );
+		assertThat( sessionRegistry.getAllSessions( "alice", false ) ).extracting( SessionInformation::getSessionId ).containsExactly( "session-2" );
+		assertThat( sessionRegistry.getSessionInformation( "session-1" ).getPrincipal( ) ).isEqualTo( "bob" );
+	}
+
+	@Test
+	void testExpiredSessions( ) {
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+		sessionRegistry.getSessionInformation( "session-1" ).expireNow( );
+
+		assertThat( sessionRegistry.getAllSessions( "alice", false ) ).isEmpty( );
+		assertThat( sessionRegistry.getAllSessions( "alice", true ) ).hasSize( 1 );
+
+		// An expired session is replaced on registration
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+		assertThat( sessionRegistry.getAllSessions( "alice", false ) ).hasSize( 1 );
+	}
+
+	@Test
+	void testRemoveSession( ) {
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+
+		final MockHttpSession session = new MockHttpSession( null, "session-1" );
+		final SessionDestroyedEvent event = new HttpSessionDestroyedEvent( session );
+		sessionRegistry.onApplicationEvent( event );
+
+		assertThat( sessionRegistry.getSessionInformation( "session-1" ) ).isNull( );
+		assertThat( sessionRegistry.getAllPrincipals( ) ).isEmpty( );
+	}
+
+	@Test
+	void testTimeout( ) {
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+		sessionRegistry.registerNewSession( "session-2", "bob" );
+
+		nanoTime.addAndGet( Duration.ofMinutes( 20 ).toNanos( ) );
+		sessionRegistry.refreshLastRequest( "session-2" );
+		// Looking up a session does not keep it alive
+		sessionRegistry.getSessionInformation( "session-1" );
+		nanoTime.addAndGet( Duration.ofMinutes( 20 ).toNanos( ) );
+
+		assertThat( sessionRegistry.getSessionCount( ) ).isEqualTo( 1 );
+		assertThat( sessionRegistry.getSessionInformation( "session-1" ) ).isNull( );
+		assertThat( sessionRegistry.getAllPrincipals( ) ).containsExactly( "bob" );
+	}
+
+	@Test
+	void testMaximumSessions( ) {
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+		sessionRegistry.registerNewSession( "session-2", "bob" );
+		sessionRegistry.registerNewSession( "session-3", "carol" );
+
+		assertThat( sessionRegistry.getSessionCount( ) ).isEqualTo( 2 );
+		assertThat( sessionRegistry.getAllPrincipals( ) ).hasSize( 2 );
+	}
+}
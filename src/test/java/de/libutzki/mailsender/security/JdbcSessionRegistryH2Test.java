@@ -0,0 +1,93 @@
+package de.libutzki.mailsender.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.core.session.SessionInformation;
+
+class JdbcSessionRegistryH2Test {
+
+	private EmbeddedDatabase dataSource;
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	void init( ) {
+		dataSource = new EmbeddedDatabaseBuilder( ).setType( EmbeddedDatabaseType.H2 ).generateUniqueName( true ).build( );
+		jdbcTemplate = new JdbcTemplate( dataSource );
+		// See changelog-master.xml
+		jdbcTemplate.execute( """
+				CREATE TABLE session_registry (
+					session_id varchar(255) PRIMARY KEY,
+					principal_name varchar(255) NOT NULL,
+					last_request timestamp NOT NULL,
+					expired boolean DEFAULT false NOT NULL)
+				""" );
+	}
+
+	@AfterEach
+	void shutdown( ) {
+		dataSource.shutdown( );
+	}
+
+	@Test
+	void testSessionsAreSharedBetweenInstances( ) {
+		final JdbcSessionRegistry instance1 = new JdbcSessionRegistry( dataSource, new SessionRegistryProperties( ) );
+		final JdbcSessionRegistry instance2 = new JdbcSessionRegistry( dataSource, new SessionRegistryProperties( ) );
+
+		instance1.registerNewSession( "session-1", "alice" );
+		instance2.registerNewSession( "session-2", "alice" );
+
+		assertThat( instance1.getAllPrincipals( ) ).containsExactly( "alice" );
+		assertThat( instance2.getAllSessions( "alice", false ) )
+				.extracting( SessionInformation::getSessionId )
+				.containsExactlyInAnyOrder( "session-1", "session-2" );
+
+		instance2.getSessionInformation( "session-1" ).expireNow( );
+
+		assertThat( instance1.getSessionInformation( "session-1" ).isExpired( ) ).isTrue( );
+		assertThat( instance1.getAllSessions( "alice", false ) ).extracting( SessionInformation::getSessionId ).containsExactly( "session-2" );
+		assertThat( instance1.getAllSessions( "alice", true ) ).hasSize( 2 );
+
+		instance2.removeSessionInformation( "session-1" );
+
+		assertThat( instance1.getSessionInformation( "session-1" ) ).isNull( );
+	}
+
+	@Test
+	void testRegisterAgainWithinWriteIntervalDoesNotWrite( ) {
+		final JdbcSessionRegistry sessionRegistry = new JdbcSessionRegistry( dataSource, new SessionRegistryProperties( ) );
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+		// Truncated, as the database may store less than the sub-millisecond precision of the clock
+		final Timestamp past = Timestamp.from( Instant.now( ).minus( Duration.ofMinutes( 5 ) ).truncatedTo( ChronoUnit.MILLIS ) );
+		jdbcTemplate.update( "UPDATE session_registry SET last_request = ?", past );
+
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+		sessionRegistry.refreshLastRequest( "session-1" );
+
+		assertThat( jdbcTemplate.queryForObject( "SELECT last_request FROM session_registry", Timestamp.class ) ).isEqualTo( past );
+	}
+
+	@Test
+	void testDeleteTimedOutSessions( ) {
+		final JdbcSessionRegistry sessionRegistry = new JdbcSessionRegistry( dataSource, new SessionRegistryProperties( ) );
+		sessionRegistry.registerNewSession( "session-1", "alice" );
+		sessionRegistry.registerNewSession( "session-2", "bob" );
+		jdbcTemplate.update( "UPDATE session_registry SET last_request = ? WHERE session_id = ?",
+				Timestamp.from( Instant.now( ).minus( Duration.ofHours( 1 ) ) ), "session-1" );
+
+		assertThat( sessionRegistry.getSessionInformation( "session-1" ) ).isNull( );
+		assertThat( sessionRegistry.deleteTimedOutSessions( ) ).isEqualTo( 1 );
+		assertThat( sessionRegistry.getAllPrincipals( ) ).containsExactly( "bob" );
+	}
+}
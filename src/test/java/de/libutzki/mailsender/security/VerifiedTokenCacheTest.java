@@ -0,0 +1,104 @@
+package de.libutzki.mailsender.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+
+import javax.servlet.http.Cookie;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.KeycloakPrincipal;
+import org.keycloak.adapters.KeycloakDeployment;
+import org.keycloak.adapters.RefreshableKeycloakSecurityContext;
+import org.keycloak.adapters.springsecurity.account.SimpleKeycloakAccount;
+import org.keycloak.adapters.springsecurity.token.KeycloakAuthenticationToken;
+import org.keycloak.common.util.Time;
+import org.keycloak.constants.AdapterConstants;
+import org.keycloak.representations.AccessToken;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+class VerifiedTokenCacheTest {
+
+	private static final String ACCESS_TOKEN = "access-token";
+	private static final String TOKEN_COOKIE = ACCESS_TOKEN + "___id-token___refresh-token";
+
+	private KeycloakDeployment deployment;
+	private VerifiedTokenCache verifiedTokenCache;
+
+	@BeforeEach
+	void init( ) {
+		deployment = mock( KeycloakDeployment.class );
+		verifiedTokenCache = new VerifiedTokenCache( new KeycloakCacheProperties( ) );
+	}
+
+	@Test
+	void testCachesVerifiedAuthentication( ) {
+		final KeycloakAuthenticationToken authentication = createAuthentication( ACCESS_TOKEN, Time.currentTime( ) + 300 );
+
+		assertThat( verifiedTokenCache.get( TOKEN_COOKIE ) ).isEmpty( );
+		verifiedTokenCache.put( TOKEN_COOKIE, authentication );
+
+		assertThat( verifiedTokenCache.get( TOKEN_COOKIE ) ).containsSame( authentication );
+		assertThat( verifiedTokenCache.get( TOKEN_COOKIE + "x" ) ).isEmpty( );
+	}
+
+	@Test
+	void testDoesNotCacheRefreshedAuthentication( ) {
+		verifiedTokenCache.put( TOKEN_COOKIE, createAuthentication( "refreshed-access-token", Time.currentTime( ) + 300 ) );
+
+		assertThat( verifiedTokenCache.get( TOKEN_COOKIE ) ).isEmpty( );
+	}
+
+	@Test
+	void testDoesNotCacheExpiredAuthentication( ) {
+		verifiedTokenCache.put( TOKEN_COOKIE, createAuthentication( ACCESS_TOKEN, Time.currentTime( ) - 1 ) );
+
+		assertThat( verifiedTokenCache.get( TOKEN_COOKIE ) ).isEmpty( );
+		assertThat( verifiedTokenCache.getSize( ) ).isZero( );
+	}
+
+	@Test
+	void testEvictsAuthenticationBeforeNotBeforePolicy( ) {
+		verifiedTokenCache.put( TOKEN_COOKIE, createAuthentication( ACCESS_TOKEN, Time.currentTime( ) + 300 ) );
+
+		when( deployment.getNotBefore( ) ).thenReturn( Time.currentTime( ) + 1 );
+
+		assertThat( verifiedTokenCache.get( TOKEN_COOKIE ) ).isEmpty( );
+		assertThat( verifiedTokenCache.getSize( ) ).isZero( );
+	}
+
+	@Test
+	void testLogoutEvictsAuthentication( ) {
+		verifiedTokenCache.put( TOKEN_COOKIE, createAuthentication( ACCESS_TOKEN, Time.currentTime( ) + 300 ) );
+		final MockHttpServletRequest request = new MockHttpServletRequest( );
+		request.setCookies( new Cookie( AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE, TOKEN_COOKIE ) );
+
+		verifiedTokenCache.logout( request, null, null );
+
+		assertThat( verifiedTokenCache.get( TOKEN_COOKIE ) ).isEmpty( );
+	}
+
+	@Test
+	void testIgnoresCookieOfBearerTokenRequest( ) {
+		final MockHttpServletRequest request = new MockHttpServletRequest( );
+		request.setCookies( new Cookie( AdapterConstants.KEYCLOAK_ADAPTER_STATE_COOKIE, TOKEN_COOKIE ) );
+		assertThat( VerifiedTokenCache.getTokenCookie( request ) ).contains( TOKEN_COOKIE );
+
+		request.addHeader( "Authorization", "Bearer " + ACCESS_TOKEN );
+		assertThat( VerifiedTokenCache.getTokenCookie( request ) ).isEmpty( );
+	}
+
+	private KeycloakAuthenticationToken createAuthentication( final String accessTokenString, final long expiration ) {
+		final AccessToken accessToken = new AccessToken( );
+		accessToken.issuedNow( );
+		accessToken.exp( expiration );
+		accessToken.setEmail( "sender@example.com" );
+		final RefreshableKeycloakSecurityContext securityContext = new RefreshableKeycloakSecurityContext( deployment, null, accessTokenString,
+				accessToken, null, null, null );
+		final KeycloakPrincipal<RefreshableKeycloakSecurityContext> principal = new KeycloakPrincipal<>( "user", securityContext );
+		return new KeycloakAuthenticationToken( new SimpleKeycloakAccount( principal, Set.of( ), securityContext ), false );
+	}
+}
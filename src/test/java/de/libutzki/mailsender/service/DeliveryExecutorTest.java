@@ -0,0 +1,52 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import de.libutzki.mailsender.service.DeliveryProperties.ExecutorType;
+
+class DeliveryExecutorTest {
+
+	private DeliveryExecutor deliveryExecutor;
+
+	@AfterEach
+	void shutdown( ) throws InterruptedException {
+		deliveryExecutor.destroy( );
+	}
+
+	@Test
+	void testMaxInFlightIsEnforced( ) throws InterruptedException {
+		final DeliveryProperties deliveryProperties = new DeliveryProperties( );
+		deliveryProperties.setExecutorType( ExecutorType.PLATFORM );
+		deliveryProperties.setMaxInFlight( 2 );
+		deliveryExecutor = new DeliveryExecutor( deliveryProperties );
+
+		final CountDownLatch started = new CountDownLatch( 2 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch finished = new CountDownLatch( 5 );
+		for ( int i = 0; i < 5; i++ ) {
+			deliveryExecutor.execute( ( ) -> {
+				started.countDown( );
+				try {
+					release.await( );
+				} catch ( final InterruptedException e ) {
+					Thread.currentThread( ).interrupt( );
+				}
+				finished.countDown( );
+			} );
+		}
+
+		assertThat( started.await( 5, TimeUnit.SECONDS ) ).isTrue( );
+		assertThat( deliveryExecutor.getInFlightCount( ) ).isEqualTo( 2 );
+		assertThat( deliveryExecutor.getQueuedCount( ) ).isEqualTo( 3 );
+
+		release.countDown( );
+
+		assertThat( finished.await( 5, TimeUnit.SECONDS ) ).isTrue( );
+	}
+}
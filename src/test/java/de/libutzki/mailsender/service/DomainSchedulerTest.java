@@ -0,0 +1,104 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import de.libutzki.mailsender.service.DomainScheduler.TokenBucket;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DomainSchedulerTest {
+
+	private DeliveryExecutor deliveryExecutor;
+	private DomainScheduler domainScheduler;
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void init( ) {
+		final DomainThrottleProperties properties = new DomainThrottleProperties( );
+		properties.setMaxSessions( 1 );
+		properties.setMessagesPerSecond( 1000 );
+		deliveryExecutor = new DeliveryExecutor( new DeliveryProperties( ) );
+		domainScheduler = new DomainScheduler( deliveryExecutor, properties );
+		meterRegistry = new SimpleMeterRegistry( );
+		domainScheduler.bindTo( meterRegistry );
+	}
+
+	@AfterEach
+	void shutdown( ) throws InterruptedException {
+		domainScheduler.destroy( );
+		deliveryExecutor.destroy( );
+	}
+
+	@Test
+	void testBacklogOfOneDomainDoesNotBlockOthers( ) throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch finished = new CountDownLatch( 4 );
+		final Runnable blockingDelivery = ( ) -> {
+			try {
+				release.await( );
+			} catch ( final InterruptedException e ) {
+				Thread.currentThread( ).interrupt( );
+			}
+			finished.countDown( );
+		};
+
+		for ( int i = 0; i < 3; i++ ) {
+			domainScheduler.submit( "example.com", 1, blockingDelivery );
+		}
+		final CountDownLatch otherDomainDelivered = new CountDownLatch( 1 );
+		domainScheduler.submit( "example.org", 1, ( ) -> {
+			otherDomainDelivered.countDown( );
+			finished.countDown( );
+		} );
+
+		assertThat( otherDomainDelivered.await( 5, TimeUnit.SECONDS ) ).isTrue( );
+		domainScheduler.evictIdleLanes( );
+		assertThat( queueDepthGauge( "example.com" ) ).extracting( Gauge::value ).isEqualTo( 2.0 );
+
+		release.countDown( );
+
+		assertThat( finished.await( 5, TimeUnit.SECONDS ) ).isTrue( );
+	}
+
+	@Test
+	void testIdleLaneIsEvicted( ) throws InterruptedException {
+		final CountDownLatch delivered = new CountDownLatch( 1 );
+		domainScheduler.submit( "example.com", 1, delivered::countDown );
+		assertThat( delivered.await( 5, TimeUnit.SECONDS ) ).isTrue( );
+
+		// The session is released right after the delivery, the token bucket is refilled after a millisecond
+		final long deadline = System.nanoTime( ) + TimeUnit.SECONDS.toNanos( 5 );
+		do {
+			Thread.sleep( 10 );
+			domainScheduler.evictIdleLanes( );
+		} while ( queueDepthGauge( "example.com" ) != null && System.nanoTime( ) - deadline < 0 );
+
+		assertThat( queueDepthGauge( "example.com" ) ).isNull( );
+	}
+
+	@Test
+	void testTokenBucketLimitsRate( ) {
+		final TokenBucket tokenBucket = new TokenBucket( 10 );
+
+		assertThat( tokenBucket.tryConsume( 10 ) ).isZero( );
+		assertThat( tokenBucket.tryConsume( 1 ) ).isPositive( );
+	}
+
+	@Test
+	void testDeliveriesLargerThanTheBucketAreRejected( ) {
+		assertThat( domainScheduler.getMaxMessageCount( "example.com" ) ).isEqualTo( 1000 );
+		assertThatIllegalArgumentException( ).isThrownBy( ( ) -> domainScheduler.submit( "example.com", 1001, ( ) -> { } ) );
+	}
+
+	private Gauge queueDepthGauge( final String domain ) {
+		return meterRegistry.find( "mailsender.delivery.domain.queued" ).tag( "domain", domain ).gauge( );
+	}
+}
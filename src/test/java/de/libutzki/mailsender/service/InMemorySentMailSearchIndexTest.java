@@ -0,0 +1,103 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.libutzki.mailsender.model.SentMailDTO;
+import de.libutzki.mailsender.model.SentMailSearchPage;
+import de.libutzki.mailsender.repository.SentMail;
+import de.libutzki.mailsender.repository.SentMailRepository;
+
+class InMemorySentMailSearchIndexTest {
+
+	private static final String SENDER = "sender@example.com";
+
+	private SentMailRepository sentMailRepository;
+	private InMemorySentMailSearchIndex searchIndex;
+
+	@BeforeEach
+	void init( ) {
+		sentMailRepository = mock( SentMailRepository.class );
+		when( sentMailRepository.streamBySender( SENDER ) ).thenAnswer( invocation -> Stream.of(
+				new SentMailDTO( 1L, "alice@example.com", "Invoice", "Please find it attached." ),
+				new SentMailDTO( 2L, "bob@example.com", "Meeting", "About the invoice of Alice." ),
+				new SentMailDTO( 3L, "invoice@example.com", "Reminder", "Still no answer." ) ) );
+		searchIndex = new InMemorySentMailSearchIndex( sentMailRepository );
+	}
+
+	@Test
+	void testTokenize( ) {
+		assertThat( InMemorySentMailSearchIndex.tokenize( "Re: Grüße an Bob@Example.com, 2x!" ) )
+				.containsExactly( "re", "grüße", "an", "bob", "example", "com", "2x" );
+	}
+
+	@Test
+	void testRankByField( ) {
+		// Recipient matches rank before subject matches, which rank before body matches
+		assertThat( searchIndex.rank( SENDER, "INVOICE" ) ).containsExactly( 3L, 1L, 2L );
+	}
+
+	@Test
+	void testAllWordsHaveToMatch( ) {
+		assertThat( searchIndex.rank( SENDER, "invoice alice" ) ).containsExactly( 1L, 2L );
+		assertThat( searchIndex.rank( SENDER, "invoice unknown" ) ).isEmpty( );
+		assertThat( searchIndex.rank( SENDER, " ,. " ) ).isEmpty( );
+	}
+
+	@Test
+	void testIndexIsLoadedOnce( ) {
+		searchIndex.rank( SENDER, "invoice" );
+		searchIndex.rank( SENDER, "meeting" );
+
+		verify( sentMailRepository, times( 1 ) ).streamBySender( anyString( ) );
+	}
+
+	@Test
+	void testIndexAddsMailsToLoadedIndex( ) {
+		searchIndex.rank( SENDER, "invoice" );
+
+		searchIndex.index( List.of( createSentMail( 4L, "Quarterly report" ), createSentMail( 1L, "Invoice" ) ) );
+
+		assertThat( searchIndex.rank( SENDER, "report" ) ).containsExactly( 4L );
+		assertThat( searchIndex.rank( SENDER, "invoice" ) ).containsExactly( 3L, 1L, 2L );
+	}
+
+	@Test
+	void testSearchPages( ) {
+		when( sentMailRepository.findByIdInAndSender( List.of( 1L ), SENDER ) ).thenReturn(
+				List.of( new SentMailDTO( 1L, "alice@example.com", "Invoice", "Please find it attached." ) ) );
+		when( sentMailRepository.findByIdInAndSender( List.of( 2L ), SENDER ) ).thenReturn(
+				List.of( new SentMailDTO( 2L, "bob@example.com", "Meeting", "About the invoice of Alice." ) ) );
+
+		final SentMailSearchPage firstPage = searchIndex.search( SENDER, "invoice", 1, 1 );
+		assertThat( firstPage.sentMails( ) ).extracting( SentMailDTO::id ).containsExactly( 1L );
+		assertThat( firstPage.hasNext( ) ).isTrue( );
+
+		final SentMailSearchPage lastPage = searchIndex.search( SENDER, "invoice", 2, 1 );
+		assertThat( lastPage.sentMails( ) ).extracting( SentMailDTO::id ).containsExactly( 2L );
+		assertThat( lastPage.hasNext( ) ).isFalse( );
+
+		assertThat( searchIndex.search( SENDER, "invoice", 3, 1 ).sentMails( ) ).isEmpty( );
+	}
+
+	private static SentMail createSentMail( final Long id, final String subject ) {
+		final SentMail sentMail = new SentMail( );
+		ReflectionTestUtils.setField( sentMail, "id", id );
+		sentMail.setSender( SENDER );
+		sentMail.setRecipient( "carol@example.com" );
+		sentMail.setSubject( subject );
+		sentMail.setBody( "See attachment." );
+		return sentMail;
+	}
+}
@@ -0,0 +1,94 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import de.libutzki.mailsender.repository.MailContent;
+import de.libutzki.mailsender.repository.MailContentRepository;
+
+class MailContentStoreTest {
+
+	private static final String BODY = "Dear customer, our new products are here. ÄÖÜ 😀 ".repeat( 1000 );
+
+	private MailContentRepository mailContentRepository;
+	private JdbcTemplate jdbcTemplate;
+	private MailContentStore mailContentStore;
+
+	@BeforeEach
+	void init( ) {
+		mailContentRepository = mock( MailContentRepository.class );
+		jdbcTemplate = mock( JdbcTemplate.class );
+		mailContentStore = new MailContentStore( mailContentRepository, jdbcTemplate, false );
+	}
+
+	@Test
+	void testHashMatchesHashOfEncodedBody( ) throws Exception {
+		final String expectedHash = HexFormat.of( ).formatHex(
+				MessageDigest.getInstance( "SHA-256" ).digest( BODY.getBytes( StandardCharsets.UTF_8 ) ) );
+
+		assertThat( MailContentStore.hash( BODY ) ).isEqualTo( expectedHash );
+	}
+
+	@Test
+	void testShortBodiesAreNotDeduplicated( ) {
+		assertThat( mailContentStore.deduplicate( null ) ).isEmpty( );
+		assertThat( mailContentStore.deduplicate( "Test-Body" ) ).isEmpty( );
+	}
+
+	@Test
+	void testShortBodiesAreCountedInCharacters( ) {
+		// 200 characters, but 400 bytes in UTF-8
+		assertThat( mailContentStore.deduplicate( "😀".repeat( 100 ) ) ).isEmpty( );
+	}
+
+	@Test
+	void testKnownHashesSkipInsert( ) {
+		final String hash = MailContentStore.hash( BODY );
+		final MailContent reference = new MailContent( hash, BODY );
+		when( mailContentRepository.getReferenceById( hash ) ).thenReturn( reference );
+
+		assertThat( mailContentStore.deduplicate( BODY ) ).contains( reference );
+		assertThat( mailContentStore.deduplicate( BODY ) ).contains( reference );
+
+		verify( jdbcTemplate ).update( anyString( ), any( Object[].class ), any( int[].class ) );
+		verify( mailContentRepository, times( 2 ) ).getReferenceById( hash );
+	}
+
+	@Test
+	void testExistingContentIsIgnored( ) {
+		final String hash = MailContentStore.hash( BODY );
+		final MailContent reference = new MailContent( hash, BODY );
+		when( mailContentRepository.getReferenceById( hash ) ).thenReturn( reference );
+		when( jdbcTemplate.update( anyString( ), any( Object[].class ), any( int[].class ) ) ).thenThrow( new DuplicateKeyException( "Duplicate" ) );
+
+		assertThat( mailContentStore.deduplicate( BODY ) ).contains( reference );
+	}
+
+	@Test
+	void testPostgresInsertsIfAbsent( ) {
+		mailContentStore = new MailContentStore( mailContentRepository, jdbcTemplate, true );
+		final String hash = MailContentStore.hash( BODY );
+		final MailContent reference = new MailContent( hash, BODY );
+		when( mailContentRepository.getReferenceById( hash ) ).thenReturn( reference );
+
+		assertThat( mailContentStore.deduplicate( BODY ) ).contains( reference );
+
+		verify( jdbcTemplate ).update( eq( "INSERT INTO mail_content (hash, body, body_compressed) VALUES (?, ?, ?) ON CONFLICT DO NOTHING" ),
+				any( Object[].class ), any( int[].class ) );
+	}
+}
@@ -0,0 +1,204 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer;
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer.Failure;
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer.ReceivedMessage;
+import de.libutzki.mailsender.model.PendingMailDTO;
+import de.libutzki.mailsender.repository.DeliveryStatus;
+import de.libutzki.mailsender.repository.SentMail;
+import de.libutzki.mailsender.repository.SentMailRepository;
+import de.libutzki.mailsender.service.SmtpCircuitBreaker.State;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Delivers mails by calling {@link MailDispatcher#deliver(List)} directly, the {@link DomainScheduler} is mocked and
+ * the sweep does not run during the tests. A single transient failure opens the SMTP circuit.
+ */
+@SpringBootTest
+@DirtiesContext
+@TestPropertySource( properties = {
+		"spring.datasource.url=jdbc:h2:mem:MailDispatcherH2Test",
+		"spring.jpa.hibernate.ddl-auto=create-drop",
+		"spring.liquibase.enabled=false",
+		"mailsender.delivery.sweep-interval=PT1H",
+		"mailsender.delivery.claim-timeout=PT5M",
+		"mailsender.delivery.retry.initial-backoff=PT30S",
+		"mailsender.delivery.circuit-breaker.failure-threshold=1"
+} )
+class MailDispatcherH2Test {
+
+	@RegisterExtension
+	static EmbeddedSmtpServer smtpServer = new EmbeddedSmtpServer( );
+
+	@DynamicPropertySource
+	static void configureMail( final DynamicPropertyRegistry registry ) {
+		registry.add( "spring.mail.host", smtpServer::getHost );
+		registry.add( "spring.mail.port", smtpServer::getPort );
+	}
+
+	@Autowired
+	private MailDispatcher mailDispatcher;
+
+	@Autowired
+	private SentMailRepository sentMailRepository;
+
+	@Autowired
+	private SmtpCircuitBreaker smtpCircuitBreaker;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@MockBean
+	private DomainScheduler domainScheduler;
+
+	@BeforeEach
+	void init( ) {
+		when( domainScheduler.getMaxMessageCount( any( ) ) ).thenReturn( 10 );
+	}
+
+	@AfterEach
+	void closeCircuit( ) {
+		smtpCircuitBreaker.recordSuccess( );
+	}
+
+	@Test
+	void testTransientFailureIsRetried( ) {
+		smtpServer.failNext( Failure.REJECT_MESSAGE_TRANSIENTLY, 1 );
+		final SentMail sentMail = save( "recipient@example.com", DeliveryStatus.PENDING, null );
+		final Instant start = Instant.now( );
+		final double retried = counterValue( "mailsender.delivery.retried" );
+
+		mailDispatcher.deliver( List.of( sentMail.getId( ) ) );
+
+		assertThat( sentMailRepository.findById( sentMail.getId( ) ) ).get( )
+				.satisfies( retriedMail -> {
+					assertThat( retriedMail.getStatus( ) ).isEqualTo( DeliveryStatus.PENDING );
+					assertThat( retriedMail.getAttempts( ) ).isEqualTo( 1 );
+					assertThat( retriedMail.getLastError( ) ).get( ).asString( ).contains( "451" );
+					// Initial backoff of 30 seconds with a jitter of 20 %
+					assertThat( retriedMail.getNextAttemptAt( ).orElseThrow( ) )
+							.isBetween( start.plusSeconds( 24 ), Instant.now( ).plusSeconds( 36 ) );
+				} );
+		assertThat( smtpCircuitBreaker.getState( ) ).isEqualTo( State.OPEN );
+		assertThat( counterValue( "mailsender.delivery.retried" ) ).isEqualTo( retried + 1 );
+
+		// While the circuit is open, the mail is parked instead of being sent
+		final double parked = counterValue( "mailsender.delivery.parked" );
+		mailDispatcher.deliver( List.of( sentMail.getId( ) ) );
+		assertThat( counterValue( "mailsender.delivery.parked" ) ).isEqualTo( parked + 1 );
+		assertThat( smtpServer.getReceivedCount( ) ).isZero( );
+	}
+
+	@Test
+	void testPermanentFailureIsNotRetried( ) {
+		smtpServer.failNext( Failure.REJECT_RECIPIENT, 1 );
+		final SentMail sentMail = save( "rejected@example.com", DeliveryStatus.PENDING, null );
+
+		mailDispatcher.deliver( List.of( sentMail.getId( ) ) );
+
+		assertThat( sentMailRepository.findById( sentMail.getId( ) ) ).get( )
+				.satisfies( failedMail -> {
+					assertThat( failedMail.getStatus( ) ).isEqualTo( DeliveryStatus.FAILED );
+					assertThat( failedMail.getNextAttemptAt( ) ).isEmpty( );
+				} );
+		assertThat( smtpCircuitBreaker.getState( ) ).isEqualTo( State.CLOSED );
+	}
+
+	@Test
+	void testExpiredClaimIsDeliveredAgain( ) throws InterruptedException {
+		final Instant now = Instant.now( );
+		final SentMail expiredClaim = save( "expired@example.com", DeliveryStatus.SENDING, now.minus( Duration.ofMinutes( 10 ) ) );
+		final SentMail currentClaim = save( "current@example.com", DeliveryStatus.SENDING, now.minus( Duration.ofMinutes( 1 ) ) );
+
+		final List<PendingMailDTO> dueMails = sentMailRepository.findDueMails( DeliveryStatus.PENDING, now, DeliveryStatus.SENDING,
+				now.minus( Duration.ofMinutes( 5 ) ), PageRequest.of( 0, 10 ) );
+		assertThat( dueMails ).extracting( PendingMailDTO::id ).containsExactly( expiredClaim.getId( ) );
+
+		mailDispatcher.deliver( List.of( expiredClaim.getId( ), currentClaim.getId( ) ) );
+
+		assertThat( smtpServer.awaitMessages( 1, Duration.ofSeconds( 5 ) ) )
+				.extracting( ReceivedMessage::recipients )
+				.containsExactly( List.of( "expired@example.com" ) );
+		assertThat( sentMailRepository.findById( expiredClaim.getId( ) ) ).get( )
+				.satisfies( sentMail -> {
+					assertThat( sentMail.getStatus( ) ).isEqualTo( DeliveryStatus.SENT );
+					assertThat( sentMail.getClaimedAt( ) ).isEmpty( );
+				} );
+		assertThat( sentMailRepository.findById( currentClaim.getId( ) ) ).get( )
+				.extracting( SentMail::getStatus )
+				.isEqualTo( DeliveryStatus.SENDING );
+	}
+
+	@Test
+	void testMailInFlightIsNotSubmittedTwice( ) {
+		final SentMail sentMail = save( "recipient@example.com", DeliveryStatus.PENDING, null );
+		final List<PendingMailDTO> pendingMails = List.of( new PendingMailDTO( sentMail.getId( ), sentMail.getRecipient( ) ) );
+
+		mailDispatcher.dispatch( pendingMails );
+		mailDispatcher.dispatch( pendingMails );
+
+		final ArgumentCaptor<Runnable> deliveryCaptor = ArgumentCaptor.forClass( Runnable.class );
+		verify( domainScheduler ).submit( eq( "example.com" ), eq( 1 ), deliveryCaptor.capture( ) );
+
+		// Once the delivery has finished, the mail may be submitted again
+		deliveryCaptor.getValue( ).run( );
+		mailDispatcher.dispatch( pendingMails );
+
+		verify( domainScheduler, times( 2 ) ).submit( any( ), anyInt( ), any( ) );
+	}
+
+	@Test
+	void testBatchesDoNotExceedTheDomainRate( ) {
+		final List<PendingMailDTO> pendingMails = IntStream.range( 0, 25 )
+				.mapToObj( i -> new PendingMailDTO( 1_000L + i, "recipient" + i + "@example.com" ) )
+				.toList( );
+
+		mailDispatcher.dispatch( pendingMails );
+
+		final ArgumentCaptor<Integer> messageCountCaptor = ArgumentCaptor.forClass( Integer.class );
+		verify( domainScheduler, times( 3 ) ).submit( eq( "example.com" ), messageCountCaptor.capture( ), any( ) );
+		assertThat( messageCountCaptor.getAllValues( ) ).containsExactly( 10, 10, 5 );
+	}
+
+	private double counterValue( final String name ) {
+		return meterRegistry.get( name ).functionCounter( ).count( );
+	}
+
+	private SentMail save( final String recipient, final DeliveryStatus status, final Instant claimedAt ) {
+		final SentMail sentMail = new SentMail( );
+		sentMail.setSender( "sender@example.com" );
+		sentMail.setRecipient( recipient );
+		sentMail.setSubject( "Test-Subject" );
+		sentMail.setBody( "Test-Body" );
+		sentMail.setStatus( status );
+		sentMail.setClaimedAt( claimedAt );
+		return sentMailRepository.save( sentMail );
+	}
+}
@@ -0,0 +1,82 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.MailSendException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer;
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer.Failure;
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer.ReceivedMessage;
+import de.libutzki.mailsender.model.MailSendResult;
+import de.libutzki.mailsender.model.MailSendResult.Outcome;
+import de.libutzki.mailsender.model.NewMail;
+
+/**
+ * Covers what the MailHog based tests cover, but against the embedded SMTP server instead of containers.
+ */
+@SpringBootTest
+@DirtiesContext
+@TestPropertySource( properties = {
+		"spring.datasource.url=jdbc:h2:mem:MailServiceEmbeddedSmtpTest",
+		"spring.jpa.hibernate.ddl-auto=create-drop",
+		"spring.liquibase.enabled=false"
+} )
+class MailServiceEmbeddedSmtpTest {
+
+	@RegisterExtension
+	static EmbeddedSmtpServer smtpServer = new EmbeddedSmtpServer( );
+
+	@DynamicPropertySource
+	static void configureMail( final DynamicPropertyRegistry registry ) {
+		registry.add( "spring.mail.host", smtpServer::getHost );
+		registry.add( "spring.mail.port", smtpServer::getPort );
+	}
+
+	@Autowired
+	private MailService mailService;
+
+	@Test
+	void testSendMail( ) throws InterruptedException {
+		mailService.sendMail( "sender@example.com", new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" ) );
+
+		assertThat( smtpServer.awaitMessages( 1, Duration.ofSeconds( 5 ) ) )
+				.extracting( ReceivedMessage::from, ReceivedMessage::recipients, ReceivedMessage::subject, ReceivedMessage::text )
+				.containsExactly( tuple( "sender@example.com", List.of( "recipient@example.com" ), "Test-Subject", "Test-Body" ) );
+	}
+
+	@Test
+	void testSendMailsWithRejectedRecipient( ) {
+		smtpServer.failNext( Failure.REJECT_RECIPIENT, 1 );
+
+		final List<MailSendResult> results = mailService.sendMails( "sender@example.com", List.of(
+				new NewMail( "rejected@example.com", "Test-Subject", "Test-Body" ),
+				new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" ) ) );
+
+		assertThat( results ).extracting( MailSendResult::outcome ).containsExactly( Outcome.FAILED, Outcome.SENT );
+		assertThat( smtpServer.getMessages( ) ).extracting( ReceivedMessage::recipients ).containsExactly( List.of( "recipient@example.com" ) );
+	}
+
+	@Test
+	void testSendMailWithConnectionCut( ) {
+		smtpServer.setConnectionsCut( true );
+
+		final NewMail newMail = new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" );
+
+		assertThatExceptionOfType( MailSendException.class )
+				.isThrownBy( ( ) -> mailService.sendMail( "cut@example.com", newMail ) );
+		assertThat( mailService.getSentMailsForSender( "cut@example.com" ) ).isEmpty( );
+	}
+}
@@ -0,0 +1,85 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import de.libutzki.mailsender.model.SentMailSummaryDTO;
+
+class SentMailHistoryCacheTest {
+
+	@Test
+	void testAddAllMergesByIdAndKeepsCapacity( ) {
+		final SentMailHistoryCache historyCache = createCache( new StaticListableBeanFactory( ) );
+		final List<SentMailSummaryDTO> newestMails = LongStream.iterate( 1000, id -> id - 1 )
+				.limit( SentMailHistoryCache.CAPACITY )
+				.mapToObj( SentMailHistoryCacheTest::sentMailDTO )
+				.toList( );
+		historyCache.getNewest( "sender@example.com", sender -> newestMails );
+
+		// 1000 has already been loaded, 1 is older than all cached mails
+		historyCache.addAll( "sender@example.com", List.of( sentMailDTO( 1001L ), sentMailDTO( 1000L ), sentMailDTO( 1L ) ) );
+
+		final List<SentMailSummaryDTO> cachedMails = historyCache.getNewest( "sender@example.com", sender -> List.of( ) );
+		assertThat( cachedMails ).hasSize( SentMailHistoryCache.CAPACITY );
+		assertThat( cachedMails ).extracting( SentMailSummaryDTO::id ).startsWith( 1001L, 1000L, 999L ).doesNotContain( 1L );
+		assertThat( historyCache.getStats( ).hitCount( ) ).isEqualTo( 1 );
+		assertThat( historyCache.getStats( ).missCount( ) ).isEqualTo( 1 );
+	}
+
+	@Test
+	void testAddAllDoesNotPopulateCache( ) {
+		final SentMailHistoryCache historyCache = createCache( new StaticListableBeanFactory( ) );
+
+		historyCache.addAll( "sender@example.com", List.of( sentMailDTO( 1L ) ) );
+
+		assertThat( historyCache.getNewest( "sender@example.com", sender -> List.of( sentMailDTO( 2L ), sentMailDTO( 1L ) ) ) )
+				.extracting( SentMailSummaryDTO::id )
+				.containsExactly( 2L, 1L );
+	}
+
+	@Test
+	void testAddAllPublishesInvalidation( ) {
+		final HistoryCacheInvalidationPublisher publisher = mock( HistoryCacheInvalidationPublisher.class );
+		final StaticListableBeanFactory beanFactory = new StaticListableBeanFactory( );
+		beanFactory.addBean( "publisher", publisher );
+		final SentMailHistoryCache historyCache = createCache( beanFactory );
+
+		historyCache.addAll( "sender@example.com", List.of( sentMailDTO( 1L ) ) );
+
+		verify( publisher ).publishInvalidation( "sender@example.com" );
+	}
+
+	@Test
+	void testVersionChangesWithHistory( ) {
+		final HistoryCacheProperties properties = new HistoryCacheProperties( );
+		properties.setEnabled( false );
+		final SentMailHistoryCache historyCache = new SentMailHistoryCache( properties,
+				new StaticListableBeanFactory( ).getBeanProvider( HistoryCacheInvalidationPublisher.class ) );
+
+		final String version = historyCache.getVersion( "sender@example.com" );
+		assertThat( historyCache.getVersion( "sender@example.com" ) ).isEqualTo( version );
+		assertThat( historyCache.getVersion( "other@example.com" ) ).isNotEqualTo( version );
+
+		historyCache.addAll( "sender@example.com", List.of( sentMailDTO( 1L ) ) );
+		final String addedVersion = historyCache.getVersion( "sender@example.com" );
+		assertThat( addedVersion ).isNotEqualTo( version );
+
+		historyCache.invalidate( "sender@example.com" );
+		assertThat( historyCache.getVersion( "sender@example.com" ) ).isNotIn( version, addedVersion );
+	}
+
+	private static SentMailHistoryCache createCache( final StaticListableBeanFactory beanFactory ) {
+		return new SentMailHistoryCache( new HistoryCacheProperties( ), beanFactory.getBeanProvider( HistoryCacheInvalidationPublisher.class ) );
+	}
+
+	private static SentMailSummaryDTO sentMailDTO( final long id ) {
+		return new SentMailSummaryDTO( id, "recipient@example.com", "Test-Subject", "Test-Preview" );
+	}
+}
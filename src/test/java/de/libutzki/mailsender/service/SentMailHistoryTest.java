@@ -0,0 +1,71 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import de.libutzki.mailsender.model.SentMailSummaryDTO;
+import de.libutzki.mailsender.repository.SentMailRepository;
+
+class SentMailHistoryTest {
+
+	private static final String SENDER = "sender@example.com";
+
+	private SentMailRepository sentMailRepository;
+
+	@BeforeEach
+	void init( ) {
+		sentMailRepository = mock( SentMailRepository.class );
+	}
+
+	@Test
+	void testLoadsChunksLazily( ) {
+		when( sentMailRepository.findNewestBySender( SENDER, PageRequest.ofSize( 2 ) ) ).thenReturn( List.of( sentMailDTO( 5L ), sentMailDTO( 4L ) ) );
+		when( sentMailRepository.findBySenderBefore( SENDER, 4L, PageRequest.ofSize( 2 ) ) ).thenReturn( List.of( sentMailDTO( 2L ) ) );
+		final SentMailHistory history = new SentMailHistory( sentMailRepository, SENDER, 2 );
+
+		verifyNoInteractions( sentMailRepository );
+
+		final Iterator<SentMailSummaryDTO> iterator = history.iterator( );
+		assertThat( iterator.next( ).id( ) ).isEqualTo( 5L );
+		assertThat( iterator.next( ).id( ) ).isEqualTo( 4L );
+		verify( sentMailRepository, never( ) ).findBySenderBefore( any( ), any( ), any( ) );
+
+		assertThat( iterator.next( ).id( ) ).isEqualTo( 2L );
+		// The last chunk has not been full, so there is nothing to load anymore
+		assertThat( iterator.hasNext( ) ).isFalse( );
+		verify( sentMailRepository ).findBySenderBefore( SENDER, 4L, PageRequest.ofSize( 2 ) );
+	}
+
+	@Test
+	void testStopsAfterFullLastChunk( ) {
+		when( sentMailRepository.findNewestBySender( SENDER, PageRequest.ofSize( 2 ) ) ).thenReturn( List.of( sentMailDTO( 5L ), sentMailDTO( 4L ) ) );
+		when( sentMailRepository.findBySenderBefore( SENDER, 4L, PageRequest.ofSize( 2 ) ) ).thenReturn( List.of( ) );
+
+		assertThat( new SentMailHistory( sentMailRepository, SENDER, 2 ) )
+				.extracting( SentMailSummaryDTO::id )
+				.containsExactly( 5L, 4L );
+	}
+
+	@Test
+	void testEmptyHistory( ) {
+		when( sentMailRepository.findNewestBySender( SENDER, PageRequest.ofSize( 2 ) ) ).thenReturn( List.of( ) );
+
+		assertThat( new SentMailHistory( sentMailRepository, SENDER, 2 ) ).isEmpty( );
+	}
+
+	private static SentMailSummaryDTO sentMailDTO( final long id ) {
+		return new SentMailSummaryDTO( id, "recipient@example.com", "Test-Subject", "Test-Preview" );
+	}
+}
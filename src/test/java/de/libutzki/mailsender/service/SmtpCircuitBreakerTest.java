@@ -0,0 +1,104 @@
+package de.libutzki.mailsender.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+import de.libutzki.mailsender.service.SmtpCircuitBreaker.State;
+
+class SmtpCircuitBreakerTest {
+
+	private DeliveryProperties deliveryProperties;
+
+	@BeforeEach
+	void init( ) {
+		deliveryProperties = new DeliveryProperties( );
+		deliveryProperties.getCircuitBreaker( ).setFailureThreshold( 2 );
+	}
+
+	@Test
+	void testCircuitOpensAfterConsecutiveTransientFailures( ) {
+		final SmtpCircuitBreaker circuitBreaker = new SmtpCircuitBreaker( deliveryProperties );
+
+		circuitBreaker.recordOutcome( List.of( new MessagingException( "Connection refused" ) ) );
+		assertThat( circuitBreaker.getState( ) ).isEqualTo( State.CLOSED );
+
+		circuitBreaker.recordOutcome( List.of( new MessagingException( "Connection refused" ) ) );
+		assertThat( circuitBreaker.getState( ) ).isEqualTo( State.OPEN );
+		assertThat( circuitBreaker.allowRequest( ) ).isFalse( );
+		assertThat( circuitBreaker.getRejectedCount( ) ).isEqualTo( 1 );
+	}
+
+	@Test
+	void testPermanentFailuresDoNotOpenCircuit( ) {
+		final SmtpCircuitBreaker circuitBreaker = new SmtpCircuitBreaker( deliveryProperties );
+
+		circuitBreaker.recordOutcome( List.of( new SendFailedException( "Invalid Addresses" ) ) );
+		circuitBreaker.recordOutcome( List.of( new SendFailedException( "Invalid Addresses" ) ) );
+
+		assertThat( circuitBreaker.getState( ) ).isEqualTo( State.CLOSED );
+	}
+
+	@Test
+	void testTransientRepliesOpenCircuit( ) throws AddressException {
+		final SmtpCircuitBreaker circuitBreaker = new SmtpCircuitBreaker( deliveryProperties );
+		final SendFailedException greylisted = new SendFailedException( "Invalid Addresses",
+				new SMTPAddressFailedException( new InternetAddress( "recipient@example.com" ), "RCPT TO", 451, "451 4.7.1 Greylisted" ) );
+
+		circuitBreaker.recordOutcome( List.of( greylisted ) );
+		circuitBreaker.recordOutcome( List.of( new SMTPSendFailedException( ".", 421, "421 4.3.2 Service not available", null, null, null, null ) ) );
+
+		assertThat( circuitBreaker.getState( ) ).isEqualTo( State.OPEN );
+	}
+
+	@Test
+	void testFailuresAreClassifiedByReplyCode( ) throws AddressException {
+		final InternetAddress recipient = new InternetAddress( "recipient@example.com" );
+
+		assertThat( DeliveryFailures.isPermanent( new SendFailedException( "Invalid Addresses",
+				new SMTPAddressFailedException( recipient, "RCPT TO", 550, "550 5.1.1 Mailbox unavailable" ) ) ) ).isTrue( );
+		assertThat( DeliveryFailures.isPermanent( new SMTPSendFailedException( ".", 554, "554 5.7.1 Rejected", null, null, null, null ) ) )
+				.isTrue( );
+		assertThat( DeliveryFailures.isPermanent( new SendFailedException( "Invalid Addresses",
+				new SMTPAddressFailedException( recipient, "RCPT TO", 450, "450 4.2.0 Mailbox busy" ) ) ) ).isFalse( );
+		assertThat( DeliveryFailures.isPermanent( new SMTPSendFailedException( ".", 451, "451 4.3.0 Temporary failure", null, null, null, null ) ) )
+				.isFalse( );
+		assertThat( DeliveryFailures.isPermanent( new MessagingException( "Connection refused" ) ) ).isFalse( );
+	}
+
+	@Test
+	void testTrialSendClosesCircuit( ) {
+		deliveryProperties.getCircuitBreaker( ).setOpenDuration( Duration.ZERO );
+		final SmtpCircuitBreaker circuitBreaker = new SmtpCircuitBreaker( deliveryProperties );
+		circuitBreaker.recordFailure( );
+		circuitBreaker.recordFailure( );
+
+		assertThat( circuitBreaker.allowRequest( ) ).isTrue( );
+		assertThat( circuitBreaker.getState( ) ).isEqualTo( State.HALF_OPEN );
+
+		circuitBreaker.recordSuccess( );
+		assertThat( circuitBreaker.getState( ) ).isEqualTo( State.CLOSED );
+	}
+
+	@Test
+	void testBackoffGrowsExponentiallyWithinJitter( ) {
+		final DeliveryProperties.Retry retry = deliveryProperties.getRetry( );
+		retry.setInitialBackoff( Duration.ofSeconds( 10 ) );
+		retry.setJitter( 0.2 );
+
+		assertThat( MailDispatcher.backoff( retry, 1 ) ).isBetween( Duration.ofSeconds( 8 ), Duration.ofSeconds( 12 ) );
+		assertThat( MailDispatcher.backoff( retry, 3 ) ).isBetween( Duration.ofSeconds( 32 ), Duration.ofSeconds( 48 ) );
+	}
+}
@@ -3,36 +3,76 @@ package de.libutzki.mailsender.service;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.mail.SendFailedException;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import de.libutzki.mailsender.model.MailSendResult;
+import de.libutzki.mailsender.model.MailSendResult.Outcome;
+import de.libutzki.mailsender.model.MailSubmissionDTO;
 import de.libutzki.mailsender.model.NewMail;
+import de.libutzki.mailsender.model.PendingMailDTO;
 import de.libutzki.mailsender.model.SentMailDTO;
+import de.libutzki.mailsender.model.SentMailPage;
+import de.libutzki.mailsender.model.SentMailSummaryDTO;
+import de.libutzki.mailsender.repository.DeliveryStatus;
 import de.libutzki.mailsender.repository.SentMail;
 import de.libutzki.mailsender.repository.SentMailRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 class Stage_01_MailServiceUnitTest {
 
 	private JavaMailSender mailSender;
 	private SentMailRepository sentMailRepository;
+	private MailDispatcher mailDispatcher;
+	private DeliveryProperties deliveryProperties;
+	private SmtpCircuitBreaker smtpCircuitBreaker;
+	private SentMailHistoryCache historyCache;
+	private MailContentStore mailContentStore;
+	private SimpleMeterRegistry meterRegistry;
 	private MailService mailService;
 
 	@BeforeEach
 	void init( ) {
 		mailSender = mock( JavaMailSender.class );
 		sentMailRepository = mock( SentMailRepository.class );
-		mailService = new MailService( mailSender, sentMailRepository );
+		mailDispatcher = mock( MailDispatcher.class );
+		deliveryProperties = new DeliveryProperties( );
+		smtpCircuitBreaker = new SmtpCircuitBreaker( deliveryProperties );
+		historyCache = new SentMailHistoryCache( new HistoryCacheProperties( ), new StaticListableBeanFactory( )
+				.getBeanProvider( HistoryCacheInvalidationPublisher.class ) );
+		mailContentStore = mock( MailContentStore.class );
+		meterRegistry = new SimpleMeterRegistry( );
+		mailService = new MailService( mailSender, sentMailRepository, mailDispatcher, deliveryProperties, smtpCircuitBreaker, historyCache,
+				mailContentStore, mock( SentMailSearchIndex.class ), new MailMetrics( meterRegistry ) );
 	}
 
 	@Test
@@ -71,13 +111,113 @@ class Stage_01_MailServiceUnitTest {
 						SentMail::getSender,
 						SentMail::getRecipient,
 						SentMail::getSubject,
-						SentMail::getBody )
+						SentMail::getBody,
+						SentMail::getStatus )
 				.containsExactly(
 						"sender@example.com",
 						"recipient@example.com",
 						Optional.of( "Test-Subject" ),
-						Optional.of( "Test-Body" ) );
+						Optional.of( "Test-Body" ),
+						DeliveryStatus.SENT );
+
+	}
+
+	@Test
+	void testSendMailWithOutbox( ) {
+
+		deliveryProperties.setMode( DeliveryMode.OUTBOX );
+		when( sentMailRepository.save( any( SentMail.class ) ) ).then( returnsFirstArg( ) );
+
+		final NewMail newMail = new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" );
+
+		mailService.sendMail( "sender@example.com", newMail );
+
+		verify( mailSender, never( ) ).send( any( SimpleMailMessage.class ) );
+
+		final ArgumentCaptor<SentMail> sentMailCaptor = ArgumentCaptor.forClass( SentMail.class );
+		verify( sentMailRepository ).save( sentMailCaptor.capture( ) );
+
+		assertThat( sentMailCaptor.getValue( ) )
+				.extracting(
+						SentMail::getSender,
+						SentMail::getRecipient,
+						SentMail::getStatus )
+				.containsExactly(
+						"sender@example.com",
+						"recipient@example.com",
+						DeliveryStatus.PENDING );
 
+		verify( mailDispatcher ).dispatch( List.of( new PendingMailDTO( sentMailCaptor.getValue( ).getId( ), "recipient@example.com" ) ) );
+	}
+
+	@Test
+	void testSubmitMail( ) {
+
+		when( sentMailRepository.save( any( SentMail.class ) ) ).then( returnsFirstArg( ) );
+
+		final NewMail newMail = new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" );
+
+		final MailSubmissionDTO submission = mailService.submitMail( "sender@example.com", newMail );
+
+		// The synchronous delivery mode does not apply to submissions
+		verify( mailSender, never( ) ).send( any( SimpleMailMessage.class ) );
+
+		final ArgumentCaptor<SentMail> sentMailCaptor = ArgumentCaptor.forClass( SentMail.class );
+		verify( sentMailRepository ).save( sentMailCaptor.capture( ) );
+
+		assertThat( sentMailCaptor.getValue( ).getStatus( ) ).isEqualTo( DeliveryStatus.PENDING );
+		assertThat( submission ).isEqualTo( new MailSubmissionDTO( sentMailCaptor.getValue( ).getId( ), DeliveryStatus.PENDING, null ) );
+
+		verify( mailDispatcher ).dispatch( List.of( new PendingMailDTO( sentMailCaptor.getValue( ).getId( ), "recipient@example.com" ) ) );
+	}
+
+	@Test
+	@SuppressWarnings( "unchecked" )
+	void testSendMails( ) {
+
+		final NewMail newMail1 = new NewMail( "recipient1@example.com", "Test-Subject", "Test-Body" );
+		final NewMail newMail2 = new NewMail( "recipient2@example.com", "Test-Subject", "Test-Body" );
+
+		final List<SimpleMailMessage> mailMessages = new ArrayList<>( );
+		// Mockito matches a varargs call only with one matcher per message
+		doAnswer( invocation -> {
+			for ( final Object argument : invocation.getArguments( ) ) {
+				mailMessages.add( ( SimpleMailMessage ) argument );
+			}
+			throw new MailSendException( Map.of( mailMessages.get( 1 ), new SendFailedException( "Invalid Addresses" ) ) );
+		} ).when( mailSender ).send( any( SimpleMailMessage.class ), any( SimpleMailMessage.class ) );
+
+		final List<MailSendResult> results = mailService.sendMails( "sender@example.com", List.of( newMail1, newMail2 ) );
+
+		assertThat( mailMessages )
+				.extracting( SimpleMailMessage::getTo )
+				.containsExactly(
+						new String[] { "recipient1@example.com" },
+						new String[] { "recipient2@example.com" } );
+
+		assertThat( results )
+				.extracting(
+						MailSendResult::mail,
+						MailSendResult::outcome,
+						MailSendResult::error )
+				.containsExactly(
+						tuple( newMail1, Outcome.SENT, null ),
+						tuple( newMail2, Outcome.FAILED, "Invalid Addresses" ) );
+
+		final ArgumentCaptor<List<SentMail>> sentMailsCaptor = ArgumentCaptor.forClass( List.class );
+		verify( sentMailRepository ).saveAll( sentMailsCaptor.capture( ) );
+
+		assertThat( sentMailsCaptor.getValue( ) )
+				.extracting( SentMail::getRecipient, SentMail::getStatus )
+				.containsExactly(
+						tuple( "recipient1@example.com", DeliveryStatus.SENT ),
+						tuple( "recipient2@example.com", DeliveryStatus.FAILED ) );
+
+		assertThat( meterRegistry.get( "mailsender.mails" ).tags( "outcome", "sent", "exception", "none" ).counter( ).count( ) ).isEqualTo( 1 );
+		assertThat( meterRegistry.get( "mailsender.mails" ).tags( "outcome", "failed", "exception", "SendFailedException" ).counter( ).count( ) )
+				.isEqualTo( 1 );
+		assertThat( meterRegistry.get( "mailsender.smtp.send" ).timer( ).count( ) ).isEqualTo( 1 );
+		assertThat( meterRegistry.get( "mailsender.message.size" ).summary( ).totalAmount( ) ).isEqualTo( 2 * "Test-Body".length( ) );
 	}
 
 	@Test
@@ -99,5 +239,104 @@ class Stage_01_MailServiceUnitTest {
 		final List<SentMailDTO> actualSentMailsForSender2 = mailService.getSentMailsForSender( "sender2@example.com" );
 
 		assertThat( actualSentMailsForSender2 ).isEmpty( );
+
+		assertThat( meterRegistry.get( "mailsender.history.query" ).tag( "query", "sent-mails" ).timer( ).count( ) ).isEqualTo( 2 );
+		assertThat( meterRegistry.get( "mailsender.history.rows" ).tag( "query", "sent-mails" ).summary( ).totalAmount( ) ).isEqualTo( 1 );
+	}
+
+	@Test
+	void testGetSentMailPage( ) {
+
+		when( sentMailRepository.findNewestBySender( eq( "sender@example.com" ), any( ) ) )
+				.thenReturn( List.of( sentMailSummary( 9L ), sentMailSummary( 8L ), sentMailSummary( 7L ) ) );
+
+		final SentMailPage firstPage = mailService.getSentMailPage( "sender@example.com", null, null, 2 );
+
+		assertThat( firstPage.sentMails( ) ).extracting( SentMailSummaryDTO::id ).containsExactly( 9L, 8L );
+		assertThat( firstPage.hasPrevious( ) ).isFalse( );
+		assertThat( firstPage.nextCursor( ) ).isEqualTo( 8L );
+
+		when( sentMailRepository.findBySenderBefore( "sender@example.com", 8L, PageRequest.of( 0, 3 ) ) )
+				.thenReturn( List.of( sentMailSummary( 7L ) ) );
+
+		final SentMailPage lastPage = mailService.getSentMailPage( "sender@example.com", 8L, null, 2 );
+
+		assertThat( lastPage.sentMails( ) ).extracting( SentMailSummaryDTO::id ).containsExactly( 7L );
+		assertThat( lastPage.previousCursor( ) ).isEqualTo( 7L );
+		assertThat( lastPage.hasNext( ) ).isFalse( );
+
+		// Newer mails are read in ascending order and reversed
+		when( sentMailRepository.findBySenderAfter( eq( "sender@example.com" ), eq( 7L ), any( ) ) )
+				.thenReturn( List.of( sentMailSummary( 8L ), sentMailSummary( 9L ) ) );
+
+		final SentMailPage previousPage = mailService.getSentMailPage( "sender@example.com", null, 7L, 2 );
+
+		assertThat( previousPage.sentMails( ) ).extracting( SentMailSummaryDTO::id ).containsExactly( 9L, 8L );
+		assertThat( previousPage.hasPrevious( ) ).isFalse( );
+		assertThat( previousPage.nextCursor( ) ).isEqualTo( 8L );
+	}
+
+	@Test
+	void testGetSentMailPageUsesHistoryCache( ) {
+
+		when( sentMailRepository.findNewestBySender( eq( "sender@example.com" ), any( ) ) )
+				.thenReturn( List.of( sentMailSummary( 7L ) ) );
+		when( sentMailRepository.save( any( SentMail.class ) ) ).then( invocation -> {
+			final SentMail sentMail = invocation.getArgument( 0 );
+			ReflectionTestUtils.setField( sentMail, "id", 8L );
+			return sentMail;
+		} );
+
+		mailService.getSentMailPage( "sender@example.com", null, null, 2 );
+		mailService.sendMail( "sender@example.com", new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" ) );
+		final SentMailPage page = mailService.getSentMailPage( "sender@example.com", null, null, 2 );
+
+		assertThat( page.sentMails( ) ).extracting( SentMailSummaryDTO::id ).containsExactly( 8L, 7L );
+		verify( sentMailRepository ).findNewestBySender( eq( "sender@example.com" ), any( ) );
+		assertThat( historyCache.getStats( ).hitCount( ) ).isEqualTo( 1 );
+	}
+
+	@Test
+	void testExportSentMailsAsCsv( ) throws IOException {
+
+		when( sentMailRepository.streamBySender( "sender@example.com" ) ).thenReturn( Stream.of(
+				new SentMailDTO( 1L, "recipient@example.com", "Test-Subject", "Test-Body" ),
+				new SentMailDTO( 2L, "recipient@example.com", "Subject, \"quoted\"", "Line 1\nLine 2" ) ) );
+
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream( );
+		final long count = mailService.exportSentMails( "sender@example.com", ExportFormat.CSV, outputStream );
+
+		assertThat( count ).isEqualTo( 2 );
+		assertThat( outputStream.toString( StandardCharsets.UTF_8 ) ).isEqualTo(
+				"id,recipient,subject,body\r\n"
+						+ "1,recipient@example.com,Test-Subject,Test-Body\r\n"
+						+ "2,recipient@example.com,\"Subject, \"\"quoted\"\"\",\"Line 1\nLine 2\"\r\n" );
+	}
+
+	@Test
+	void testExportSentMailsAsNdjson( ) throws IOException {
+
+		when( sentMailRepository.streamBySender( "sender@example.com" ) ).thenReturn( Stream.of(
+				new SentMailDTO( 1L, "recipient@example.com", "Test-Subject", "Line 1\nLine 2" ),
+				new SentMailDTO( 2L, "recipient@example.com", "Test-Subject", null ) ) );
+
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream( );
+		mailService.exportSentMails( "sender@example.com", ExportFormat.NDJSON, outputStream );
+
+		assertThat( outputStream.toString( StandardCharsets.UTF_8 ) ).isEqualTo(
+				"{\"id\":1,\"recipient\":\"recipient@example.com\",\"subject\":\"Test-Subject\",\"body\":\"Line 1\\nLine 2\"}\n"
+						+ "{\"id\":2,\"recipient\":\"recipient@example.com\",\"subject\":\"Test-Subject\",\"body\":null}\n" );
+	}
+
+	@Test
+	void testCreatePreview( ) {
+
+		assertThat( MailService.createPreview( null ) ).isNull( );
+		assertThat( MailService.createPreview( "  Line 1\n\n Line 2 " ) ).isEqualTo( "Line 1 Line 2" );
+		assertThat( MailService.createPreview( "x".repeat( 200 ) ) ).hasSize( 100 ).endsWith( "x\u2026" );
+	}
+
+	private static SentMailSummaryDTO sentMailSummary( final Long id ) {
+		return new SentMailSummaryDTO( id, "recipient@example.com", "Test-Subject", "Test-Preview" );
 	}
 }
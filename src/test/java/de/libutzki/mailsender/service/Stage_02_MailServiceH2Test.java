@@ -24,8 +24,8 @@ import de.libutzki.mailsender.model.SentMailDTO;
 @TestPropertySource( properties = {
 		"spring.datasource.url=jdbc:h2:mem:testdb",
 		"spring.jpa.hibernate.ddl-auto=create-drop",
-		"spring.liquibase.enabled=false"
-
+		"spring.liquibase.enabled=false",
+		"management.health.mail.enabled=false"
 } )
 public class Stage_02_MailServiceH2Test {
 
@@ -69,5 +69,11 @@ public class Stage_02_MailServiceH2Test {
 								"Test-Subject",
 								"Test-Body" ) );
 
+		assertThat( mailService.search( "sender@example.com", "body", 0, MailService.DEFAULT_PAGE_SIZE ).sentMails( ) )
+				.extracting( SentMailDTO::recipient )
+				.containsExactly( "recipient@example.com" );
+		assertThat( mailService.search( "sender@example.com", "unknown", 0, MailService.DEFAULT_PAGE_SIZE ).sentMails( ) )
+				.isEmpty( );
+
 	}
 }
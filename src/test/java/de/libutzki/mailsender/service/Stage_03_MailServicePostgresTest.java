@@ -25,6 +25,7 @@ import de.libutzki.mailsender.model.SentMailDTO;
 @DirtiesContext
 @TestPropertySource( properties = {
 		"spring.datasource.url=jdbc:tc:postgresql:14.1:///Stage_03_MailServicePostgresTest",
+		"management.health.mail.enabled=false"
 } )
 public class Stage_03_MailServicePostgresTest {
 
@@ -68,5 +69,11 @@ public class Stage_03_MailServicePostgresTest {
 								"Test-Subject",
 								"Test-Body" ) );
 
+		assertThat( mailService.search( "sender@example.com", "body", 0, MailService.DEFAULT_PAGE_SIZE ).sentMails( ) )
+				.extracting( SentMailDTO::recipient )
+				.containsExactly( "recipient@example.com" );
+		assertThat( mailService.search( "sender@example.com", "unknown", 0, MailService.DEFAULT_PAGE_SIZE ).sentMails( ) )
+				.isEmpty( );
+
 	}
 }
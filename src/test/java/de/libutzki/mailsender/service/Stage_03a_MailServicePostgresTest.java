@@ -17,6 +17,7 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -27,6 +28,7 @@ import de.libutzki.mailsender.model.SentMailDTO;
 @Tag( "Testcontainers" )
 @SpringBootTest
 @DirtiesContext
+@TestPropertySource( properties = "management.health.mail.enabled=false" )
 @Testcontainers
 public class Stage_03a_MailServicePostgresTest {
 
@@ -0,0 +1,100 @@
+package de.libutzki.mailsender.service;
+
+import static io.restassured.RestAssured.given;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import de.libutzki.mailsender.mail.PooledJavaMailSender;
+import de.libutzki.mailsender.model.NewMail;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.restassured.builder.RequestSpecBuilder;
+import io.restassured.specification.RequestSpecification;
+
+/**
+ * Sends several mails through the SMTP connection pool to MailHog: the connection is reset with {@code RSET} and reused
+ * for every mail.
+ */
+@Tag( "Testcontainers" )
+@SpringBootTest
+@Testcontainers
+@DirtiesContext
+@TestPropertySource( properties = {
+		"spring.datasource.url=jdbc:tc:postgresql:14.1:///Stage_04b_MailServiceMailhogPoolTest",
+		"mailsender.smtp.pool.enabled=true"
+} )
+public class Stage_04b_MailServiceMailhogPoolTest {
+
+	@Autowired
+	private MailService mailService;
+
+	@Autowired
+	private JavaMailSender mailSender;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private static final Integer MAILHOG_SMTP_PORT = 1025;
+	private static final Integer MAILHOG_HTTP_PORT = 8025;
+
+	@Container
+	static GenericContainer<?> mailhogContainer = new GenericContainer<>( "mailhog/mailhog:v1.0.1" )
+			.withExposedPorts( MAILHOG_SMTP_PORT, MAILHOG_HTTP_PORT )
+			.waitingFor(
+					Wait
+							.forHttp( "/" )
+							.forPort( MAILHOG_HTTP_PORT ) );
+
+	@DynamicPropertySource
+	static void configureMail( final DynamicPropertyRegistry registry ) {
+		registry.add( "spring.mail.host", mailhogContainer::getHost );
+		registry.add( "spring.mail.port", ( ) -> mailhogContainer.getMappedPort( MAILHOG_SMTP_PORT ) );
+	}
+
+	private RequestSpecification mailhogRequestSpec;
+
+	@BeforeEach
+	void setupRestAssured( ) {
+
+		mailhogRequestSpec = new RequestSpecBuilder( )
+				.setBaseUri( String.format( "http://%s", mailhogContainer.getHost( ) ) )
+				.setPort( mailhogContainer.getMappedPort( MAILHOG_HTTP_PORT ) )
+				.setBasePath( "/api/v2" )
+				.build( );
+	}
+
+	@Test
+	void test( ) {
+		assertThat( mailSender ).isInstanceOf( PooledJavaMailSender.class );
+
+		for ( int i = 1; i <= 3; i++ ) {
+			mailService.sendMail( "sender@example.com", new NewMail( "recipient" + i + "@example.com", "Test-Subject " + i, "Test-Body " + i ) );
+		}
+
+		given( mailhogRequestSpec )
+				.when( ).get( "/messages" )
+				.then( )
+				.body( "total", equalTo( 3 ) )
+				.and( )
+				.body( "items.Content.Headers.Subject.flatten()", containsInAnyOrder( "Test-Subject 1", "Test-Subject 2", "Test-Subject 3" ) );
+
+		// MailHog accepted the resets, so all mails went through a single connection
+		assertThat( meterRegistry.get( "mailsender.smtp.connect" ).timer( ).count( ) ).isEqualTo( 1 );
+		assertThat( ( ( PooledJavaMailSender ) mailSender ).getIdleConnectionCount( ) ).isEqualTo( 1 );
+	}
+}
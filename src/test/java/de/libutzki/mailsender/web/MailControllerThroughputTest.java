@@ -0,0 +1,282 @@
+package de.libutzki.mailsender.web;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+import java.util.function.LongFunction;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.MockMvcPrint;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import com.c4_soft.springaddons.security.oauth2.test.annotations.OpenIdClaims;
+import com.c4_soft.springaddons.security.oauth2.test.annotations.keycloak.WithMockKeycloakAuth;
+
+import de.libutzki.mailsender.mail.EmbeddedSmtpServer;
+
+/**
+ * Load suite for {@link MailController}: concurrent authenticated clients send mails and read the history for a fixed
+ * time, against H2 and the embedded SMTP server. Throughput of successful requests, latency percentiles and error rate
+ * of every scenario are written to {@code target/performance/mailcontroller.properties} together with JDK and processor
+ * count, and compared with {@code performance/mailcontroller-baseline.properties}. The test fails, if less requests
+ * succeed than the minimum of the baseline, if the throughput falls below the baseline by more than the tolerance of
+ * the system property {@code performance.tolerance}, or if more requests fail than in the baseline.
+ * <p>
+ * Excluded from the regular build, run by "mvn -Pperformance test".
+ */
+@Tag( "Performance" )
+@SpringBootTest
+@DirtiesContext
+@AutoConfigureMockMvc( print = MockMvcPrint.NONE )
+@TestPropertySource( properties = {
+		"spring.datasource.url=jdbc:h2:mem:MailControllerThroughputTest",
+		"spring.jpa.hibernate.ddl-auto=create-drop",
+		"spring.liquibase.enabled=false",
+		"keycloak.auth-server-url=http://dummy:9999/auth",
+		"mailsender.jfr.enabled=false",
+		"logging.level.root=WARN",
+		"logging.level.de.libutzki.mailsender.web.MailControllerThroughputTest=INFO"
+} )
+class MailControllerThroughputTest {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger( MailControllerThroughputTest.class );
+
+	private static final String BASELINE = "/performance/mailcontroller-baseline.properties";
+
+	private static final int THREADS = Integer.getInteger( "performance.threads", 8 );
+	private static final Duration WARMUP = Duration.ofSeconds( Integer.getInteger( "performance.warmup-seconds", 5 ) );
+	private static final Duration MEASUREMENT = Duration.ofSeconds( Integer.getInteger( "performance.measurement-seconds", 15 ) );
+	private static final double TOLERANCE = Double.parseDouble( System.getProperty( "performance.tolerance", "0.2" ) );
+	private static final Path RESULT_DIRECTORY = Path.of( System.getProperty( "performance.result-directory", "target/performance" ) );
+
+	@RegisterExtension
+	static EmbeddedSmtpServer smtpServer = new EmbeddedSmtpServer( );
+
+	@DynamicPropertySource
+	static void configureMail( final DynamicPropertyRegistry registry ) {
+		registry.add( "spring.mail.host", smtpServer::getHost );
+		registry.add( "spring.mail.port", smtpServer::getPort );
+	}
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	void discardMessages( ) {
+		// Only the count is of interest, storing every received message would distort the measurement
+		smtpServer.setStoreMessages( false );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	void testThroughput( ) throws Exception {
+		// The workers run on threads of their own, which do not see the security context of the test
+		final Authentication authentication = SecurityContextHolder.getContext( ).getAuthentication( );
+
+		final LoadResult sendResult = run( "post", requestNumber -> post( "/" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.with( authentication( authentication ) )
+				.param( "recipient", "recipient" + requestNumber % 10 + "@example.com" )
+				.param( "subject", "Subject " + requestNumber )
+				.param( "body", "Body " + requestNumber ),
+				status -> HttpStatus.valueOf( status ).is3xxRedirection( ) );
+		final LoadResult historyResult = run( "get", requestNumber -> get( "/" )
+				.with( authentication( authentication ) ),
+				status -> status == HttpStatus.OK.value( ) );
+
+		final Properties results = new Properties( );
+		results.setProperty( "machine.jdk", System.getProperty( "java.vm.vendor" ) + " " + System.getProperty( "java.runtime.version" ) );
+		results.setProperty( "machine.processors", Integer.toString( Runtime.getRuntime( ).availableProcessors( ) ) );
+		sendResult.writeTo( results );
+		historyResult.writeTo( results );
+		Files.createDirectories( RESULT_DIRECTORY );
+		try ( OutputStream outputStream = Files.newOutputStream( RESULT_DIRECTORY.resolve( "mailcontroller.properties" ) ) ) {
+			results.store( outputStream, "MailController throughput with " + THREADS + " threads" );
+		}
+
+		final Properties baseline = loadBaseline( );
+		final SoftAssertions softly = new SoftAssertions( );
+		for ( final LoadResult result : List.of( sendResult, historyResult ) ) {
+			final double baselineThroughput = Double.parseDouble( baseline.getProperty( result.scenario( ) + ".throughput" ) );
+			final double baselineErrorRate = Double.parseDouble( baseline.getProperty( result.scenario( ) + ".error-rate" ) );
+			final int minSuccesses = Integer.parseInt( baseline.getProperty( result.scenario( ) + ".min-successes" ) );
+			LOGGER.info( "{}, baseline {} requests/s with p99 {} us", result, format( baselineThroughput ),
+					baseline.getProperty( result.scenario( ) + ".latency.p99" ) );
+
+			// A run failing fast must not pass for a fast run
+			softly.assertThat( result.successCount( ) )
+					.as( "Successful requests of %s", result.scenario( ) )
+					.isGreaterThanOrEqualTo( minSuccesses );
+			softly.assertThat( result.throughput( ) )
+					.as( "Throughput of %s, baseline %s with tolerance %s", result.scenario( ), format( baselineThroughput ), TOLERANCE )
+					.isGreaterThanOrEqualTo( baselineThroughput * ( 1 - TOLERANCE ) );
+			softly.assertThat( result.errorRate( ) )
+					.as( "Error rate of %s", result.scenario( ) )
+					.isLessThanOrEqualTo( baselineErrorRate );
+		}
+		softly.assertAll( );
+	}
+
+	private LoadResult run( final String scenario, final LongFunction<RequestBuilder> requestFactory, final IntPredicate expectedStatus )
+			throws InterruptedException, ExecutionException {
+		runFor( WARMUP, requestFactory, expectedStatus );
+		final long start = System.nanoTime( );
+		final List<Samples> samples = runFor( MEASUREMENT, requestFactory, expectedStatus );
+		final long elapsedNanos = System.nanoTime( ) - start;
+		return LoadResult.of( scenario, samples, elapsedNanos );
+	}
+
+	private List<Samples> runFor( final Duration duration, final LongFunction<RequestBuilder> requestFactory, final IntPredicate expectedStatus )
+			throws InterruptedException, ExecutionException {
+		final long deadline = System.nanoTime( ) + duration.toNanos( );
+		final AtomicLong requestNumbers = new AtomicLong( );
+		final ExecutorService executorService = Executors.newFixedThreadPool( THREADS );
+		try {
+			final List<Future<Samples>> futures = new ArrayList<>( );
+			for ( int i = 0; i < THREADS; i++ ) {
+				futures.add( executorService.submit( ( ) -> {
+					final Samples samples = new Samples( );
+					long now = System.nanoTime( );
+					while ( now - deadline < 0 ) {
+						final RequestBuilder request = requestFactory.apply( requestNumbers.incrementAndGet( ) );
+						boolean succeeded;
+						try {
+							succeeded = expectedStatus.test( mockMvc.perform( request ).andReturn( ).getResponse( ).getStatus( ) );
+						} catch ( final Exception e ) {
+							succeeded = false;
+						}
+						final long end = System.nanoTime( );
+						samples.add( end - now, succeeded );
+						now = end;
+					}
+					return samples;
+				} ) );
+			}
+			final List<Samples> samples = new ArrayList<>( );
+			for ( final Future<Samples> future : futures ) {
+				samples.add( future.get( ) );
+			}
+			return samples;
+		} finally {
+			executorService.shutdownNow( );
+			executorService.awaitTermination( 10, TimeUnit.SECONDS );
+		}
+	}
+
+	private static Properties loadBaseline( ) throws IOException {
+		final Properties baseline = new Properties( );
+		try ( InputStream inputStream = MailControllerThroughputTest.class.getResourceAsStream( BASELINE ) ) {
+			if ( inputStream == null ) {
+				throw new IllegalStateException( "Baseline " + BASELINE + " not found" );
+			}
+			baseline.load( inputStream );
+		}
+		return baseline;
+	}
+
+	private static String format( final double value ) {
+		return String.format( Locale.ROOT, "%.1f", value );
+	}
+
+	/**
+	 * Latencies and errors recorded by a single worker thread.
+	 */
+	private static final class Samples {
+
+		private long[] latencyNanos = new long[1024];
+		private int count;
+		private int errorCount;
+
+		void add( final long latency, final boolean succeeded ) {
+			if ( count == latencyNanos.length ) {
+				latencyNanos = Arrays.copyOf( latencyNanos, count * 2 );
+			}
+			latencyNanos[count++] = latency;
+			if ( !succeeded ) {
+				errorCount++;
+			}
+		}
+	}
+
+	private record LoadResult( String scenario, int requestCount, int successCount, double throughput, double errorRate, long p50Micros, long p90Micros,
+			long p99Micros, long maxMicros ) {
+
+		static LoadResult of( final String scenario, final List<Samples> samples, final long elapsedNanos ) {
+			final long[] latencies = samples.stream( )
+					.flatMapToLong( sample -> Arrays.stream( sample.latencyNanos, 0, sample.count ) )
+					.sorted( )
+					.toArray( );
+			final int errorCount = samples.stream( ).mapToInt( sample -> sample.errorCount ).sum( );
+			final int successCount = latencies.length - errorCount;
+			// Only successful requests count, failed requests are usually answered faster
+			final double throughput = successCount / ( elapsedNanos / ( double ) TimeUnit.SECONDS.toNanos( 1 ) );
+			final double errorRate = latencies.length == 0 ? 1 : errorCount / ( double ) latencies.length;
+			return new LoadResult( scenario, latencies.length, successCount, throughput, errorRate, percentile( latencies, 0.5 ),
+					percentile( latencies, 0.9 ), percentile( latencies, 0.99 ), percentile( latencies, 1 ) );
+		}
+
+		private static long percentile( final long[] sortedLatencies, final double percentile ) {
+			if ( sortedLatencies.length == 0 ) {
+				return 0;
+			}
+			final int index = ( int ) Math.ceil( percentile * sortedLatencies.length ) - 1;
+			return TimeUnit.NANOSECONDS.toMicros( sortedLatencies[Math.max( index, 0 )] );
+		}
+
+		void writeTo( final Properties properties ) {
+			properties.setProperty( scenario + ".requests", Integer.toString( requestCount ) );
+			properties.setProperty( scenario + ".successes", Integer.toString( successCount ) );
+			properties.setProperty( scenario + ".throughput", format( throughput ) );
+			properties.setProperty( scenario + ".error-rate", String.format( Locale.ROOT, "%.4f", errorRate ) );
+			properties.setProperty( scenario + ".latency.p50", Long.toString( p50Micros ) );
+			properties.setProperty( scenario + ".latency.p90", Long.toString( p90Micros ) );
+			properties.setProperty( scenario + ".latency.p99", Long.toString( p99Micros ) );
+			properties.setProperty( scenario + ".latency.max", Long.toString( maxMicros ) );
+		}
+
+		@Override
+		public String toString( ) {
+			return String.format( Locale.ROOT, "%s: %d requests, %d successful, %.1f successful requests/s, error rate %.4f, latency p50 %d us, p90 %d us, p99 %d us, max %d us",
+					scenario, requestCount, successCount, throughput, errorRate, p50Micros, p90Micros, p99Micros, maxMicros );
+		}
+	}
+}
@@ -1,15 +1,37 @@
 package de.libutzki.mailsender.web;
 
 import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.flash;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,16 +40,29 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import com.c4_soft.springaddons.security.oauth2.test.annotations.OpenIdClaims;
 import com.c4_soft.springaddons.security.oauth2.test.annotations.keycloak.WithMockKeycloakAuth;
 
+import de.libutzki.mailsender.model.MailSendResult;
+import de.libutzki.mailsender.model.MailSubmissionDTO;
 import de.libutzki.mailsender.model.NewMail;
+import de.libutzki.mailsender.model.NewMailBatch;
 import de.libutzki.mailsender.model.SentMailDTO;
+import de.libutzki.mailsender.model.SentMailPage;
+import de.libutzki.mailsender.model.SentMailSearchPage;
+import de.libutzki.mailsender.model.SentMailSummaryDTO;
+import de.libutzki.mailsender.repository.DeliveryStatus;
+import de.libutzki.mailsender.service.ExportFormat;
+import de.libutzki.mailsender.service.MailContentStore;
+import de.libutzki.mailsender.service.MailDispatcher;
 import de.libutzki.mailsender.service.MailService;
+import de.libutzki.mailsender.service.SentMailSearchIndex;
 
 @SpringBootTest( webEnvironment = WebEnvironment.RANDOM_PORT )
 @DirtiesContext
@@ -45,13 +80,25 @@ class Stage_05_MailControllerTest {
 	@MockBean
 	private MailService mailService;
 
+	@MockBean
+	private MailDispatcher mailDispatcher;
+
+	@MockBean
+	private MailContentStore mailContentStore;
+
+	@MockBean
+	private SentMailSearchIndex sentMailSearchIndex;
+
 	@Test
 	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
 	public void testWithAuth( ) throws Exception {
 
-		when( mailService.getSentMailsForSender( eq( "sender@example.com" ) ) ).thenReturn(
-				singletonList(
-						new SentMailDTO( "recipient@example.com", "Test-Subject", "Test-Body" ) ) );
+		when( mailService.getSentMailPage( eq( "sender@example.com" ), isNull( ), isNull( ), anyInt( ) ) ).thenReturn(
+				new SentMailPage(
+						singletonList(
+								new SentMailSummaryDTO( 1L, "recipient@example.com", "Test-Subject", "Test-Body" ) ),
+						null,
+						null ) );
 
 		mockMvc.perform( get( "/" ) )
 				.andExpect( status( ).isOk( ) )
@@ -60,12 +107,110 @@ class Stage_05_MailControllerTest {
 				.andExpect( content( ).string( containsString( "Test-Body" ) ) );
 	}
 
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testPagination( ) throws Exception {
+
+		when( mailService.getSentMailPage( "sender@example.com", 42L, null, 10 ) ).thenReturn(
+				new SentMailPage(
+						singletonList(
+								new SentMailSummaryDTO( 41L, "recipient@example.com", "Test-Subject", "Test-Body" ) ),
+						41L,
+						41L ) );
+
+		mockMvc.perform( get( "/" ).param( "before", "42" ).param( "size", "10" ) )
+				.andExpect( status( ).isOk( ) )
+				.andExpect( content( ).string( containsString( "href=\"/?after=41\"" ) ) )
+				.andExpect( content( ).string( containsString( "href=\"/?before=41\"" ) ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testNotModified( ) throws Exception {
+
+		when( mailService.getHistoryVersion( "sender@example.com" ) ).thenReturn( "v1" );
+		when( mailService.getSentMailPage( eq( "sender@example.com" ), isNull( ), isNull( ), anyInt( ) ) ).thenReturn(
+				new SentMailPage(
+						singletonList(
+								new SentMailSummaryDTO( 1L, "recipient@example.com", "Test-Subject", "Test-Body" ) ),
+						null,
+						null ) );
+		// The CSRF token, which is part of the page, is kept in the session
+		final MockHttpSession session = new MockHttpSession( );
+
+		final String eTag = mockMvc.perform( get( "/" ).session( session ) )
+				.andExpect( status( ).isOk( ) )
+				.andExpect( header( ).string( "Cache-Control", "no-cache, private" ) )
+				.andReturn( ).getResponse( ).getHeader( "ETag" );
+		assertThat( eTag ).startsWith( "W/\"v1-" );
+
+		mockMvc.perform( get( "/" ).session( session ).header( "If-None-Match", eTag ) )
+				.andExpect( status( ).isNotModified( ) )
+				.andExpect( content( ).string( "" ) );
+		verify( mailService, times( 1 ) ).getSentMailPage( eq( "sender@example.com" ), isNull( ), isNull( ), anyInt( ) );
+
+		when( mailService.getHistoryVersion( "sender@example.com" ) ).thenReturn( "v2" );
+
+		mockMvc.perform( get( "/" ).session( session ).header( "If-None-Match", eTag ) )
+				.andExpect( status( ).isOk( ) )
+				.andExpect( content( ).string( containsString( "Test-Subject" ) ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testHistory( ) throws Exception {
+
+		when( mailService.getSentMailHistory( "sender@example.com" ) ).thenReturn( List.of(
+				new SentMailSummaryDTO( 2L, "recipient2@example.com", "Test-Subject-2", "Test-Body-2" ),
+				new SentMailSummaryDTO( 1L, "recipient1@example.com", "Test-Subject-1", "Test-Body-1" ) ) );
+
+		mockMvc.perform( get( "/history" ) )
+				.andExpect( status( ).isOk( ) )
+				.andExpect( content( ).string( containsString( "recipient2@example.com" ) ) )
+				.andExpect( content( ).string( containsString( "href=\"/mails/1\"" ) ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testMail( ) throws Exception {
+
+		when( mailService.getSentMail( "sender@example.com", 41L ) ).thenReturn(
+				Optional.of( new SentMailDTO( 41L, "recipient@example.com", "Test-Subject", "Test-Body" ) ) );
+
+		mockMvc.perform( get( "/mails/41" ) )
+				.andExpect( status( ).isOk( ) )
+				.andExpect( content( ).string( containsString( "Test-Body" ) ) );
+
+		mockMvc.perform( get( "/mails/42" ) )
+				.andExpect( status( ).isNotFound( ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testSearch( ) throws Exception {
+
+		when( mailService.search( "sender@example.com", "invoice", 1, MailService.DEFAULT_PAGE_SIZE ) ).thenReturn(
+				new SentMailSearchPage(
+						singletonList( new SentMailDTO( 41L, "recipient@example.com", "Invoice", "Your invoice" ) ),
+						1,
+						true ) );
+
+		mockMvc.perform( get( "/search" ).param( "q", "invoice" ).param( "page", "1" ) )
+				.andExpect( status( ).isOk( ) )
+				.andExpect( content( ).string( containsString( "Your invoice" ) ) )
+				.andExpect( content( ).string( containsString( "href=\"/search?q=invoice&amp;page=0\"" ) ) )
+				.andExpect( content( ).string( containsString( "href=\"/search?q=invoice&amp;page=2\"" ) ) );
+	}
+
 	@Test
 	public void testWithoutAuth( ) throws Exception {
 
-		when( mailService.getSentMailsForSender( eq( "sender@example.com" ) ) ).thenReturn(
-				singletonList(
-						new SentMailDTO( "recipient@example.com", "Test-Subject", "Test-Body" ) ) );
+		when( mailService.getSentMailPage( eq( "sender@example.com" ), isNull( ), isNull( ), anyInt( ) ) ).thenReturn(
+				new SentMailPage(
+						singletonList(
+								new SentMailSummaryDTO( 1L, "recipient@example.com", "Test-Subject", "Test-Body" ) ),
+						null,
+						null ) );
 
 		mockMvc.perform( get( "/" ) )
 				.andExpect( status( ).is3xxRedirection( ) );
@@ -90,4 +235,194 @@ class Stage_05_MailControllerTest {
 						eq( new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" ) ) );
 	}
 
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testSubmitMail( ) throws Exception {
+
+		final NewMail newMail = new NewMail( "recipient@example.com", "Test-Subject", "Test-Body" );
+		when( mailService.submitMail( "sender@example.com", newMail ) ).thenReturn(
+				new MailSubmissionDTO( 41L, DeliveryStatus.PENDING, null ) );
+		when( mailService.getSubmission( "sender@example.com", 41L ) ).thenReturn(
+				Optional.of( new MailSubmissionDTO( 41L, DeliveryStatus.SENT, null ) ) );
+
+		mockMvc.perform( post( "/submissions" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.param( "recipient", "recipient@example.com" )
+				.param( "subject", "Test-Subject" )
+				.param( "body", "Test-Body" ) )
+				.andExpect( status( ).isAccepted( ) )
+				.andExpect( header( ).string( "Location", "http://localhost/submissions/41" ) )
+				.andExpect( jsonPath( "$.id" ).value( 41 ) )
+				.andExpect( jsonPath( "$.status" ).value( "PENDING" ) );
+
+		mockMvc.perform( get( "/submissions/41" ) )
+				.andExpect( status( ).isOk( ) )
+				.andExpect( jsonPath( "$.status" ).value( "SENT" ) );
+
+		mockMvc.perform( get( "/submissions/42" ) )
+				.andExpect( status( ).isNotFound( ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testSubmitInvalidMail( ) throws Exception {
+
+		mockMvc.perform( post( "/submissions" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.param( "recipient", "no-address" )
+				.param( "subject", "Test-Subject" )
+				.param( "body", "Test-Body" ) )
+				.andExpect( status( ).isBadRequest( ) )
+				.andExpect( jsonPath( "$.recipient[0]" ).value( "no-address is not a valid email address" ) );
+
+		mockMvc.perform( post( "/submissions" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.param( "recipient", " " ) )
+				.andExpect( status( ).isBadRequest( ) )
+				.andExpect( jsonPath( "$.recipient" ).value( hasItem( "Enter a recipient" ) ) );
+
+		verify( mailService, never( ) ).submitMail( any( ), any( ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testSendInvalidMail( ) throws Exception {
+
+		when( mailService.getSentMailPage( eq( "sender@example.com" ), isNull( ), isNull( ), anyInt( ) ) ).thenReturn(
+				new SentMailPage( List.of( ), null, null ) );
+
+		mockMvc.perform( post( "/" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.param( "recipient", "no-address" )
+				.param( "subject", "Test-Subject" )
+				.param( "body", "Test-Body" ) )
+
+				.andExpect( status( ).isOk( ) )
+				.andExpect( view( ).name( "index" ) )
+				.andExpect( model( ).attributeHasErrors( "mail" ) )
+				.andExpect( content( ).string( containsString( "no-address is not a valid email address" ) ) )
+				// The entered values are kept
+				.andExpect( content( ).string( containsString( "Test-Subject" ) ) );
+
+		verify( mailService, never( ) ).sendMail( any( ), any( ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testSendMails( ) throws Exception {
+
+		final List<NewMail> newMails = List.of(
+				new NewMail( "recipient1@example.com", "Test-Subject", "Test-Body" ),
+				new NewMail( "recipient2@example.com", "Test-Subject", "Test-Body" ) );
+		final List<MailSendResult> results = List.of(
+				MailSendResult.sent( newMails.get( 0 ) ),
+				MailSendResult.failed( newMails.get( 1 ), "Invalid Addresses" ) );
+
+		when( mailService.sendMails( eq( "sender@example.com" ), eq( newMails ) ) ).thenReturn( results );
+
+		mockMvc.perform( post( "/batch" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.param( "recipients", "recipient1@example.com\nrecipient2@example.com" )
+				.param( "subject", "Test-Subject" )
+				.param( "body", "Test-Body" ) )
+
+				.andExpect( status( ).is3xxRedirection( ) )
+				.andExpect( flash( ).attribute( "batchResults", results ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testSendMailsWithoutRecipients( ) throws Exception {
+
+		when( mailService.getSentMailPage( eq( "sender@example.com" ), isNull( ), isNull( ), anyInt( ) ) ).thenReturn(
+				new SentMailPage( List.of( ), null, null ) );
+
+		mockMvc.perform( post( "/batch" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.param( "recipients", " \n,\n" )
+				.param( "subject", "Test-Subject" )
+				.param( "body", "Test-Body" ) )
+
+				.andExpect( status( ).isOk( ) )
+				.andExpect( view( ).name( "index" ) )
+				.andExpect( model( ).attributeHasFieldErrors( "mailBatch", "recipientAddresses" ) )
+				.andExpect( content( ).string( containsString( "Enter at least one recipient" ) ) );
+
+		verify( mailService, never( ) ).sendMails( any( ), any( ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testSendMailsWithInvalidRecipient( ) throws Exception {
+
+		when( mailService.getSentMailPage( eq( "sender@example.com" ), isNull( ), isNull( ), anyInt( ) ) ).thenReturn(
+				new SentMailPage( List.of( ), null, null ) );
+
+		mockMvc.perform( post( "/batch" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.param( "recipients", "recipient1@example.com\n\nno-address" )
+				.param( "subject", "Test-Subject" )
+				.param( "body", "Test-Body" ) )
+
+				.andExpect( status( ).isOk( ) )
+				.andExpect( view( ).name( "index" ) )
+				.andExpect( model( ).attributeHasErrors( "mailBatch" ) )
+				.andExpect( content( ).string( containsString( "no-address is not a valid email address" ) ) )
+				// The entered values are kept
+				.andExpect( content( ).string( containsString( "recipient1@example.com" ) ) );
+
+		verify( mailService, never( ) ).sendMails( any( ), any( ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testSendMailsWithTooManyRecipients( ) throws Exception {
+
+		when( mailService.getSentMailPage( eq( "sender@example.com" ), isNull( ), isNull( ), anyInt( ) ) ).thenReturn(
+				new SentMailPage( List.of( ), null, null ) );
+
+		final String recipients = IntStream.rangeClosed( 0, NewMailBatch.MAX_RECIPIENTS )
+				.mapToObj( i -> "recipient" + i + "@example.com" )
+				.collect( Collectors.joining( "\n" ) );
+
+		mockMvc.perform( post( "/batch" )
+				.contentType( MediaType.APPLICATION_FORM_URLENCODED )
+				.with( csrf( ) )
+				.param( "recipients", recipients )
+				.param( "subject", "Test-Subject" )
+				.param( "body", "Test-Body" ) )
+
+				.andExpect( status( ).isOk( ) )
+				.andExpect( model( ).attributeHasFieldErrors( "mailBatch", "recipientAddresses" ) )
+				.andExpect( content( ).string( containsString( "At most " + NewMailBatch.MAX_RECIPIENTS + " recipients are allowed" ) ) );
+
+		verify( mailService, never( ) ).sendMails( any( ), any( ) );
+	}
+
+	@Test
+	@WithMockKeycloakAuth( claims = @OpenIdClaims( email = "sender@example.com" ) )
+	public void testExport( ) throws Exception {
+
+		doAnswer( invocation -> {
+			invocation.getArgument( 2, OutputStream.class ).write( "{\"id\":1}\n".getBytes( StandardCharsets.UTF_8 ) );
+			return 1L;
+		} ).when( mailService ).exportSentMails( eq( "sender@example.com" ), eq( ExportFormat.NDJSON ), any( ) );
+
+		final MvcResult mvcResult = mockMvc.perform( get( "/export" ).param( "format", "NDJSON" ) )
+				.andExpect( request( ).asyncStarted( ) )
+				.andReturn( );
+
+		mockMvc.perform( asyncDispatch( mvcResult ) )
+				.andExpect( status( ).isOk( ) )
+				.andExpect( header( ).string( "Content-Disposition", containsString( "sent-mails.ndjson" ) ) )
+				.andExpect( content( ).string( "{\"id\":1}\n" ) );
+	}
+
 }